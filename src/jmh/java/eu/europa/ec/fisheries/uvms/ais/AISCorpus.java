@@ -0,0 +1,183 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * NMEA input for the benchmarks: either synthetic VDM sentences with a given share of two-fragment
+ * messages, or a recorded capture read from a file and repeated or cut to {@link #SENTENCES} lines.
+ */
+final class AISCorpus {
+
+    /** Lines per corpus, i.e. operations per benchmark invocation */
+    static final int SENTENCES = 10000;
+
+    private static final long SEED = 20161103L;
+
+    private AISCorpus() {
+    }
+
+    /**
+     * @param corpus {@code single} for position reports only, {@code mixed} for one static and voyage
+     *               message (two fragments) per ten messages, {@code multi} for static and voyage messages
+     *               only, anything else is the path of a recorded capture with one sentence per line
+     * @return the lines, each terminated by CR LF
+     */
+    static byte[] load(String corpus) throws IOException {
+        List<String> lines;
+        switch (corpus) {
+            case "single":
+                lines = generate(0);
+                break;
+            case "mixed":
+                lines = generate(0.1);
+                break;
+            case "multi":
+                lines = generate(1);
+                break;
+            default:
+                lines = record(Files.readAllLines(Paths.get(corpus), StandardCharsets.US_ASCII));
+                break;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(SENTENCES * 64);
+        for (String line : lines) {
+            byte[] bytes = (line + "\r\n").getBytes(StandardCharsets.US_ASCII);
+            out.write(bytes, 0, bytes.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the lines of {@link #load(String)} without terminators
+     */
+    static byte[][] lines(String corpus) throws IOException {
+        String[] lines = new String(load(corpus), StandardCharsets.US_ASCII).split("\r\n");
+        byte[][] result = new byte[lines.length][];
+        for (int i = 0; i < lines.length; i++) {
+            result[i] = lines[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        return result;
+    }
+
+    private static List<String> record(List<String> recorded) {
+        List<String> lines = new ArrayList<>(SENTENCES);
+        for (String line : recorded) {
+            if (!line.trim().isEmpty()) {
+                lines.add(line.trim());
+            }
+        }
+        if (lines.isEmpty()) {
+            throw new IllegalArgumentException("Empty corpus");
+        }
+        for (int i = 0; lines.size() < SENTENCES; i++) {
+            lines.add(lines.get(i));
+        }
+        return lines.subList(0, SENTENCES);
+    }
+
+    private static List<String> generate(double multiFragmentShare) {
+        Random random = new Random(SEED);
+        List<String> lines = new ArrayList<>(SENTENCES);
+        int sequentialId = 0;
+        while (lines.size() < SENTENCES) {
+            int mmsi = 200000000 + random.nextInt(600000000);
+            if (lines.size() + 2 <= SENTENCES && random.nextDouble() < multiFragmentShare) {
+                String payload = staticAndVoyage(random, mmsi);
+                sequentialId = (sequentialId + 1) % 10;
+                lines.add(sentence(2, 1, sequentialId, payload.substring(0, 60), 0));
+                lines.add(sentence(2, 2, sequentialId, payload.substring(60), 2));
+            } else {
+                lines.add(sentence(1, 1, -1, positionReport(random, mmsi), 0));
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @return a type 1 message of 168 bits
+     */
+    private static String positionReport(Random random, int mmsi) {
+        Bits bits = new Bits();
+        bits.add(1, 6).add(0, 2).add(mmsi, 30).add(random.nextInt(9), 4).add(random.nextInt(256) - 128, 8)
+                .add(random.nextInt(300), 10).add(1, 1)
+                .add(random.nextInt(360 * 600000) - 180 * 600000, 28).add(random.nextInt(180 * 600000) - 90 * 600000, 27)
+                .add(random.nextInt(3600), 12).add(random.nextInt(360), 9).add(random.nextInt(60), 6)
+                .add(0, 2).add(0, 3).add(0, 1).add(random.nextInt(1 << 19), 19);
+        return bits.armour();
+    }
+
+    /**
+     * @return a type 5 message of 424 bits, armoured to 71 characters with 2 fill bits
+     */
+    private static String staticAndVoyage(Random random, int mmsi) {
+        Bits bits = new Bits();
+        bits.add(5, 6).add(0, 2).add(mmsi, 30).add(0, 2).add(9000000 + random.nextInt(999999), 30)
+                .text("PD" + random.nextInt(10000), 7).text("VESSEL " + random.nextInt(100000), 20)
+                .add(30, 8).add(random.nextInt(200), 9).add(random.nextInt(50), 9).add(random.nextInt(20), 6)
+                .add(random.nextInt(20), 6).add(1, 4).add(1 + random.nextInt(12), 4).add(1 + random.nextInt(28), 5)
+                .add(random.nextInt(24), 5).add(random.nextInt(60), 6).add(random.nextInt(200), 8)
+                .text("PORT " + random.nextInt(1000), 20).add(0, 1).add(0, 1);
+        return bits.armour();
+    }
+
+    private static String sentence(int fragmentCount, int fragmentNumber, int sequentialId, String payload, int fillBits) {
+        String body = "AIVDM," + fragmentCount + "," + fragmentNumber + "," + (sequentialId < 0 ? "" : sequentialId)
+                + ",B," + payload + "," + fillBits;
+        int checksum = 0;
+        for (int i = 0; i < body.length(); i++) {
+            checksum ^= body.charAt(i);
+        }
+        return String.format("!%s*%02X", body, checksum);
+    }
+
+    /**
+     * Packs message fields and armours them into payload characters.
+     */
+    private static final class Bits {
+        private final StringBuilder bits = new StringBuilder();
+
+        Bits add(long value, int width) {
+            for (int i = width - 1; i >= 0; i--) {
+                bits.append((value >> i & 1) == 1 ? '1' : '0');
+            }
+            return this;
+        }
+
+        Bits text(String value, int length) {
+            for (int i = 0; i < length; i++) {
+                char c = i < value.length() ? value.charAt(i) : '@';
+                add(c >= 64 ? c - 64 : c, 6);
+            }
+            return this;
+        }
+
+        String armour() {
+            while (bits.length() % 6 != 0) {
+                bits.append('0');
+            }
+            StringBuilder payload = new StringBuilder(bits.length() / 6);
+            for (int i = 0; i < bits.length(); i += 6) {
+                int value = Integer.parseInt(bits.substring(i, i + 6), 2);
+                payload.append((char) (value < 40 ? value + 48 : value + 56));
+            }
+            return payload.toString();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One reader thread queueing sentences while consumers poll the connection the way applications do, with
+ * {@code getSentences()} and {@code getQueueSize()}. The producer never blocks, so the group cannot hang
+ * when JMH stops the consumers.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AISQueueBenchmark {
+
+    @Param({"DROP_OLDEST", "DROP_NEWEST"})
+    public String overflowPolicy;
+
+    @Param({"1024"})
+    public int queueCapacity;
+
+    @Param({"HEAP", "DIRECT"})
+    public String queueStorage;
+
+    private byte[][] lines;
+    private AISFeedReader reader;
+    private AISFeedReader.SentenceHandler handler;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        lines = AISCorpus.lines("mixed");
+        AISManagedConnectionFactory config = new AISManagedConnectionFactory();
+        config.setReaderMode(AISReaderMode.CHANNEL.name());
+        config.setOverflowPolicy(overflowPolicy);
+        config.setQueueCapacity(queueCapacity);
+        config.setQueueStorage(queueStorage);
+        reader = new AISFeedReader("benchmark", config, null);
+        handler = reader.newSentenceHandler(new AISFeed("localhost", 4001, null, null, "benchmark"));
+    }
+
+    /**
+     * Only the single producer thread touches {@link #next}.
+     */
+    @Benchmark
+    @Group("contention")
+    @GroupThreads(1)
+    public void produce() {
+        byte[] line = lines[next];
+        next = next + 1 == lines.length ? 0 : next + 1;
+        handler.onLine(line, line.length);
+    }
+
+    @Benchmark
+    @Group("contention")
+    @GroupThreads(2)
+    public int getSentences() {
+        return reader.getSentences().size();
+    }
+
+    @Benchmark
+    @Group("contention")
+    @GroupThreads(1)
+    public long getQueueSize() {
+        return reader.getQueueSize();
+    }
+}
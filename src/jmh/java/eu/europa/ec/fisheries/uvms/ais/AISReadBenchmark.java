@@ -0,0 +1,110 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads a corpus held in memory through the same line framing, tokenizing, checksum and reassembly code
+ * as a connected reader, then drains the queue. Scores are sentences per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(AISCorpus.SENTENCES)
+public class AISReadBenchmark {
+
+    /** See {@link AISCorpus#load(String)}; pass a file path with {@code -p corpus=...} to use a capture */
+    @Param({"single", "mixed", "multi"})
+    public String corpus;
+
+    @Param({"CHANNEL", "STREAM"})
+    public String readerMode;
+
+    private byte[] data;
+    private AISFeedReader reader;
+    private AISFeedReader.SentenceHandler handler;
+    private AISChannelReader channelReader;
+    private List<String> payloads;
+    private AISPositionBatch batch;
+
+    @Setup
+    public void setUp() throws IOException {
+        data = AISCorpus.load(corpus);
+        AISManagedConnectionFactory config = new AISManagedConnectionFactory();
+        config.setReaderMode(readerMode);
+        config.setQueueCapacity(2 * AISCorpus.SENTENCES);
+        reader = new AISFeedReader("benchmark", config, null);
+        handler = reader.newSentenceHandler(new AISFeed("localhost", 4001, null, null, "benchmark"));
+        channelReader = new AISChannelReader();
+        payloads = new ArrayList<>(AISCorpus.SENTENCES);
+        batch = new AISPositionBatch(AISCorpus.SENTENCES);
+    }
+
+    @Benchmark
+    public int readAndDrain() throws IOException {
+        read();
+        payloads.clear();
+        return reader.drainTo(payloads, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public int readAndDrainPositions() throws IOException {
+        read();
+        int count = 0;
+        while (reader.drainPositions(batch) > 0) {
+            count += batch.size();
+        }
+        return count;
+    }
+
+    private void read() throws IOException {
+        if (AISReaderMode.CHANNEL.name().equals(readerMode)) {
+            ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(data));
+            channelReader.reset();
+            while (channelReader.read(channel, handler) >= 0) {
+                // Lines are handed to the handler as they are framed
+            }
+        } else {
+            BufferedReader input = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.US_ASCII));
+            String line;
+            while ((line = input.readLine()) != null) {
+                handler.onLine(line);
+            }
+        }
+    }
+}
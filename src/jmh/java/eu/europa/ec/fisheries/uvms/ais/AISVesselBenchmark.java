@@ -0,0 +1,109 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One reader thread updating the vessel table while consumers look vessels up by MMSI, as
+ * {@code AISConnection.getVessel(int)} does. Every vessel of the corpus is in the table before measuring. The
+ * producer drains the queue itself every {@link #DRAIN_EVERY} lines, so its offers never take the overflow path.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AISVesselBenchmark {
+
+    /** Well below the default queue capacity */
+    static final int DRAIN_EVERY = 1024;
+
+    private byte[][] lines;
+    private int[] mmsis;
+    private AISFeedReader reader;
+    private AISFeedReader.SentenceHandler handler;
+    private int next;
+    private final List<String> drained = new ArrayList<>(DRAIN_EVERY);
+
+    @Setup
+    public void setUp() throws IOException {
+        lines = AISCorpus.lines("mixed");
+        AISManagedConnectionFactory config = new AISManagedConnectionFactory();
+        config.setReaderMode(AISReaderMode.CHANNEL.name());
+        config.setVesselCapacity(128 * 1024);
+        reader = new AISFeedReader("benchmark", config, null);
+        handler = reader.newSentenceHandler(new AISFeed("localhost", 4001, null, null, "benchmark"));
+        for (byte[] line : lines) {
+            handler.onLine(line, line.length);
+        }
+        reader.drainTo(drained, Integer.MAX_VALUE);
+        drained.clear();
+        AISPositionBatch batch = new AISPositionBatch(128 * 1024);
+        reader.getVessels(batch);
+        mmsis = Arrays.copyOf(batch.getMmsi(), batch.size());
+    }
+
+    /**
+     * Only the single producer thread touches {@link #next}.
+     */
+    @Benchmark
+    @Group("lookup")
+    @GroupThreads(1)
+    public void produce() {
+        byte[] line = lines[next];
+        next = next + 1 == lines.length ? 0 : next + 1;
+        handler.onLine(line, line.length);
+        if (next % DRAIN_EVERY == 0) {
+            reader.drainTo(drained, Integer.MAX_VALUE);
+            drained.clear();
+        }
+    }
+
+    @Benchmark
+    @Group("lookup")
+    @GroupThreads(2)
+    public AISVesselState getVessel(Lookups lookups) {
+        return reader.getVessel(mmsis[lookups.next(mmsis.length)]);
+    }
+
+    /**
+     * Per consumer thread position in the MMSIs, so consumers do not share a counter.
+     */
+    @State(Scope.Thread)
+    public static class Lookups {
+        private int next;
+
+        int next(int bound) {
+            next = (next + 7919) % bound;
+            return next;
+        }
+    }
+}
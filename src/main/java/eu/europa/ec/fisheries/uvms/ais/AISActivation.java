@@ -0,0 +1,261 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+import javax.resource.ResourceException;
+import javax.resource.spi.InvalidPropertyException;
+import javax.resource.spi.UnavailableException;
+import javax.resource.spi.endpoint.MessageEndpoint;
+import javax.resource.spi.endpoint.MessageEndpointFactory;
+import javax.resource.spi.work.HintsContext;
+import javax.resource.spi.work.Work;
+import javax.resource.spi.work.WorkContext;
+import javax.resource.spi.work.WorkContextProvider;
+import javax.resource.spi.work.WorkException;
+import javax.resource.spi.work.WorkManager;
+
+/**
+ * AISActivation
+ *
+ * Reads the feed of an activated endpoint and pushes its sentences to the endpoint in batches. A batch is
+ * delivered as soon as it holds <code>batchSize</code> sentences, or <code>lingerTime</code> after its
+ * first sentence arrived, whichever comes first. An {@link AISSentenceListener} gets the sentences, an
+ * {@link AISMessageListener} only their payloads.
+ *
+ * @version $Revision: $
+ */
+public class AISActivation
+{
+   /** Time to wait for the first sentence of a batch before checking for deactivation */
+   private static final long IDLE_WAIT_MILLIS = 1000;
+
+   /** Time to wait before retrying when no endpoint instance is available */
+   private static final long UNAVAILABLE_RETRY_MILLIS = 1000;
+
+   /** The logger */
+   private static Logger log = Logger.getLogger(AISActivation.class.getName());
+
+   /** The resource adapter */
+   private AISResourceAdapter ra;
+
+   /** Activation spec */
+   private AISActivationSpec spec;
+
+   /** The message endpoint factory */
+   private MessageEndpointFactory endpointFactory;
+
+   /** Reader of the feed */
+   private AISFeedReader reader;
+
+   /** Delivery work */
+   private DeliveryWork delivery;
+
+   /**
+    * Default constructor
+    * @param ra AISResourceAdapter
+    * @param endpointFactory MessageEndpointFactory
+    * @param spec AISActivationSpec
+    */
+   public AISActivation(AISResourceAdapter ra, MessageEndpointFactory endpointFactory, AISActivationSpec spec)
+   {
+      this.ra = ra;
+      this.endpointFactory = endpointFactory;
+      this.spec = spec;
+   }
+
+   /**
+    * Get activation spec class
+    * @return Activation spec
+    */
+   public AISActivationSpec getActivationSpec()
+   {
+      return spec;
+   }
+
+   /**
+    * Get message endpoint factory
+    * @return Message endpoint factory
+    */
+   public MessageEndpointFactory getMessageEndpointFactory()
+   {
+      return endpointFactory;
+   }
+
+   /**
+    * Start the activation
+    * @throws ResourceException Thrown if an error occurs
+    */
+   public void start() throws ResourceException
+   {
+      log.finest("start()");
+      spec.validate();
+
+      WorkManager workManager = ra.getWorkManager();
+      if (workManager == null)
+         throw new ResourceException("Resource adapter is not started");
+
+      try
+      {
+         reader = new AISFeedReader(AISFeedReader.nextName("activation"), spec, ra);
+      }
+      catch (IllegalArgumentException e)
+      {
+         // Settings checked by validate, or the content of an area file
+         throw new InvalidPropertyException(e.getMessage(), e);
+      }
+      delivery = new DeliveryWork(reader.getName(), spec.getBatchSize(),
+         TimeUnit.MILLISECONDS.toNanos(spec.getLingerTime()));
+      try
+      {
+         // Sentences read before the delivery starts wait in the queue
+         reader.open(spec.getEffectiveFeeds());
+         workManager.startWork(delivery);
+      }
+      catch (WorkException | RuntimeException e)
+      {
+         reader.close();
+         throw new ResourceException("Unable to start AIS activation", e);
+      }
+   }
+
+   /**
+    * Stop the activation
+    */
+   public void stop()
+   {
+      log.finest("stop()");
+      if (reader != null)
+         reader.close();
+      if (delivery != null)
+         delivery.release();
+   }
+
+   /**
+    * Drains the reader in batches and delivers them to the endpoint, as long running work like the reader
+    */
+   private class DeliveryWork implements Work, WorkContextProvider
+   {
+      private static final long serialVersionUID = 1L;
+
+      private final String name;
+      private final int batchSize;
+      private final long lingerNanos;
+      private volatile boolean active = true;
+      private transient volatile Thread thread;
+
+      DeliveryWork(String name, int batchSize, long lingerNanos)
+      {
+         this.name = name;
+         this.batchSize = batchSize;
+         this.lingerNanos = lingerNanos;
+      }
+
+      @Override
+      public void run()
+      {
+         thread = Thread.currentThread();
+         List<AISSentence> batch = new ArrayList<>(batchSize);
+         try
+         {
+            while (active)
+            {
+               if (batch.isEmpty() && !reader.awaitSentences(1, IDLE_WAIT_MILLIS, TimeUnit.MILLISECONDS))
+                  continue;
+
+               long deadline = System.nanoTime() + lingerNanos;
+               long remaining;
+               while (active && reader.getQueueSize() + batch.size() < batchSize
+                  && (remaining = deadline - System.nanoTime()) > 0)
+               {
+                  reader.awaitSentences(batchSize - batch.size(), remaining, TimeUnit.NANOSECONDS);
+               }
+
+               reader.drainSentencesTo(batch, batchSize - batch.size());
+               if (!batch.isEmpty() && deliver(batch))
+                  batch = new ArrayList<>(batchSize);
+            }
+         }
+         finally
+         {
+            thread = null;
+         }
+      }
+
+      /**
+       * @return true if the batch was handed over, false if it should be retried
+       */
+      private boolean deliver(List<AISSentence> batch)
+      {
+         MessageEndpoint endpoint;
+         try
+         {
+            endpoint = endpointFactory.createEndpoint(null);
+         }
+         catch (UnavailableException e)
+         {
+            log.warning("AIS endpoint unavailable, " + batch.size() + " sentences held back: " + e);
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(UNAVAILABLE_RETRY_MILLIS));
+            return false;
+         }
+
+         try
+         {
+            if (endpoint instanceof AISSentenceListener)
+            {
+               ((AISSentenceListener)endpoint).onAISSentences(batch);
+            }
+            else
+            {
+               List<String> payloads = new ArrayList<>(batch.size());
+               for (AISSentence sentence : batch)
+                  payloads.add(sentence.getPayload());
+               ((AISMessageListener)endpoint).onSentences(payloads);
+            }
+         }
+         catch (RuntimeException e)
+         {
+            log.warning("AIS endpoint failed, " + batch.size() + " sentences discarded: " + e);
+         }
+         finally
+         {
+            endpoint.release();
+         }
+         return true;
+      }
+
+      @Override
+      public void release()
+      {
+         active = false;
+         Thread current = thread;
+         if (current != null)
+            LockSupport.unpark(current);
+      }
+
+      @Override
+      public List<WorkContext> getWorkContexts()
+      {
+         HintsContext hints = new HintsContext();
+         hints.setName("AIS delivery hints");
+         hints.setHint(HintsContext.NAME_HINT, "AIS delivery " + name);
+         hints.setHint(HintsContext.LONGRUNNING_HINT, Boolean.TRUE);
+         return Collections.<WorkContext>singletonList(hints);
+      }
+   }
+}
@@ -0,0 +1,802 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.resource.ResourceException;
+import javax.resource.spi.Activation;
+import javax.resource.spi.ActivationSpec;
+import javax.resource.spi.ConfigProperty;
+import javax.resource.spi.InvalidPropertyException;
+import javax.resource.spi.ResourceAdapter;
+
+/**
+ * AISActivationSpec
+ *
+ * Describes the feeds read for a message endpoint and how their sentences are batched. Either a list
+ * of feeds or a single address is given; when neither is, the address and port of the resource
+ * adapter are used.
+ *
+ * @version $Revision: $
+ */
+@Activation(messageListeners = { AISMessageListener.class, AISSentenceListener.class })
+public class AISActivationSpec implements ActivationSpec, AISReaderConfiguration
+{
+   /** The logger */
+   private static Logger log = Logger.getLogger(AISActivationSpec.class.getName());
+
+   /** The resource adapter */
+   private ResourceAdapter ra;
+
+   /** address */
+   @ConfigProperty
+   private String address;
+
+   /** port */
+   @ConfigProperty
+   private Integer port;
+
+   /** userName */
+   @ConfigProperty
+   private String userName;
+
+   /** password */
+   @ConfigProperty(confidential = true)
+   private String password;
+
+   /** batchSize */
+   @ConfigProperty(defaultValue = "100")
+   private Integer batchSize = 100;
+
+   /** lingerTime */
+   @ConfigProperty(defaultValue = "100")
+   private Long lingerTime = 100L;
+
+   /** readerMode */
+   @ConfigProperty(defaultValue = "STREAM")
+   private String readerMode;
+
+   /** queueCapacity */
+   @ConfigProperty(defaultValue = "262144")
+   private Integer queueCapacity;
+
+   /** overflowPolicy */
+   @ConfigProperty(defaultValue = "DROP_OLDEST")
+   private String overflowPolicy;
+
+   /** feeds */
+   @ConfigProperty(defaultValue = "")
+   private String feeds;
+
+   /** readerExecution */
+   @ConfigProperty(defaultValue = "WORK_MANAGER")
+   private String readerExecution;
+
+   /** reconnectInitialDelay */
+   @ConfigProperty(defaultValue = "1000")
+   private Long reconnectInitialDelay;
+
+   /** reconnectMaxDelay */
+   @ConfigProperty(defaultValue = "60000")
+   private Long reconnectMaxDelay;
+
+   /** reconnectJitter */
+   @ConfigProperty(defaultValue = "0.2")
+   private Double reconnectJitter;
+
+   /** readTimeout */
+   @ConfigProperty(defaultValue = "300000")
+   private Long readTimeout;
+
+   /** stallWindow */
+   @ConfigProperty(defaultValue = "30000")
+   private Long stallWindow;
+
+   /** stallRatio */
+   @ConfigProperty(defaultValue = "0.1")
+   private Double stallRatio;
+
+   /** checksumPolicy */
+   @ConfigProperty(defaultValue = "DROP")
+   private String checksumPolicy;
+
+   /** journalDirectory */
+   @ConfigProperty(defaultValue = "")
+   private String journalDirectory;
+
+   /** journalSegmentSize */
+   @ConfigProperty(defaultValue = "67108864")
+   private Long journalSegmentSize;
+
+   /** journalRetentionSize */
+   @ConfigProperty(defaultValue = "4294967296")
+   private Long journalRetentionSize;
+
+   /** journalRetentionAge */
+   @ConfigProperty(defaultValue = "86400000")
+   private Long journalRetentionAge;
+
+   /** filter */
+   @ConfigProperty(defaultValue = "")
+   private String filter;
+
+   /** areaFiles */
+   @ConfigProperty(defaultValue = "")
+   private String areaFiles;
+
+   /** areaMode */
+   @ConfigProperty(defaultValue = "TAG")
+   private String areaMode;
+
+   /** conflationInterval */
+   @ConfigProperty(defaultValue = "0")
+   private Long conflationInterval;
+
+   /** vesselCapacity */
+   @ConfigProperty(defaultValue = "0")
+   private Integer vesselCapacity;
+
+   /** vesselTimeout */
+   @ConfigProperty(defaultValue = "3600000")
+   private Long vesselTimeout;
+
+   /** queueStorage */
+   @ConfigProperty(defaultValue = "HEAP")
+   private String queueStorage;
+
+   /** queueMemory */
+   @ConfigProperty(defaultValue = "67108864")
+   private Long queueMemory;
+
+   /**
+    * Default constructor
+    */
+   public AISActivationSpec()
+   {
+
+   }
+
+   /** 
+    * Set address
+    * @param address The value
+    */
+   public void setAddress(String address)
+   {
+      this.address = address;
+   }
+
+   /** 
+    * Get address
+    * @return The value
+    */
+   public String getAddress()
+   {
+      return address;
+   }
+
+   /** 
+    * Set port
+    * @param port The value
+    */
+   public void setPort(Integer port)
+   {
+      this.port = port;
+   }
+
+   /** 
+    * Get port
+    * @return The value
+    */
+   public Integer getPort()
+   {
+      return port;
+   }
+
+   /** 
+    * Set userName
+    * @param userName The value
+    */
+   public void setUserName(String userName)
+   {
+      this.userName = userName;
+   }
+
+   /** 
+    * Get userName
+    * @return The value
+    */
+   public String getUserName()
+   {
+      return userName;
+   }
+
+   /** 
+    * Set password
+    * @param password The value
+    */
+   public void setPassword(String password)
+   {
+      this.password = password;
+   }
+
+   /** 
+    * Get password
+    * @return The value
+    */
+   public String getPassword()
+   {
+      return password;
+   }
+
+   /** 
+    * Set batchSize
+    * @param batchSize Maximum number of sentences delivered in one call
+    */
+   public void setBatchSize(Integer batchSize)
+   {
+      this.batchSize = batchSize;
+   }
+
+   /** 
+    * Get batchSize
+    * @return The value
+    */
+   public Integer getBatchSize()
+   {
+      return batchSize;
+   }
+
+   /** 
+    * Set lingerTime
+    * @param lingerTime Milliseconds a batch waits to fill up after its first sentence arrived
+    */
+   public void setLingerTime(Long lingerTime)
+   {
+      this.lingerTime = lingerTime;
+   }
+
+   /** 
+    * Get lingerTime
+    * @return The value
+    */
+   public Long getLingerTime()
+   {
+      return lingerTime;
+   }
+
+   /** 
+    * Set readerMode
+    * @param readerMode The value, one of {@link AISReaderMode}
+    */
+   public void setReaderMode(String readerMode)
+   {
+      this.readerMode = readerMode;
+   }
+
+   /** 
+    * Get readerMode
+    * @return The value
+    */
+   public String getReaderMode()
+   {
+      return readerMode;
+   }
+
+   /** 
+    * Set queueCapacity
+    * @param queueCapacity The value
+    */
+   public void setQueueCapacity(Integer queueCapacity)
+   {
+      this.queueCapacity = queueCapacity;
+   }
+
+   /** 
+    * Get queueCapacity
+    * @return The value
+    */
+   public Integer getQueueCapacity()
+   {
+      return queueCapacity;
+   }
+
+   /** 
+    * Set overflowPolicy
+    * @param overflowPolicy The value, one of {@link AISOverflowPolicy}
+    */
+   public void setOverflowPolicy(String overflowPolicy)
+   {
+      this.overflowPolicy = overflowPolicy;
+   }
+
+   /** 
+    * Get overflowPolicy
+    * @return The value
+    */
+   public String getOverflowPolicy()
+   {
+      return overflowPolicy;
+   }
+
+   /** 
+    * Set feeds
+    * @param feeds The value, a list of [tag=][user[:password]@]host:port entries separated by ;
+    */
+   public void setFeeds(String feeds)
+   {
+      this.feeds = feeds;
+   }
+
+   /** 
+    * Get feeds
+    * @return The value
+    */
+   public String getFeeds()
+   {
+      return feeds;
+   }
+
+   /** 
+    * Set readerExecution
+    * @param readerExecution The value, one of {@link AISReaderExecution}
+    */
+   public void setReaderExecution(String readerExecution)
+   {
+      this.readerExecution = readerExecution;
+   }
+
+   /** 
+    * Get readerExecution
+    * @return The value
+    */
+   public String getReaderExecution()
+   {
+      return readerExecution;
+   }
+
+   /** 
+    * Set reconnectInitialDelay
+    * @param reconnectInitialDelay The value, in milliseconds
+    */
+   public void setReconnectInitialDelay(Long reconnectInitialDelay)
+   {
+      this.reconnectInitialDelay = reconnectInitialDelay;
+   }
+
+   /** 
+    * Get reconnectInitialDelay
+    * @return The value
+    */
+   public Long getReconnectInitialDelay()
+   {
+      return reconnectInitialDelay;
+   }
+
+   /** 
+    * Set reconnectMaxDelay
+    * @param reconnectMaxDelay The value, in milliseconds
+    */
+   public void setReconnectMaxDelay(Long reconnectMaxDelay)
+   {
+      this.reconnectMaxDelay = reconnectMaxDelay;
+   }
+
+   /** 
+    * Get reconnectMaxDelay
+    * @return The value
+    */
+   public Long getReconnectMaxDelay()
+   {
+      return reconnectMaxDelay;
+   }
+
+   /** 
+    * Set reconnectJitter
+    * @param reconnectJitter The value, fraction of each delay added or removed at random
+    */
+   public void setReconnectJitter(Double reconnectJitter)
+   {
+      this.reconnectJitter = reconnectJitter;
+   }
+
+   /** 
+    * Get reconnectJitter
+    * @return The value
+    */
+   public Double getReconnectJitter()
+   {
+      return reconnectJitter;
+   }
+
+   /** 
+    * Set readTimeout
+    * @param readTimeout The value, in milliseconds
+    */
+   public void setReadTimeout(Long readTimeout)
+   {
+      this.readTimeout = readTimeout;
+   }
+
+   /** 
+    * Get readTimeout
+    * @return The value
+    */
+   public Long getReadTimeout()
+   {
+      return readTimeout;
+   }
+
+   /** 
+    * Set stallWindow
+    * @param stallWindow The value, in milliseconds, 0 disables the stall watchdog
+    */
+   public void setStallWindow(Long stallWindow)
+   {
+      this.stallWindow = stallWindow;
+   }
+
+   /** 
+    * Get stallWindow
+    * @return The value
+    */
+   public Long getStallWindow()
+   {
+      return stallWindow;
+   }
+
+   /** 
+    * Set stallRatio
+    * @param stallRatio The value, fraction of the learned sentence rate
+    */
+   public void setStallRatio(Double stallRatio)
+   {
+      this.stallRatio = stallRatio;
+   }
+
+   /** 
+    * Get stallRatio
+    * @return The value
+    */
+   public Double getStallRatio()
+   {
+      return stallRatio;
+   }
+
+   /** 
+    * Set checksumPolicy
+    * @param checksumPolicy The value, one of {@link AISChecksumPolicy}
+    */
+   public void setChecksumPolicy(String checksumPolicy)
+   {
+      this.checksumPolicy = checksumPolicy;
+   }
+
+   /** 
+    * Get checksumPolicy
+    * @return The value
+    */
+   public String getChecksumPolicy()
+   {
+      return checksumPolicy;
+   }
+
+   /** 
+    * Set journalDirectory
+    * @param journalDirectory The value, directory of the on-disk sentence journal, empty to queue on the heap
+    */
+   public void setJournalDirectory(String journalDirectory)
+   {
+      this.journalDirectory = journalDirectory;
+   }
+
+   /** 
+    * Get journalDirectory
+    * @return The value
+    */
+   public String getJournalDirectory()
+   {
+      return journalDirectory;
+   }
+
+   /** 
+    * Set journalSegmentSize
+    * @param journalSegmentSize The value, bytes per journal segment file
+    */
+   public void setJournalSegmentSize(Long journalSegmentSize)
+   {
+      this.journalSegmentSize = journalSegmentSize;
+   }
+
+   /** 
+    * Get journalSegmentSize
+    * @return The value
+    */
+   public Long getJournalSegmentSize()
+   {
+      return journalSegmentSize;
+   }
+
+   /** 
+    * Set journalRetentionSize
+    * @param journalRetentionSize The value, bytes of journal segments kept at most
+    */
+   public void setJournalRetentionSize(Long journalRetentionSize)
+   {
+      this.journalRetentionSize = journalRetentionSize;
+   }
+
+   /** 
+    * Get journalRetentionSize
+    * @return The value
+    */
+   public Long getJournalRetentionSize()
+   {
+      return journalRetentionSize;
+   }
+
+   /** 
+    * Set journalRetentionAge
+    * @param journalRetentionAge The value, milliseconds a journal segment is kept at most
+    */
+   public void setJournalRetentionAge(Long journalRetentionAge)
+   {
+      this.journalRetentionAge = journalRetentionAge;
+   }
+
+   /** 
+    * Get journalRetentionAge
+    * @return The value
+    */
+   public Long getJournalRetentionAge()
+   {
+      return journalRetentionAge;
+   }
+
+   /** 
+    * Set filter
+    * @param filter The value, messages to queue, e.g. types=1-3,18,19,27; box=54.5,10.0,58.0,13.5
+    */
+   public void setFilter(String filter)
+   {
+      this.filter = filter;
+   }
+
+   /** 
+    * Get filter
+    * @return The value
+    */
+   public String getFilter()
+   {
+      return filter;
+   }
+
+   /** 
+    * Set areaFiles
+    * @param areaFiles The value, area files separated by ;, see {@link AISAreaFiles}
+    */
+   public void setAreaFiles(String areaFiles)
+   {
+      this.areaFiles = areaFiles;
+   }
+
+   /** 
+    * Get areaFiles
+    * @return The value
+    */
+   public String getAreaFiles()
+   {
+      return areaFiles;
+   }
+
+   /** 
+    * Set areaMode
+    * @param areaMode The value, one of {@link AISAreaMode}
+    */
+   public void setAreaMode(String areaMode)
+   {
+      this.areaMode = areaMode;
+   }
+
+   /** 
+    * Get areaMode
+    * @return The value
+    */
+   public String getAreaMode()
+   {
+      return areaMode;
+   }
+
+   /** 
+    * Set conflationInterval
+    * @param conflationInterval The value, in milliseconds, 0 to queue every position report
+    */
+   public void setConflationInterval(Long conflationInterval)
+   {
+      this.conflationInterval = conflationInterval;
+   }
+
+   /** 
+    * Get conflationInterval
+    * @return The value
+    */
+   public Long getConflationInterval()
+   {
+      return conflationInterval;
+   }
+
+   /** 
+    * Set vesselCapacity
+    * @param vesselCapacity The value, maximum number of vessels whose latest position is kept, 0 to keep none
+    */
+   public void setVesselCapacity(Integer vesselCapacity)
+   {
+      this.vesselCapacity = vesselCapacity;
+   }
+
+   /** 
+    * Get vesselCapacity
+    * @return The value
+    */
+   public Integer getVesselCapacity()
+   {
+      return vesselCapacity;
+   }
+
+   /** 
+    * Set vesselTimeout
+    * @param vesselTimeout The value, in milliseconds, 0 to keep vessels not heard any more
+    */
+   public void setVesselTimeout(Long vesselTimeout)
+   {
+      this.vesselTimeout = vesselTimeout;
+   }
+
+   /** 
+    * Get vesselTimeout
+    * @return The value
+    */
+   public Long getVesselTimeout()
+   {
+      return vesselTimeout;
+   }
+
+   /** 
+    * Set queueStorage
+    * @param queueStorage The value, HEAP or DIRECT
+    */
+   public void setQueueStorage(String queueStorage)
+   {
+      this.queueStorage = queueStorage;
+   }
+
+   /** 
+    * Get queueStorage
+    * @return The value
+    */
+   public String getQueueStorage()
+   {
+      return queueStorage;
+   }
+
+   /** 
+    * Set queueMemory
+    * @param queueMemory The value, bytes of direct memory holding the queue
+    */
+   public void setQueueMemory(Long queueMemory)
+   {
+      this.queueMemory = queueMemory;
+   }
+
+   /** 
+    * Get queueMemory
+    * @return The value
+    */
+   public Long getQueueMemory()
+   {
+      return queueMemory;
+   }
+
+   /**
+    * Get the feeds to read: the configured list, or else the single effective address
+    * @return The feeds
+    */
+   List<AISFeed> getEffectiveFeeds()
+   {
+      List<AISFeed> list = AISFeed.parseList(feeds);
+      if (!list.isEmpty())
+         return list;
+      Integer effectivePort = getEffectivePort();
+      return Collections.singletonList(new AISFeed(getEffectiveAddress(), effectivePort != null ? effectivePort : 0,
+         userName, password, null));
+   }
+
+   /**
+    * Get the address to connect to, falling back to the resource adapter configuration
+    * @return The address
+    */
+   String getEffectiveAddress()
+   {
+      if ((address == null || address.isEmpty()) && ra instanceof AISResourceAdapter)
+         return ((AISResourceAdapter)ra).getAddress();
+      return address;
+   }
+
+   /**
+    * Get the port to connect to, falling back to the resource adapter configuration
+    * @return The port
+    */
+   Integer getEffectivePort()
+   {
+      if ((address == null || address.isEmpty()) && ra instanceof AISResourceAdapter)
+         return ((AISResourceAdapter)ra).getPort();
+      return port;
+   }
+
+   /**
+    * This method may be called by a deployment tool to validate the overall
+    * activation configuration information provided by the endpoint deployer.
+    *
+    * @throws InvalidPropertyException indicates invalid configuration property settings.
+    */
+   public void validate() throws InvalidPropertyException
+   {
+      log.finest("validate()");
+      if (feeds == null || feeds.trim().isEmpty())
+      {
+         String effectiveAddress = getEffectiveAddress();
+         Integer effectivePort = getEffectivePort();
+         if (effectiveAddress == null || effectiveAddress.isEmpty())
+            throw new InvalidPropertyException("address is not set");
+         if (effectivePort == null || effectivePort < 1 || effectivePort > 65535)
+            throw new InvalidPropertyException("port is not valid: " + effectivePort);
+      }
+      if (batchSize == null || batchSize < 1)
+         throw new InvalidPropertyException("batchSize must be at least 1: " + batchSize);
+      if (lingerTime == null || lingerTime < 0)
+         throw new InvalidPropertyException("lingerTime must not be negative: " + lingerTime);
+      try
+      {
+         AISFeed.parseList(feeds);
+         AISFeedReader.validate(this);
+      }
+      catch (IllegalArgumentException e)
+      {
+         throw new InvalidPropertyException(e.getMessage(), e);
+      }
+   }
+
+   /**
+    * Get the resource adapter
+    *
+    * @return The handle
+    */
+   public ResourceAdapter getResourceAdapter()
+   {
+      log.finest("getResourceAdapter()");
+      return ra;
+   }
+
+   /**
+    * Set the resource adapter
+    *
+    * @param ra The handle
+    * @throws ResourceException generic exception
+    */
+   public void setResourceAdapter(ResourceAdapter ra) throws ResourceException
+   {
+      log.finest("setResourceAdapter()");
+      this.ra = ra;
+   }
+}
@@ -0,0 +1,477 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Reads areas from local files into an {@link AISAreaIndex}.
+ * <p>
+ * Files ending in {@code .json} or {@code .geojson} are GeoJSON: a feature collection, a feature or a bare
+ * geometry of type {@code Polygon} or {@code MultiPolygon}. The identifier of a feature is its {@code id},
+ * else its {@code id} or {@code name} property. Other files hold one WKT {@code POLYGON} or
+ * {@code MULTIPOLYGON} per line, optionally preceded by an identifier and {@code ;}, with {@code #} starting a
+ * comment line. Areas without identifier are named after their file and position in it. Coordinates are
+ * longitude, latitude in degrees (WGS 84).
+ * <p>
+ * Indexes are kept per configured value and file modification times, so readers configured alike share one.
+ */
+final class AISAreaFiles {
+
+    private static Logger log = Logger.getLogger(AISAreaFiles.class.getName());
+
+    private static final Map<String, AISAreaIndex> CACHE = new ConcurrentHashMap<>();
+
+    private AISAreaFiles() {
+    }
+
+    /**
+     * Check that the configured files can be read, without parsing or indexing them.
+     *
+     * @param value paths separated by {@code ;}, may be null or empty
+     * @throws IllegalArgumentException if a file is missing or not readable
+     */
+    static void check(String value) {
+        if (value == null) {
+            return;
+        }
+        for (String entry : value.split(";")) {
+            if (!entry.trim().isEmpty()) {
+                Path file = Paths.get(entry.trim());
+                if (!Files.isRegularFile(file) || !Files.isReadable(file)) {
+                    throw new IllegalArgumentException("Unable to read area file " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Load the areas of the configured files.
+     *
+     * @param value paths separated by {@code ;}, may be null or empty
+     * @return the index, or null when no file is configured
+     * @throws IllegalArgumentException if a file cannot be read or parsed
+     */
+    static AISAreaIndex load(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        List<Path> files = new ArrayList<>();
+        StringBuilder key = new StringBuilder();
+        for (String entry : value.split(";")) {
+            if (!entry.trim().isEmpty()) {
+                Path file = Paths.get(entry.trim());
+                files.add(file);
+                try {
+                    key.append(file.toAbsolutePath()).append('@').append(Files.getLastModifiedTime(file).toMillis()).append(';');
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Unable to read area file " + file + ": " + e, e);
+                }
+            }
+        }
+        AISAreaIndex index = CACHE.get(key.toString());
+        if (index == null) {
+            List<AISAreaIndex.Area> areas = new ArrayList<>();
+            for (Path file : files) {
+                areas.addAll(read(file));
+            }
+            long start = System.nanoTime();
+            index = new AISAreaIndex(areas, AISAreaIndex.DEFAULT_GRID_SIZE);
+            log.info("Indexed " + areas.size() + " areas from " + value.trim() + " in "
+                    + (System.nanoTime() - start) / 1000000 + " ms: " + index);
+            CACHE.put(key.toString(), index);
+        }
+        return index;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the file cannot be read or parsed
+     */
+    static List<AISAreaIndex.Area> read(Path file) {
+        String text;
+        try {
+            text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to read area file " + file + ": " + e, e);
+        }
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot + 1).toLowerCase() : "";
+        try {
+            List<AISAreaIndex.Area> areas = extension.equals("json") || extension.equals("geojson")
+                    ? readGeoJson(text, base) : readWkt(text, base);
+            if (areas.isEmpty()) {
+                throw new IllegalArgumentException("No polygon found");
+            }
+            return areas;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unable to parse area file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    static List<AISAreaIndex.Area> readWkt(String text, String base) {
+        List<AISAreaIndex.Area> areas = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : text.split("\r?\n")) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String id = null;
+            int semicolon = line.indexOf(';');
+            if (semicolon >= 0 && !line.substring(0, semicolon).trim().toUpperCase().startsWith("SRID")) {
+                id = line.substring(0, semicolon).trim();
+                line = line.substring(semicolon + 1).trim();
+            } else if (semicolon >= 0) {
+                line = line.substring(semicolon + 1).trim();
+            }
+            String upper = line.toUpperCase();
+            if (!upper.startsWith("POLYGON") && !upper.startsWith("MULTIPOLYGON")) {
+                throw new IllegalArgumentException("Line " + lineNumber + " is not a POLYGON or MULTIPOLYGON");
+            }
+            List<double[]> rings = new ArrayList<>();
+            int open = line.indexOf('(');
+            if (open < 0) {
+                throw new IllegalArgumentException("Line " + lineNumber + " has no coordinates");
+            }
+            int end = wktRings(line, open, rings, lineNumber);
+            if (line.substring(end).trim().length() > 0) {
+                throw new IllegalArgumentException("Line " + lineNumber + " has text after the geometry");
+            }
+            areas.add(new AISAreaIndex.Area(id != null && !id.isEmpty() ? id : base + "-" + (areas.size() + 1), rings));
+        }
+        return areas;
+    }
+
+    /**
+     * Read a parenthesised list starting at {@code open}: nested lists, or a ring of space separated
+     * coordinate pairs.
+     *
+     * @return position after the closing parenthesis
+     */
+    private static int wktRings(String line, int open, List<double[]> rings, int lineNumber) {
+        int i = skipSpace(line, open + 1);
+        if (i < line.length() && line.charAt(i) == '(') {
+            while (true) {
+                i = skipSpace(line, wktRings(line, i, rings, lineNumber));
+                if (i >= line.length()) {
+                    throw new IllegalArgumentException("Line " + lineNumber + " ends inside the geometry");
+                }
+                char c = line.charAt(i);
+                if (c == ')') {
+                    return i + 1;
+                }
+                if (c != ',') {
+                    throw new IllegalArgumentException("Line " + lineNumber + " has '" + c + "' at " + i);
+                }
+                i = skipSpace(line, i + 1);
+            }
+        }
+        int close = line.indexOf(')', i);
+        if (close < 0) {
+            throw new IllegalArgumentException("Line " + lineNumber + " ends inside the geometry");
+        }
+        String[] points = line.substring(i, close).split(",");
+        double[] ring = new double[points.length * 2];
+        for (int p = 0; p < points.length; p++) {
+            String[] xy = points[p].trim().split("\\s+");
+            if (xy.length < 2) {
+                throw new IllegalArgumentException("Line " + lineNumber + " has a point without two coordinates");
+            }
+            ring[2 * p] = coordinate(xy[0]);
+            ring[2 * p + 1] = coordinate(xy[1]);
+        }
+        addRing(rings, ring);
+        return close + 1;
+    }
+
+    private static int skipSpace(String text, int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static double coordinate(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Coordinate is not a number: " + value, e);
+        }
+    }
+
+    private static void addRing(List<double[]> rings, double[] ring) {
+        if (ring.length < 6) {
+            throw new IllegalArgumentException("Ring with fewer than three points");
+        }
+        rings.add(ring);
+    }
+
+    static List<AISAreaIndex.Area> readGeoJson(String text, String base) {
+        Object root = new JsonParser(text).parse();
+        List<AISAreaIndex.Area> areas = new ArrayList<>();
+        addGeoJson(root, null, base, areas);
+        return areas;
+    }
+
+    private static void addGeoJson(Object node, String id, String base, List<AISAreaIndex.Area> areas) {
+        if (!(node instanceof Map)) {
+            throw new IllegalArgumentException("GeoJSON object expected");
+        }
+        Map<?, ?> object = (Map<?, ?>) node;
+        Object type = object.get("type");
+        if ("FeatureCollection".equals(type)) {
+            Object features = object.get("features");
+            if (!(features instanceof List)) {
+                throw new IllegalArgumentException("Feature collection without features");
+            }
+            for (Object feature : (List<?>) features) {
+                addGeoJson(feature, null, base, areas);
+            }
+        } else if ("Feature".equals(type)) {
+            Object featureId = object.get("id");
+            Object properties = object.get("properties");
+            if (featureId == null && properties instanceof Map) {
+                featureId = ((Map<?, ?>) properties).get("id");
+                if (featureId == null) {
+                    featureId = ((Map<?, ?>) properties).get("name");
+                }
+            }
+            if (object.get("geometry") != null) {
+                addGeoJson(object.get("geometry"), featureId != null ? featureId.toString() : null, base, areas);
+            }
+        } else if ("Polygon".equals(type) || "MultiPolygon".equals(type)) {
+            List<double[]> rings = new ArrayList<>();
+            geoJsonRings(object.get("coordinates"), rings);
+            areas.add(new AISAreaIndex.Area(id != null ? id : base + "-" + (areas.size() + 1), rings));
+        } else {
+            log.fine("Ignoring GeoJSON " + type);
+        }
+    }
+
+    /**
+     * Collect the innermost arrays of positions, whatever their nesting depth.
+     */
+    private static void geoJsonRings(Object coordinates, List<double[]> rings) {
+        if (!(coordinates instanceof List) || ((List<?>) coordinates).isEmpty()) {
+            throw new IllegalArgumentException("Geometry without coordinates");
+        }
+        List<?> list = (List<?>) coordinates;
+        Object first = list.get(0);
+        if (first instanceof List && !((List<?>) first).isEmpty() && ((List<?>) first).get(0) instanceof Double) {
+            double[] ring = new double[list.size() * 2];
+            for (int p = 0; p < list.size(); p++) {
+                List<?> position = (List<?>) list.get(p);
+                if (position.size() < 2) {
+                    throw new IllegalArgumentException("Position without two coordinates");
+                }
+                ring[2 * p] = (Double) position.get(0);
+                ring[2 * p + 1] = (Double) position.get(1);
+            }
+            addRing(rings, ring);
+        } else {
+            for (Object child : list) {
+                geoJsonRings(child, rings);
+            }
+        }
+    }
+
+    /**
+     * Just enough JSON for GeoJSON files: objects become maps, arrays lists and numbers doubles.
+     */
+    private static final class JsonParser {
+        private final String text;
+        private int at;
+
+        JsonParser(String text) {
+            this.text = text;
+        }
+
+        Object parse() {
+            Object value = value();
+            skip();
+            if (at < text.length()) {
+                throw error("Unexpected text after the JSON value");
+            }
+            return value;
+        }
+
+        private Object value() {
+            skip();
+            if (at >= text.length()) {
+                throw error("Unexpected end");
+            }
+            char c = text.charAt(at);
+            switch (c) {
+                case '{':
+                    return object();
+                case '[':
+                    return array();
+                case '"':
+                    return string();
+                case 't':
+                    return literal("true", Boolean.TRUE);
+                case 'f':
+                    return literal("false", Boolean.FALSE);
+                case 'n':
+                    return literal("null", null);
+                default:
+                    return number();
+            }
+        }
+
+        private Map<String, Object> object() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            at++;
+            skip();
+            if (peek() == '}') {
+                at++;
+                return result;
+            }
+            while (true) {
+                skip();
+                if (peek() != '"') {
+                    throw error("Object key expected");
+                }
+                String key = string();
+                skip();
+                expect(':');
+                result.put(key, value());
+                skip();
+                if (peek() == ',') {
+                    at++;
+                } else {
+                    expect('}');
+                    return result;
+                }
+            }
+        }
+
+        private List<Object> array() {
+            List<Object> result = new ArrayList<>();
+            at++;
+            skip();
+            if (peek() == ']') {
+                at++;
+                return result;
+            }
+            while (true) {
+                result.add(value());
+                skip();
+                if (peek() == ',') {
+                    at++;
+                } else {
+                    expect(']');
+                    return result;
+                }
+            }
+        }
+
+        private String string() {
+            StringBuilder result = new StringBuilder();
+            at++;
+            while (at < text.length()) {
+                char c = text.charAt(at++);
+                if (c == '"') {
+                    return result.toString();
+                }
+                if (c == '\\') {
+                    if (at >= text.length()) {
+                        break;
+                    }
+                    char escaped = text.charAt(at++);
+                    switch (escaped) {
+                        case 'b':
+                            result.append('\b');
+                            break;
+                        case 'f':
+                            result.append('\f');
+                            break;
+                        case 'n':
+                            result.append('\n');
+                            break;
+                        case 'r':
+                            result.append('\r');
+                            break;
+                        case 't':
+                            result.append('\t');
+                            break;
+                        case 'u':
+                            if (at + 4 > text.length()) {
+                                throw error("Truncated unicode escape");
+                            }
+                            result.append((char) Integer.parseInt(text.substring(at, at + 4), 16));
+                            at += 4;
+                            break;
+                        default:
+                            result.append(escaped);
+                            break;
+                    }
+                } else {
+                    result.append(c);
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private Object literal(String word, Object value) {
+            if (!text.startsWith(word, at)) {
+                throw error("Unexpected character");
+            }
+            at += word.length();
+            return value;
+        }
+
+        private Double number() {
+            int start = at;
+            while (at < text.length() && "+-0123456789.eE".indexOf(text.charAt(at)) >= 0) {
+                at++;
+            }
+            try {
+                return Double.valueOf(text.substring(start, at));
+            } catch (NumberFormatException e) {
+                throw error("Number expected");
+            }
+        }
+
+        private void skip() {
+            at = skipSpace(text, at);
+        }
+
+        private char peek() {
+            return at < text.length() ? text.charAt(at) : 0;
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw error("'" + c + "' expected");
+            }
+            at++;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at offset " + at);
+        }
+    }
+}
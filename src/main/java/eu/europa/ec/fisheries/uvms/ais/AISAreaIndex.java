@@ -0,0 +1,400 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the areas a position lies in, with areas given as polygons that may have holes and many vertices.
+ * <p>
+ * The polygons are rasterised once into a grid over their bounding box. A cell that no edge passes through
+ * lies wholly inside or outside each area, so its answer is precomputed; cells with identical answers share
+ * one entry. A cell an edge passes through keeps the edges crossing it and whether its centre is inside;
+ * a position in it is inside when the segment from the centre to the position crosses those edges an even
+ * number of times, or an odd number if the centre is outside. Lookups therefore cost a few arithmetic
+ * operations away from the boundaries and a handful of edge tests near them, independent of the vertex count.
+ * Rings are combined with the even-odd rule, so holes are rings of the same area. Instances are immutable.
+ */
+final class AISAreaIndex {
+
+    /** Cells along the longer side of the bounding box */
+    static final int DEFAULT_GRID_SIZE = 1024;
+
+    private static final List<String> NO_AREAS = Collections.emptyList();
+
+    /**
+     * One area: an identifier and its rings of longitude, latitude pairs in degrees.
+     */
+    static final class Area {
+        final String id;
+        final List<double[]> rings;
+
+        Area(String id, List<double[]> rings) {
+            this.id = id;
+            this.rings = rings;
+        }
+    }
+
+    private static final class Cell {
+        /** Areas containing the whole cell */
+        final List<String> insideIds;
+        /** Areas whose boundary crosses the cell, empty for most cells */
+        final int[] boundary;
+        final boolean[] centerInside;
+        /** Per boundary area: the edges crossing the cell as x1, y1, x2, y2 */
+        final double[][] edges;
+        final double centerX;
+        final double centerY;
+
+        Cell(List<String> insideIds, int[] boundary, boolean[] centerInside, double[][] edges,
+             double centerX, double centerY) {
+            this.insideIds = insideIds;
+            this.boundary = boundary;
+            this.centerInside = centerInside;
+            this.edges = edges;
+            this.centerX = centerX;
+            this.centerY = centerY;
+        }
+    }
+
+    private final String[] ids;
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[] cells;
+    private final Cell[] classes;
+
+    /**
+     * @param areas    the areas, at least one
+     * @param gridSize number of cells along the longer side of the bounding box of all areas
+     */
+    AISAreaIndex(List<Area> areas, int gridSize) {
+        if (areas.isEmpty()) {
+            throw new IllegalArgumentException("No area to index");
+        }
+        double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE;
+        ids = new String[areas.size()];
+        for (int a = 0; a < areas.size(); a++) {
+            ids[a] = areas.get(a).id;
+            for (double[] ring : areas.get(a).rings) {
+                for (int i = 0; i < ring.length; i += 2) {
+                    x0 = Math.min(x0, ring[i]);
+                    x1 = Math.max(x1, ring[i]);
+                    y0 = Math.min(y0, ring[i + 1]);
+                    y1 = Math.max(y1, ring[i + 1]);
+                }
+            }
+        }
+        minX = x0;
+        minY = y0;
+        cellSize = Math.max(Math.max(x1 - x0, y1 - y0) / gridSize, 1e-6);
+        columns = (int) ((x1 - x0) / cellSize) + 1;
+        rows = (int) ((y1 - y0) / cellSize) + 1;
+        cells = new int[columns * rows];
+
+        Builder builder = new Builder();
+        for (int a = 0; a < areas.size(); a++) {
+            rasterise(a, areas.get(a), builder);
+        }
+        classes = builder.build(ids);
+    }
+
+    /**
+     * Mark the cells of one area: those its edges cross, and those between the edges whose centre is inside.
+     */
+    private void rasterise(int area, Area polygon, Builder builder) {
+        Map<Integer, EdgeList> crossed = new HashMap<>();
+        List<EdgeList> rowEdges = new ArrayList<>(Collections.<EdgeList>nCopies(rows, null));
+        int firstRow = rows, lastRow = -1, firstColumn = columns, lastColumn = -1;
+        for (double[] ring : polygon.rings) {
+            int n = ring.length / 2;
+            for (int i = 0; i < n; i++) {
+                double ax = ring[2 * i], ay = ring[2 * i + 1];
+                double bx = ring[2 * ((i + 1) % n)], by = ring[2 * ((i + 1) % n) + 1];
+                if (ax == bx && ay == by) {
+                    continue;
+                }
+                int r0 = row(Math.min(ay, by)), r1 = row(Math.max(ay, by));
+                firstRow = Math.min(firstRow, r0);
+                lastRow = Math.max(lastRow, r1);
+                for (int r = r0; r <= r1; r++) {
+                    // Part of the edge within the band of this row
+                    double bandLow = minY + r * cellSize, bandHigh = bandLow + cellSize;
+                    double xLow, xHigh;
+                    if (ay == by) {
+                        xLow = Math.min(ax, bx);
+                        xHigh = Math.max(ax, bx);
+                    } else {
+                        double t0 = clamp((bandLow - ay) / (by - ay)), t1 = clamp((bandHigh - ay) / (by - ay));
+                        double xa = ax + t0 * (bx - ax), xb = ax + t1 * (bx - ax);
+                        xLow = Math.min(xa, xb);
+                        xHigh = Math.max(xa, xb);
+                    }
+                    int c0 = column(xLow), c1 = column(xHigh);
+                    firstColumn = Math.min(firstColumn, c0);
+                    lastColumn = Math.max(lastColumn, c1);
+                    for (int c = c0; c <= c1; c++) {
+                        EdgeList edges = crossed.get(r * columns + c);
+                        if (edges == null) {
+                            edges = new EdgeList();
+                            crossed.put(r * columns + c, edges);
+                        }
+                        edges.add(ax, ay, bx, by);
+                    }
+                    if (rowEdges.get(r) == null) {
+                        rowEdges.set(r, new EdgeList());
+                    }
+                    rowEdges.get(r).add(ax, ay, bx, by);
+                }
+            }
+        }
+
+        double[] crossings = new double[16];
+        for (int r = firstRow; r <= lastRow; r++) {
+            EdgeList edges = rowEdges.get(r);
+            if (edges == null) {
+                continue;
+            }
+            // Where the centre line of the row crosses the edges, counted half-open so vertices count once
+            double y = minY + (r + 0.5) * cellSize;
+            int count = 0;
+            for (int e = 0; e < edges.size; e += 4) {
+                double ax = edges.values[e], ay = edges.values[e + 1], bx = edges.values[e + 2], by = edges.values[e + 3];
+                if ((ay > y) != (by > y)) {
+                    if (count == crossings.length) {
+                        crossings = Arrays.copyOf(crossings, count * 2);
+                    }
+                    crossings[count++] = ax + (y - ay) * (bx - ax) / (by - ay);
+                }
+            }
+            Arrays.sort(crossings, 0, count);
+            int left = 0;
+            for (int c = firstColumn; c <= lastColumn; c++) {
+                double x = minX + (c + 0.5) * cellSize;
+                while (left < count && crossings[left] < x) {
+                    left++;
+                }
+                boolean inside = (left & 1) == 1;
+                EdgeList cellEdges = crossed.get(r * columns + c);
+                if (cellEdges != null) {
+                    builder.addBoundary(cells, r * columns + c, area, inside, cellEdges.toArray(), x, y);
+                } else if (inside) {
+                    builder.addInside(cells, r * columns + c, area);
+                }
+            }
+        }
+    }
+
+    private static double clamp(double t) {
+        return Math.max(0, Math.min(1, t));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / cellSize)));
+    }
+
+    private int column(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) ((x - minX) / cellSize)));
+    }
+
+    /**
+     * Find the areas containing a position.
+     *
+     * @param latitude  latitude in 1/10000 minute as in {@link AISMessage}
+     * @param longitude longitude in 1/10000 minute as in {@link AISMessage}
+     * @return identifiers of the areas, empty when none or the position is not available
+     */
+    List<String> find(int latitude, int longitude) {
+        return find(latitude / (double) AISMessage.UNITS_PER_DEGREE, longitude / (double) AISMessage.UNITS_PER_DEGREE);
+    }
+
+    /**
+     * @param y latitude in degrees
+     * @param x longitude in degrees
+     * @return identifiers of the areas containing the position, empty when none
+     */
+    List<String> find(double y, double x) {
+        double column = (x - minX) / cellSize;
+        double row = (y - minY) / cellSize;
+        if (!(column >= 0 && column < columns && row >= 0 && row < rows)) {
+            return NO_AREAS;
+        }
+        Cell cell = classes[cells[(int) row * columns + (int) column]];
+        if (cell.boundary.length == 0) {
+            return cell.insideIds;
+        }
+        List<String> result = null;
+        for (int b = 0; b < cell.boundary.length; b++) {
+            if (cell.centerInside[b] != crossesOddTimes(cell.edges[b], cell.centerX, cell.centerY, x, y)) {
+                if (result == null) {
+                    result = new ArrayList<>(cell.insideIds);
+                }
+                result.add(ids[cell.boundary[b]]);
+            }
+        }
+        return result != null ? Collections.unmodifiableList(result) : cell.insideIds;
+    }
+
+    private static boolean crossesOddTimes(double[] edges, double cx, double cy, double px, double py) {
+        boolean odd = false;
+        for (int e = 0; e < edges.length; e += 4) {
+            double ax = edges[e], ay = edges[e + 1], bx = edges[e + 2], by = edges[e + 3];
+            // Signs are split at zero the same way for every edge, so a vertex on the segment counts once
+            if ((side(ax, ay, bx, by, cx, cy) > 0) != (side(ax, ay, bx, by, px, py) > 0)
+                    && (side(cx, cy, px, py, ax, ay) > 0) != (side(cx, cy, px, py, bx, by) > 0)) {
+                odd = !odd;
+            }
+        }
+        return odd;
+    }
+
+    private static double side(double ax, double ay, double bx, double by, double x, double y) {
+        return (bx - ax) * (y - ay) - (by - ay) * (x - ax);
+    }
+
+    int getAreaCount() {
+        return ids.length;
+    }
+
+    /**
+     * @return number of distinct cell entries, a measure of the memory the index takes beyond its grid
+     */
+    int getCellClassCount() {
+        return classes.length;
+    }
+
+    @Override
+    public String toString() {
+        return "AISAreaIndex{areas=" + ids.length + ", grid=" + columns + "x" + rows + ", cellSize=" + cellSize
+                + ", cellClasses=" + classes.length + "}";
+    }
+
+    /**
+     * Growable array of edges as x1, y1, x2, y2.
+     */
+    private static final class EdgeList {
+        double[] values = new double[8];
+        int size;
+
+        void add(double ax, double ay, double bx, double by) {
+            if (size + 4 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = ax;
+            values[size++] = ay;
+            values[size++] = bx;
+            values[size++] = by;
+        }
+
+        double[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Collects the cell entries while the areas are rasterised one after the other. Entries of cells wholly
+     * inside or outside are shared and found again through the transitions from one set of areas to the
+     * next; every boundary cell gets an entry of its own.
+     */
+    private static final class Builder {
+        private final List<int[]> inside = new ArrayList<>();
+        private final List<BoundaryEntry> boundary = new ArrayList<>();
+        private final Map<Long, Integer> transitions = new HashMap<>();
+
+        Builder() {
+            inside.add(new int[0]);
+            boundary.add(null);
+        }
+
+        void addInside(int[] cells, int cell, int area) {
+            int current = cells[cell];
+            BoundaryEntry entry = boundary.get(current);
+            if (entry != null) {
+                inside.set(current, append(inside.get(current), area));
+                return;
+            }
+            Long key = (long) current << 32 | area;
+            Integer next = transitions.get(key);
+            if (next == null) {
+                next = inside.size();
+                inside.add(append(inside.get(current), area));
+                boundary.add(null);
+                transitions.put(key, next);
+            }
+            cells[cell] = next;
+        }
+
+        void addBoundary(int[] cells, int cell, int area, boolean centerInside, double[] edges, double x, double y) {
+            int current = cells[cell];
+            BoundaryEntry entry = boundary.get(current);
+            if (entry == null) {
+                entry = new BoundaryEntry(x, y);
+                cells[cell] = inside.size();
+                inside.add(inside.get(current));
+                boundary.add(entry);
+            }
+            entry.areas = append(entry.areas, area);
+            entry.centerInside.add(centerInside);
+            entry.edges.add(edges);
+        }
+
+        private static int[] append(int[] values, int value) {
+            int[] result = Arrays.copyOf(values, values.length + 1);
+            result[values.length] = value;
+            return result;
+        }
+
+        Cell[] build(String[] ids) {
+            Cell[] result = new Cell[inside.size()];
+            for (int i = 0; i < result.length; i++) {
+                int[] areas = inside.get(i);
+                String[] names = new String[areas.length];
+                for (int a = 0; a < areas.length; a++) {
+                    names[a] = ids[areas[a]];
+                }
+                List<String> insideIds = names.length == 0 ? NO_AREAS : Collections.unmodifiableList(Arrays.asList(names));
+                BoundaryEntry entry = boundary.get(i);
+                if (entry == null) {
+                    result[i] = new Cell(insideIds, new int[0], new boolean[0], new double[0][], 0, 0);
+                } else {
+                    boolean[] centerInside = new boolean[entry.areas.length];
+                    for (int b = 0; b < centerInside.length; b++) {
+                        centerInside[b] = entry.centerInside.get(b);
+                    }
+                    result[i] = new Cell(insideIds, entry.areas, centerInside,
+                            entry.edges.toArray(new double[0][]), entry.x, entry.y);
+                }
+            }
+            return result;
+        }
+    }
+
+    private static final class BoundaryEntry {
+        final double x;
+        final double y;
+        int[] areas = new int[0];
+        final List<Boolean> centerInside = new ArrayList<>(1);
+        final List<double[]> edges = new ArrayList<>(1);
+
+        BoundaryEntry(double x, double y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+/**
+ * What the reader does with the areas a position report falls in, see {@link AISSentence#getAreas()}.
+ */
+public enum AISAreaMode {
+
+    /**
+     * Queue every message and tag position reports with the areas they fall in.
+     */
+    TAG,
+
+    /**
+     * Tag as {@link #TAG}, but count and discard position reports outside every area, including those without
+     * an available position. Other messages are queued.
+     */
+    FILTER;
+
+    /**
+     * Parse a configured mode, case insensitive.
+     *
+     * @param value the configured value, may be null or empty
+     * @return the mode, {@link #TAG} when nothing is configured
+     */
+    public static AISAreaMode parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return TAG;
+        }
+        return valueOf(value.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,110 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.logging.Logger;
+
+/**
+ * Frames CR/LF terminated NMEA lines read from a channel.
+ * <p>
+ * Bytes are read into one reusable direct buffer and scanned for line terminators in place. Each complete
+ * line is copied into a reusable byte array and handed to a {@link LineHandler}; nothing is decoded to
+ * characters here. Instances are not thread safe and belong to a single reader thread.
+ */
+class AISChannelReader {
+
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    static final int MAX_LINE_LENGTH = 1024;
+
+    private static Logger log = Logger.getLogger(AISChannelReader.class.getName());
+
+    /**
+     * Receives the framed lines. The array is reused for the next line, so implementations must copy
+     * whatever they need to keep.
+     */
+    interface LineHandler {
+        void onLine(byte[] line, int length);
+    }
+
+    private final ByteBuffer buffer;
+    private final byte[] line;
+
+    AISChannelReader() {
+        this(DEFAULT_BUFFER_SIZE, MAX_LINE_LENGTH);
+    }
+
+    AISChannelReader(int bufferSize, int maxLineLength) {
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.line = new byte[maxLineLength];
+    }
+
+    /**
+     * Performs a single read from the channel and dispatches every line completed by it.
+     *
+     * @param channel the channel to read from
+     * @param handler receives the complete lines
+     * @return the number of bytes read, possibly zero, or -1 at end of stream
+     * @throws IOException if the read fails
+     */
+    int read(ReadableByteChannel channel, LineHandler handler) throws IOException {
+        int count = channel.read(buffer);
+        if (count > 0) {
+            dispatch(handler);
+        }
+        return count;
+    }
+
+    /**
+     * Drop any partially received line, e.g. after a reconnect.
+     */
+    void reset() {
+        buffer.clear();
+    }
+
+    private void dispatch(LineHandler handler) {
+        int limit = buffer.position();
+        int start = 0;
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                if (i > start) {
+                    emit(start, i - start, handler);
+                }
+                start = i + 1;
+            }
+        }
+
+        if (start == 0 && limit == buffer.capacity()) {
+            // No terminator in a full buffer; the line can never be framed, so throw it away
+            log.warning("Discarding " + limit + " bytes without line terminator");
+            buffer.clear();
+            return;
+        }
+
+        buffer.limit(limit);
+        buffer.position(start);
+        buffer.compact();
+    }
+
+    private void emit(int start, int length, LineHandler handler) {
+        if (length > line.length) {
+            log.fine("Discarding line of " + length + " bytes");
+            return;
+        }
+        buffer.position(start);
+        buffer.get(line, 0, length);
+        handler.onLine(line, length);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+/**
+ * What the reader does with a VDM/VDO sentence whose {@code *hh} checksum is missing or wrong.
+ */
+public enum AISChecksumPolicy {
+
+    /**
+     * Count and discard the sentence; a multi-fragment message loses the whole message.
+     */
+    DROP,
+
+    /**
+     * Count the sentence and queue it anyway, marked as not valid, see {@link AISSentence#isChecksumValid()}.
+     */
+    FLAG,
+
+    /**
+     * Do not verify checksums.
+     */
+    OFF;
+
+    /**
+     * Parse a configured policy, case insensitive.
+     *
+     * @param value the configured value, may be null or empty
+     * @return the policy, {@link #DROP} when nothing is configured
+     */
+    public static AISChecksumPolicy parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return DROP;
+        }
+        return valueOf(value.trim().toUpperCase());
+    }
+}
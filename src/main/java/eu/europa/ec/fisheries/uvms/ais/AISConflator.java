@@ -0,0 +1,115 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps only the newest position report of each vessel over an interval.
+ * <p>
+ * Reports are stored in one slot per MMSI, see {@link AISMmsiIndex}, a newer report overwriting the one
+ * before. The first report of an interval starts it; once it has passed, the reader takes the slots into its
+ * queue in the order the vessels first reported and the table starts over empty. The queue therefore receives
+ * at most one position per vessel per interval, and the table never holds more than the vessels heard in one
+ * interval. Not thread safe; the reader calls it under the same lock as its queue.
+ */
+final class AISConflator {
+
+    private final long intervalMillis;
+    private final AISMmsiIndex vessels = new AISMmsiIndex(1024);
+    private AISSentence[] latest = new AISSentence[1024];
+    /** Time the current interval ends, Long.MAX_VALUE while empty; read without lock for a cheap check */
+    private volatile long dueAt = Long.MAX_VALUE;
+    private final AtomicLong conflated = new AtomicLong();
+
+    /**
+     * @param intervalMillis length of an interval, positive
+     */
+    AISConflator(long intervalMillis) {
+        if (intervalMillis < 1) {
+            throw new IllegalArgumentException("Conflation interval must be positive: " + intervalMillis);
+        }
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Keep a position report, replacing the previous one of the same vessel in this interval.
+     *
+     * @param mmsi     the vessel
+     * @param sentence the report
+     * @param now      current time in milliseconds
+     */
+    void put(int mmsi, AISSentence sentence, long now) {
+        if (vessels.size() == 0) {
+            dueAt = now + intervalMillis;
+        }
+        int slot = vessels.add(mmsi);
+        if (slot == latest.length) {
+            latest = Arrays.copyOf(latest, slot * 2);
+        }
+        if (latest[slot] != null) {
+            conflated.incrementAndGet();
+        }
+        latest[slot] = sentence;
+    }
+
+    /**
+     * @return true if the current interval has passed and its reports are to be taken
+     */
+    boolean isDue(long now) {
+        return now >= dueAt;
+    }
+
+    /**
+     * @return milliseconds until the current interval passes, Long.MAX_VALUE while empty
+     */
+    long getDelay(long now) {
+        long due = dueAt;
+        return due == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, due - now);
+    }
+
+    /**
+     * @return number of vessels with a report in the current interval
+     */
+    int size() {
+        return vessels.size();
+    }
+
+    /**
+     * @param slot below {@link #size()}, in the order the vessels first reported
+     * @return the newest report of the vessel
+     */
+    AISSentence get(int slot) {
+        return latest[slot];
+    }
+
+    /**
+     * End the interval after its reports were taken.
+     */
+    void clear() {
+        Arrays.fill(latest, 0, vessels.size(), null);
+        vessels.clear();
+        dueAt = Long.MAX_VALUE;
+    }
+
+    long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * @return reports replaced by a newer one of the same vessel before they were queued
+     */
+    long getConflatedCount() {
+        return conflated.get();
+    }
+}
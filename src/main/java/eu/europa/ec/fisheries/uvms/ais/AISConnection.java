@@ -32,6 +32,7 @@ copy of the GNU General Public License along with the IFDM Suite. If not, see <h
  */
 package eu.europa.ec.fisheries.uvms.ais;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -50,10 +51,145 @@ public interface AISConnection
 
    public void open(String host, Integer port, String userName, String password);
 
+   /**
+    * Start reading the feeds configured in the <code>feeds</code> property of the connection factory
+    *
+    * @throws IllegalStateException if no feed is configured
+    */
+   public void open();
+
+   /**
+    * Start reading several feeds into the queue of this connection. In <code>CHANNEL</code> reader mode
+    * all of them are read by a single thread.
+    *
+    * @param feeds The feeds, at least one
+    */
+   public void open(List<AISFeed> feeds);
+
+   /**
+    * Take all sentences this handle has not read yet. Every handle of a connection reads the whole stream
+    * through its own cursor, so handles do not take sentences from each other; a sentence is kept until the
+    * slowest open handle has read it or the overflow policy drops it.
+    *
+    * @return The sentences in arrival order
+    */
    public List<String> getSentences();
 
+   /**
+    * Take up to <code>maxElements</code> of the oldest sentences this handle has not read yet and add
+    * them to <code>target</code>, e.g. a list that is cleared and reused between calls. Threads draining
+    * the same handle concurrently each get a different part of its sentences.
+    *
+    * @param target Receives the sentences in arrival order
+    * @param maxElements Maximum number of sentences to move
+    * @return Number of sentences moved
+    */
+   public int drainTo(Collection<? super String> target, int maxElements);
+
+   /**
+    * Like {@link #drainTo(Collection, int)}, handing out each sentence with the tag of its feed and its
+    * receive time.
+    *
+    * @param target Receives the sentences in arrival order
+    * @param maxElements Maximum number of sentences to move
+    * @return Number of sentences moved
+    */
+   public int drainSentencesTo(Collection<? super AISSentence> target, int maxElements);
+
+   /**
+    * Like {@link #drainTo(Collection, int)}, handing out each sentence as a decoded message. Fields are
+    * only decoded when read, so a consumer that filters on type or MMSI pays for little more than that.
+    *
+    * @param target Receives the messages in arrival order
+    * @param maxElements Maximum number of messages to move
+    * @return Number of messages moved
+    */
+   public int drainMessagesTo(Collection<? super AISMessage> target, int maxElements);
+
+   /**
+    * Refill <code>batch</code> with the position reports (types 1, 2, 3, 18, 19 and 27) among the oldest
+    * unread sentences, until the batch is full or all are read. Other sentences read on the way are
+    * skipped, so a handle should be consumed either through this method or through the others; use a
+    * second handle to read them too. The time of each report is the UTC second it carries, placed in the
+    * minute of the provider time of its sentence, or of the receive time when the provider sent none.
+    *
+    * @param batch The batch to clear and refill
+    * @return Number of reports in the batch
+    */
+   public int drainPositions(AISPositionBatch batch);
+
+   /**
+    * Look up the latest position of a vessel. The connection keeps one per vessel when the
+    * <code>vesselCapacity</code> property of the connection factory is set, updated as reports are read,
+    * whether or not they were drained yet. The lookup takes no lock; it only retries while the reader is
+    * in the middle of updating that vessel.
+    *
+    * @param mmsi The vessel
+    * @return Its latest state, null if it was not heard within the <code>vesselTimeout</code> or no vessels
+    * are kept
+    */
+   public AISVesselState getVessel(int mmsi);
+
+   /**
+    * Refill <code>batch</code> with the latest position of every vessel kept, see {@link #getVessel(int)},
+    * all as of the same instant. A batch with the capacity of the vessel table receives them all.
+    *
+    * @param batch The batch to clear and refill
+    * @return Number of vessels in the batch, 0 if no vessels are kept
+    */
+   public int getVessels(AISPositionBatch batch);
+
+   /**
+    * Look up the static and voyage data of a vessel: name, call sign, IMO number, ship type, dimensions,
+    * draught, destination and ETA, merged from the type 5, 19 and 24 messages read so far. It is kept in the
+    * same table as the positions, see {@link #getVessel(int)}, which also returns it.
+    *
+    * @param mmsi The vessel
+    * @return Its static data, null if none was heard within the <code>vesselTimeout</code> or no vessels are
+    * kept
+    */
+   public AISVesselInfo getVesselInfo(int mmsi);
+
+   /**
+    * Join a batch of position reports, e.g. from {@link #drainPositions(AISPositionBatch)}, to the static data
+    * of their vessels. The lookups take no lock.
+    *
+    * @param batch The position reports
+    * @param infos Receives the static data of row <code>i</code> at index <code>i</code>, null where none was
+    * heard; at least as long as the batch
+    * @return Number of rows with static data
+    */
+   public int enrich(AISPositionBatch batch, AISVesselInfo[] infos);
+
+   /**
+    * @return Number of sentences this handle has not read yet
+    */
    public long getQueueSize();
 
+   /**
+    * Replace the filter that decides which messages are queued, see the <code>filter</code> property of
+    * the connection factory. It applies to every handle of the connection from the next message on. Connections
+    * of a factory with <code>feeds</code> share their reader with every other consumer of those feeds, so their
+    * filter can only be set on the connection factory.
+    *
+    * @param filter The filter, null or empty to queue every message
+    * @throws IllegalArgumentException if the filter is malformed
+    * @throws IllegalStateException if the connection shares its reader
+    */
+   public void setFilter(String filter);
+
+   /**
+    * @return The filter in use, empty when every message is queued
+    */
+   public String getFilter();
+
+   /**
+    * Get the counters of every feed opened on this connection
+    *
+    * @return One entry per feed, updated live
+    */
+   public List<AISFeedStatistics> getFeedStatistics();
+
 
    /**
     * Close
@@ -52,4 +52,13 @@ public interface AISConnectionFactory extends Serializable, Referenceable
     */
    public AISConnection getConnection() throws ResourceException;
 
+   /** 
+    * Get a connection reading the given feeds. Connections of the same feeds share one reader.
+    *
+    * @param feeds Feed list in the format of the feeds property
+    * @return AISConnection instance
+    * @exception ResourceException Thrown if the feeds are invalid or a connection can't be obtained
+    */
+   public AISConnection getConnection(String feeds) throws ResourceException;
+
 }
\ No newline at end of file
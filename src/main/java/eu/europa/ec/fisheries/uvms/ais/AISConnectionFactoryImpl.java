@@ -82,7 +82,7 @@ public class AISConnectionFactoryImpl implements AISConnectionFactory
    }
 
    /** 
-    * Get connection from factory
+    * Get connection from factory. With feeds configured on the factory it shares the reader of those feeds.
     *
     * @return AISConnection instance
     * @exception ResourceException Thrown if a connection can't be obtained
@@ -91,7 +91,35 @@ public class AISConnectionFactoryImpl implements AISConnectionFactory
    public AISConnection getConnection() throws ResourceException
    {
       log.finest("getConnection()");
-      return (AISConnection)connectionManager.allocateConnection(mcf, null);
+      String feeds = mcf.getFeeds();
+      if (feeds == null || feeds.trim().isEmpty())
+      {
+         return (AISConnection)connectionManager.allocateConnection(mcf, null);
+      }
+      return getConnection(feeds);
+   }
+
+   /** 
+    * Get a connection reading the given feeds
+    *
+    * @param feeds Feed list in the format of the feeds property
+    * @return AISConnection instance
+    * @exception ResourceException Thrown if the feeds are invalid or a connection can't be obtained
+    */
+   @Override
+   public AISConnection getConnection(String feeds) throws ResourceException
+   {
+      log.finest("getConnection(" + feeds + ")");
+      AISConnectionRequestInfo requestInfo;
+      try
+      {
+         requestInfo = new AISConnectionRequestInfo(AISFeed.parseList(feeds));
+      }
+      catch (IllegalArgumentException e)
+      {
+         throw new ResourceException("Invalid AIS feeds: " + e.getMessage(), e);
+      }
+      return (AISConnection)connectionManager.allocateConnection(mcf, requestInfo);
    }
 
    /**
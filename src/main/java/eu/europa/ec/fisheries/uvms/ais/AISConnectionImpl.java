@@ -33,6 +33,7 @@ copy of the GNU General Public License along with the IFDM Suite. If not, see <h
 package eu.europa.ec.fisheries.uvms.ais;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -79,6 +80,20 @@ public class AISConnectionImpl implements AISConnection
       }
    }
 
+   @Override
+   public void open() {
+      if (mc != null) {
+         mc.open();
+      }
+   }
+
+   @Override
+   public void open(List<AISFeed> feeds) {
+      if (mc != null) {
+         mc.open(feeds);
+      }
+   }
+
    @Override
    public boolean isOpen() {
       if (mc != null) {
@@ -91,7 +106,90 @@ public class AISConnectionImpl implements AISConnection
    @Override
    public List<String> getSentences() {
       if (mc != null) {
-         return mc.getSentences();
+         return mc.getSentences(this);
+      }
+
+      return new ArrayList<>();
+   }
+
+   @Override
+   public int drainTo(Collection<? super String> target, int maxElements) {
+      if (mc != null) {
+         return mc.drainTo(this, target, maxElements);
+      }
+
+      return 0;
+   }
+
+   @Override
+   public int drainSentencesTo(Collection<? super AISSentence> target, int maxElements) {
+      if (mc != null) {
+         return mc.drainSentencesTo(this, target, maxElements);
+      }
+
+      return 0;
+   }
+
+   @Override
+   public int drainMessagesTo(Collection<? super AISMessage> target, int maxElements) {
+      if (mc != null) {
+         return mc.drainMessagesTo(this, target, maxElements);
+      }
+
+      return 0;
+   }
+
+   @Override
+   public int drainPositions(AISPositionBatch batch) {
+      if (mc != null) {
+         return mc.drainPositions(this, batch);
+      }
+
+      batch.clear();
+      return 0;
+   }
+
+   @Override
+   public AISVesselState getVessel(int mmsi) {
+      if (mc != null) {
+         return mc.getVessel(mmsi);
+      }
+
+      return null;
+   }
+
+   @Override
+   public int getVessels(AISPositionBatch batch) {
+      if (mc != null) {
+         return mc.getVessels(batch);
+      }
+
+      batch.clear();
+      return 0;
+   }
+
+   @Override
+   public AISVesselInfo getVesselInfo(int mmsi) {
+      if (mc != null) {
+         return mc.getVesselInfo(mmsi);
+      }
+
+      return null;
+   }
+
+   @Override
+   public int enrich(AISPositionBatch batch, AISVesselInfo[] infos) {
+      if (mc != null) {
+         return mc.enrich(batch, infos);
+      }
+
+      return 0;
+   }
+
+   @Override
+   public List<AISFeedStatistics> getFeedStatistics() {
+      if (mc != null) {
+         return mc.getFeedStatistics();
       }
 
       return new ArrayList<>();
@@ -100,12 +198,28 @@ public class AISConnectionImpl implements AISConnection
    @Override
    public long getQueueSize() {
       if (mc != null) {
-         return mc.getQueueSize();
+         return mc.getQueueSize(this);
       }
 
       return 0;
    }
 
+   @Override
+   public void setFilter(String filter) {
+      if (mc != null) {
+         mc.setFilter(filter);
+      }
+   }
+
+   @Override
+   public String getFilter() {
+      if (mc != null) {
+         return mc.getFilter();
+      }
+
+      return "";
+   }
+
    /**
     * Close
     */
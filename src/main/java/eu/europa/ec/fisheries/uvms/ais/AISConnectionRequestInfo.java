@@ -0,0 +1,69 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.resource.spi.ConnectionRequestInfo;
+
+/**
+ * The feeds a connection handle is requested for. The pool only hands out managed connections created for the same
+ * feeds, and those share one reader, see {@link AISManagedConnectionFactory#matchManagedConnections}. Feeds are
+ * compared as a set, so their order does not matter.
+ */
+public final class AISConnectionRequestInfo implements ConnectionRequestInfo {
+
+    private final Set<AISFeed> feeds;
+
+    /**
+     * @param feeds the feeds, at least one
+     * @throws IllegalArgumentException if there are none
+     */
+    public AISConnectionRequestInfo(List<AISFeed> feeds) {
+        if (feeds.isEmpty()) {
+            throw new IllegalArgumentException("No AIS feed configured");
+        }
+        this.feeds = Collections.unmodifiableSet(new LinkedHashSet<>(feeds));
+    }
+
+    /**
+     * @return the feeds in the order first given, without duplicates
+     */
+    public List<AISFeed> getFeeds() {
+        return new ArrayList<>(feeds);
+    }
+
+    @Override
+    public int hashCode() {
+        return feeds.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other == this) {
+            return true;
+        }
+        if (!(other instanceof AISConnectionRequestInfo)) {
+            return false;
+        }
+        return feeds.equals(((AISConnectionRequestInfo) other).feeds);
+    }
+
+    @Override
+    public String toString() {
+        return feeds.toString();
+    }
+}
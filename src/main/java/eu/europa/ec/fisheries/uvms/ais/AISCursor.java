@@ -0,0 +1,53 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+/**
+ * Read position of one consumer in the sentence queue or the journal.
+ * <p>
+ * Every cursor sees every element queued after its start, independently of the other cursors; an element is
+ * retained until the slowest cursor has passed it or the overflow policy drops it. Closing the last open
+ * cursor keeps its position, and the next cursor opened continues from there.
+ *
+ * @param <E> element type
+ */
+interface AISCursor<E> {
+
+    /**
+     * Take the next element. Safe to call from any thread; concurrent callers on the same cursor share its
+     * elements between them.
+     *
+     * @return the element, or null if this cursor has read everything queued
+     */
+    E poll();
+
+    /**
+     * @return number of elements queued that this cursor has not read yet
+     */
+    long size();
+
+    /**
+     * Park the calling thread until at least {@code minElements} are unread. Returns early on timeout or when
+     * the thread is unparked, so callers wait in a loop with a deadline. Only one thread per queue may wait
+     * at a time.
+     *
+     * @param minElements  number of elements to wait for
+     * @param timeoutNanos maximum time to park
+     * @return true if at least {@code minElements} are unread
+     */
+    boolean awaitSize(int minElements, long timeoutNanos);
+
+    /**
+     * Stop reading. Elements only this cursor was holding back become free.
+     */
+    void close();
+}
@@ -0,0 +1,163 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One AIS provider to read from: where to connect, how to log in, and the tag its sentences carry.
+ */
+public final class AISFeed {
+
+    private final String host;
+    private final int port;
+    private final String userName;
+    private final String password;
+    private final String tag;
+
+    /**
+     * @param host     provider host
+     * @param port     provider port
+     * @param userName login user, may be null
+     * @param password login password, may be null
+     * @param tag      name for the feed, {@code host:port} when null or empty
+     */
+    public AISFeed(String host, int port, String userName, String password, String tag) {
+        if (host == null || host.isEmpty()) {
+            throw new IllegalArgumentException("Feed host is not set");
+        }
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException("Feed port is not valid: " + port);
+        }
+        this.host = host;
+        this.port = port;
+        this.userName = userName;
+        this.password = password;
+        this.tag = tag == null || tag.isEmpty() ? host + ":" + port : tag;
+    }
+
+    /**
+     * Parse a feed list such as {@code se=user:secret@ais.example.se:4001; dk=ais.example.dk:4002}.
+     * Entries are separated by {@code ;}, each {@code [tag=][user[:password]@]host:port}.
+     *
+     * @param value the configured list, may be null or empty
+     * @return the feeds, empty when nothing is configured
+     * @throws IllegalArgumentException if an entry is malformed
+     */
+    public static List<AISFeed> parseList(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<AISFeed> feeds = new ArrayList<>();
+        for (String entry : value.split(";")) {
+            entry = entry.trim();
+            if (!entry.isEmpty()) {
+                feeds.add(parse(entry));
+            }
+        }
+        return feeds;
+    }
+
+    private static AISFeed parse(String entry) {
+        String tag = null;
+        String userName = null;
+        String password = null;
+        String address = entry;
+
+        int at = address.lastIndexOf('@');
+        if (at >= 0) {
+            String credentials = address.substring(0, at);
+            address = address.substring(at + 1);
+            int equals = credentials.indexOf('=');
+            if (equals >= 0) {
+                tag = credentials.substring(0, equals).trim();
+                credentials = credentials.substring(equals + 1);
+            }
+            int colon = credentials.indexOf(':');
+            userName = colon >= 0 ? credentials.substring(0, colon) : credentials;
+            password = colon >= 0 ? credentials.substring(colon + 1) : null;
+        } else {
+            int equals = address.indexOf('=');
+            if (equals >= 0) {
+                tag = address.substring(0, equals).trim();
+                address = address.substring(equals + 1);
+            }
+        }
+
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Feed has no port: " + address);
+        }
+        int port;
+        try {
+            port = Integer.parseInt(address.substring(colon + 1).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Feed port is not a number: " + address, e);
+        }
+        return new AISFeed(address.substring(0, colon).trim(), port, userName, password, tag);
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = host.hashCode();
+        result = 31 * result + port;
+        result = 31 * result + (userName != null ? userName.hashCode() : 0);
+        result = 31 * result + (password != null ? password.hashCode() : 0);
+        result = 31 * result + tag.hashCode();
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other == this) {
+            return true;
+        }
+        if (!(other instanceof AISFeed)) {
+            return false;
+        }
+        AISFeed feed = (AISFeed) other;
+        return host.equals(feed.host) && port == feed.port
+                && (userName == null ? feed.userName == null : userName.equals(feed.userName))
+                && (password == null ? feed.password == null : password.equals(feed.password))
+                && tag.equals(feed.tag);
+    }
+
+    /**
+     * @return the tag and address, never the credentials
+     */
+    @Override
+    public String toString() {
+        return tag + " (" + host + ":" + port + ")";
+    }
+}
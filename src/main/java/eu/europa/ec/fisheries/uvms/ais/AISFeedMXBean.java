@@ -0,0 +1,72 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+/**
+ * Monitoring view of one feed of an AIS reader, registered as
+ * {@code eu.europa.ec.fisheries.uvms.ais:type=AISFeed,reader=<reader>,name=<feed tag>} while the reader
+ * is open. See {@link AISFeedStatistics} for the meaning of the counters.
+ */
+public interface AISFeedMXBean {
+
+    String getTag();
+
+    /**
+     * @return host and port of the feed
+     */
+    String getAddress();
+
+    boolean isConnected();
+
+    /**
+     * @return true if the feed is connected and delivered a sentence within the last minute
+     */
+    boolean isReady();
+
+    /**
+     * @return milliseconds since the last sentence was received, -1 if none was
+     */
+    long getMillisSinceLastSentence();
+
+    /**
+     * @return milliseconds since the current connection was established, -1 when not connected
+     */
+    long getConnectedMillis();
+
+    long getSentenceCount();
+
+    long getMessageCount();
+
+    long getFilteredCount();
+
+    long getByteCount();
+
+    double getSentencesPerSecond();
+
+    double getMessagesPerSecond();
+
+    double getBytesPerSecond();
+
+    long getChecksumErrorCount();
+
+    long getChecksumMissingCount();
+
+    long getChecksumDroppedCount();
+
+    long getParseErrorCount();
+
+    long getFragmentDroppedCount();
+
+    long getConnectCount();
+
+    long getConnectionFailureCount();
+}
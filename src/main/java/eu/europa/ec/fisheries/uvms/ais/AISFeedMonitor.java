@@ -0,0 +1,138 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+/**
+ * {@link AISFeedMXBean} over the statistics of one feed.
+ */
+final class AISFeedMonitor implements AISFeedMXBean {
+
+    /** A connected feed is ready while it delivers at least one sentence in this period */
+    static final long READY_MAX_SILENCE_MILLIS = 60 * 1000;
+
+    private final AISFeedStatistics statistics;
+    private final AISRateMeter sentenceRate = new AISRateMeter();
+    private final AISRateMeter messageRate = new AISRateMeter();
+    private final AISRateMeter byteRate = new AISRateMeter();
+
+    AISFeedMonitor(AISFeedStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    static boolean isReady(AISFeedStatistics statistics, long now) {
+        long connectedAt = statistics.getConnectedAt();
+        long lastSentenceAt = statistics.getLastSentenceAt();
+        return connectedAt > 0 && lastSentenceAt >= connectedAt && now - lastSentenceAt < READY_MAX_SILENCE_MILLIS;
+    }
+
+    @Override
+    public String getTag() {
+        return statistics.getTag();
+    }
+
+    @Override
+    public String getAddress() {
+        return statistics.getAddress();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return statistics.isConnected();
+    }
+
+    @Override
+    public boolean isReady() {
+        return isReady(statistics, System.currentTimeMillis());
+    }
+
+    @Override
+    public long getMillisSinceLastSentence() {
+        long lastSentenceAt = statistics.getLastSentenceAt();
+        return lastSentenceAt > 0 ? System.currentTimeMillis() - lastSentenceAt : -1;
+    }
+
+    @Override
+    public long getConnectedMillis() {
+        long connectedAt = statistics.getConnectedAt();
+        return connectedAt > 0 ? System.currentTimeMillis() - connectedAt : -1;
+    }
+
+    @Override
+    public long getSentenceCount() {
+        return statistics.getSentenceCount();
+    }
+
+    @Override
+    public long getMessageCount() {
+        return statistics.getMessageCount();
+    }
+
+    @Override
+    public long getByteCount() {
+        return statistics.getByteCount();
+    }
+
+    @Override
+    public double getSentencesPerSecond() {
+        return sentenceRate.rate(statistics.getSentenceCount(), System.currentTimeMillis());
+    }
+
+    @Override
+    public double getMessagesPerSecond() {
+        return messageRate.rate(statistics.getMessageCount(), System.currentTimeMillis());
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return byteRate.rate(statistics.getByteCount(), System.currentTimeMillis());
+    }
+
+    @Override
+    public long getChecksumErrorCount() {
+        return statistics.getChecksumErrorCount();
+    }
+
+    @Override
+    public long getChecksumMissingCount() {
+        return statistics.getChecksumMissingCount();
+    }
+
+    @Override
+    public long getFilteredCount() {
+        return statistics.getFilteredCount();
+    }
+
+    @Override
+    public long getChecksumDroppedCount() {
+        return statistics.getChecksumDroppedCount();
+    }
+
+    @Override
+    public long getParseErrorCount() {
+        return statistics.getParseErrorCount();
+    }
+
+    @Override
+    public long getFragmentDroppedCount() {
+        return statistics.getFragmentDroppedCount();
+    }
+
+    @Override
+    public long getConnectCount() {
+        return statistics.getConnectCount();
+    }
+
+    @Override
+    public long getConnectionFailureCount() {
+        return statistics.getConnectionFailureCount();
+    }
+}
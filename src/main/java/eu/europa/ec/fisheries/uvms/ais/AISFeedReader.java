@@ -0,0 +1,1567 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+import javax.resource.spi.work.HintsContext;
+import javax.resource.spi.work.Work;
+import javax.resource.spi.work.WorkContext;
+import javax.resource.spi.work.WorkContextProvider;
+import javax.resource.spi.work.WorkException;
+import javax.resource.spi.work.WorkManager;
+
+/**
+ * Reads one or more AIS feeds: connects and logs in, reconnects when a connection is lost, and queues the
+ * payloads of the received VDM/VDO sentences, tagged with their feed, until they are drained.
+ * <p>
+ * In {@link AISReaderMode#CHANNEL} mode all feeds are multiplexed on a single selector thread; in
+ * {@link AISReaderMode#STREAM} mode every feed gets its own thread with a blocking socket. The loops run
+ * where {@link AISReaderExecution} says, by default as work of the resource adapter's work manager.
+ * A reader is opened at most once and cannot be reopened after {@link #close()}.
+ * <p>
+ * Sentences wait in a bounded {@link AISRingBuffer} on the heap, an {@link AISSlabQueue} in direct memory when
+ * the queue storage is {@link AISQueueStorage#DIRECT}, or, when a journal directory is configured, in an
+ * {@link AISJournal} on disk that survives restarts. Each {@link Consumer} reads all of them through
+ * its own cursor; the drain methods of the reader itself use a default consumer.
+ * <p>
+ * Used both by {@link AISManagedConnection} for the outbound connection handles and by
+ * {@link AISActivation} for message endpoints. While open, the reader and its feeds are registered as
+ * MXBeans, see {@link AISReaderMonitor}.
+ */
+class AISFeedReader {
+    static final int DEFAULT_QUEUE_CAPACITY = 256 * 1024;
+    static final long DEFAULT_RECONNECT_INITIAL_DELAY = 1000;
+    static final long DEFAULT_RECONNECT_MAX_DELAY = 60 * 1000;
+    static final double DEFAULT_RECONNECT_JITTER = 0.2;
+    static final long DEFAULT_READ_TIMEOUT = 5 * 60 * 1000;
+    static final long DEFAULT_STALL_WINDOW = 30 * 1000;
+    static final double DEFAULT_STALL_RATIO = 0.1;
+    static final long DEFAULT_VESSEL_TIMEOUT = 60 * 60 * 1000;
+
+    /** A connection that lasted this long was healthy, so the next reconnect starts with a short delay again */
+    private static final long STABLE_CONNECTION_MILLIS = 60 * 1000;
+
+    private static Logger log = Logger.getLogger(AISFeedReader.class.getName());
+
+    /** {@code Thread.startVirtualThread(Runnable)} when the JDK has virtual threads */
+    private static final Method START_VIRTUAL_THREAD = findStartVirtualThread();
+
+    private static final AtomicInteger READER_SEQUENCE = new AtomicInteger();
+
+    private final String name;
+    private final AISReaderMode readerMode;
+    private final AISReaderExecution execution;
+    private final AISResourceAdapter ra;
+    private final long reconnectInitialDelay;
+    private final long reconnectMaxDelay;
+    private final double reconnectJitter;
+    private final long readTimeout;
+    private final long stallWindow;
+    private final double stallRatio;
+    private final AISChecksumPolicy checksumPolicy;
+    private volatile AISFilter filter;
+    /** Null when no area files are configured */
+    private final AISAreaIndex areaIndex;
+    private final AISAreaMode areaMode;
+    /** Null unless position reports are conflated */
+    private final AISConflator conflator;
+    /** Null unless the latest position of each vessel is kept */
+    private final AISVesselTable vessels;
+    private final String journalDirectory;
+    private final long journalSegmentSize;
+    private final long journalRetentionSize;
+    private final long journalRetentionAge;
+    private volatile AISJournal journal;
+    /** Set once the journal, if any, is open and consumers can choose where to read */
+    private volatile boolean queueReady;
+    private final List<AISFeedStatistics> statistics = new CopyOnWriteArrayList<>();
+    private final AISQueue<AISSentence> sentences;
+    /**
+     * Serializes the STREAM reader threads on the queue and conflator. Not the queue itself: a producer blocked on a
+     * full queue holds this lock, and consumers must still be able to open and close cursors to make room.
+     */
+    private final Object producerLock = new Object();
+    private final AISLatencyHistogram latency = new AISLatencyHistogram();
+    private final AISLatencyHistogram providerLatency = new AISLatencyHistogram();
+    private final LongAdder drained = new LongAdder();
+    private final AISReaderMonitor monitor = new AISReaderMonitor(this);
+    private final Consumer defaultConsumer = new Consumer();
+    /** Consumers created before the reader was opened, guarded by this */
+    private final List<Consumer> pendingConsumers = new ArrayList<>();
+    private long reportedDrops = 0;
+
+    private final AtomicInteger runningReaders = new AtomicInteger();
+    private volatile boolean continueRetry = true;
+    private boolean opened = false;
+    private volatile Selector selector;
+    private final List<Thread> readerThreads = new CopyOnWriteArrayList<>();
+    private final List<StreamFeed> streamFeeds = new CopyOnWriteArrayList<>();
+    private volatile List<AISFeed> feeds = Collections.emptyList();
+
+    /**
+     * @param name   identifies the reader in logs and JMX, see {@link #nextName(String)}
+     * @param config reader settings, unset values take their defaults
+     * @param ra     resource adapter providing the work manager, may be null
+     * @throws IllegalArgumentException if a setting is invalid
+     */
+    AISFeedReader(String name, AISReaderConfiguration config, AISResourceAdapter ra) {
+        validate(config);
+        this.name = name;
+        this.readerMode = AISReaderMode.parse(config.getReaderMode());
+        this.execution = AISReaderExecution.parse(config.getReaderExecution());
+        this.ra = ra;
+        this.reconnectInitialDelay = valueOf(config.getReconnectInitialDelay(), DEFAULT_RECONNECT_INITIAL_DELAY);
+        this.reconnectMaxDelay = valueOf(config.getReconnectMaxDelay(), DEFAULT_RECONNECT_MAX_DELAY);
+        this.reconnectJitter = valueOf(config.getReconnectJitter(), DEFAULT_RECONNECT_JITTER);
+        this.readTimeout = valueOf(config.getReadTimeout(), DEFAULT_READ_TIMEOUT);
+        this.stallWindow = valueOf(config.getStallWindow(), DEFAULT_STALL_WINDOW);
+        this.stallRatio = valueOf(config.getStallRatio(), DEFAULT_STALL_RATIO);
+        this.checksumPolicy = AISChecksumPolicy.parse(config.getChecksumPolicy());
+        this.filter = AISFilter.parse(config.getFilter());
+        this.areaIndex = AISAreaFiles.load(config.getAreaFiles());
+        this.areaMode = AISAreaMode.parse(config.getAreaMode());
+        long conflationInterval = valueOf(config.getConflationInterval(), 0L);
+        this.conflator = conflationInterval > 0 ? new AISConflator(conflationInterval) : null;
+        Integer vesselCapacity = config.getVesselCapacity();
+        this.vessels = vesselCapacity != null && vesselCapacity > 0
+                ? new AISVesselTable(vesselCapacity, valueOf(config.getVesselTimeout(), DEFAULT_VESSEL_TIMEOUT)) : null;
+        this.journalDirectory = config.getJournalDirectory();
+        this.journalSegmentSize = valueOf(config.getJournalSegmentSize(), AISJournal.DEFAULT_SEGMENT_SIZE);
+        this.journalRetentionSize = valueOf(config.getJournalRetentionSize(), AISJournal.DEFAULT_RETENTION_SIZE);
+        this.journalRetentionAge = valueOf(config.getJournalRetentionAge(), AISJournal.DEFAULT_RETENTION_AGE);
+        Integer queueCapacity = config.getQueueCapacity();
+        int capacity = queueCapacity != null ? queueCapacity : DEFAULT_QUEUE_CAPACITY;
+        AISOverflowPolicy overflowPolicy = AISOverflowPolicy.parse(config.getOverflowPolicy());
+        // The heap buffer is only a fallback behind a journal, not worth direct memory
+        boolean direct = AISQueueStorage.parse(config.getQueueStorage()) == AISQueueStorage.DIRECT
+                && (journalDirectory == null || journalDirectory.trim().isEmpty());
+        this.sentences = direct
+                ? new AISSlabQueue(capacity, valueOf(config.getQueueMemory(), AISSlabQueue.DEFAULT_MEMORY), overflowPolicy)
+                : new AISRingBuffer<AISSentence>(capacity, overflowPolicy);
+    }
+
+    /**
+     * Check reader settings without allocating a reader. Area files are only checked to be readable; their content
+     * is parsed once, when a reader is created.
+     *
+     * @param config reader settings, unset values take their defaults
+     * @throws IllegalArgumentException if a setting is invalid
+     */
+    static void validate(AISReaderConfiguration config) {
+        AISReaderMode.parse(config.getReaderMode());
+        AISReaderExecution.parse(config.getReaderExecution());
+        AISOverflowPolicy.parse(config.getOverflowPolicy());
+        AISChecksumPolicy.parse(config.getChecksumPolicy());
+        AISFilter.parse(config.getFilter());
+        AISAreaMode.parse(config.getAreaMode());
+        AISAreaFiles.check(config.getAreaFiles());
+        long conflationInterval = valueOf(config.getConflationInterval(), 0L);
+        if (conflationInterval < 0) {
+            throw new IllegalArgumentException("Conflation interval must not be negative: " + conflationInterval);
+        }
+        Integer vesselCapacity = config.getVesselCapacity();
+        if (vesselCapacity != null && (vesselCapacity < 0 || vesselCapacity > 1 << 26)) {
+            throw new IllegalArgumentException("Vessel capacity out of range: " + vesselCapacity);
+        }
+        if (valueOf(config.getVesselTimeout(), DEFAULT_VESSEL_TIMEOUT) < 0) {
+            throw new IllegalArgumentException("Vessel timeout must not be negative: " + config.getVesselTimeout());
+        }
+        Integer queueCapacity = config.getQueueCapacity();
+        if (queueCapacity != null && (queueCapacity < 1 || queueCapacity > 1 << 30)) {
+            throw new IllegalArgumentException("Queue capacity out of range: " + queueCapacity);
+        }
+        if (AISQueueStorage.parse(config.getQueueStorage()) == AISQueueStorage.DIRECT) {
+            AISSlabQueue.validate(queueCapacity != null ? queueCapacity : DEFAULT_QUEUE_CAPACITY,
+                    valueOf(config.getQueueMemory(), AISSlabQueue.DEFAULT_MEMORY));
+        }
+        long readTimeout = valueOf(config.getReadTimeout(), DEFAULT_READ_TIMEOUT);
+        if (readTimeout < 1) {
+            throw new IllegalArgumentException("Read timeout must be positive: " + readTimeout);
+        }
+        new AISReconnectBackoff(valueOf(config.getReconnectInitialDelay(), DEFAULT_RECONNECT_INITIAL_DELAY),
+                valueOf(config.getReconnectMaxDelay(), DEFAULT_RECONNECT_MAX_DELAY),
+                valueOf(config.getReconnectJitter(), DEFAULT_RECONNECT_JITTER));
+        new AISStallWatchdog(valueOf(config.getStallWindow(), DEFAULT_STALL_WINDOW),
+                valueOf(config.getStallRatio(), DEFAULT_STALL_RATIO));
+        AISJournal.validate(valueOf(config.getJournalSegmentSize(), AISJournal.DEFAULT_SEGMENT_SIZE),
+                valueOf(config.getJournalRetentionSize(), AISJournal.DEFAULT_RETENTION_SIZE),
+                valueOf(config.getJournalRetentionAge(), AISJournal.DEFAULT_RETENTION_AGE));
+    }
+
+    private static long valueOf(Long value, long defaultValue) {
+        return value != null ? value : defaultValue;
+    }
+
+    private static double valueOf(Double value, double defaultValue) {
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * @param kind what the reader is used for, e.g. {@code connection}
+     * @return a name unique within the JVM such as {@code connection-3}
+     */
+    static String nextName(String kind) {
+        return kind + "-" + READER_SEQUENCE.incrementAndGet();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return the distinct user names of the opened feeds separated by commas, null before open
+     */
+    String getUserName() {
+        Set<String> userNames = new LinkedHashSet<>();
+        for (AISFeed feed : feeds) {
+            if (feed.getUserName() != null && !feed.getUserName().isEmpty()) {
+                userNames.add(feed.getUserName());
+            }
+        }
+        return userNames.isEmpty() ? null : String.join(", ", userNames);
+    }
+
+    AISReaderMode getReaderMode() {
+        return readerMode;
+    }
+
+    /**
+     * @return the filter applied before sentences are queued, empty when every message is queued
+     */
+    String getFilter() {
+        return filter.toString();
+    }
+
+    /**
+     * Replace the filter. Takes effect with the next message of every feed; sentences already queued stay.
+     *
+     * @param value the filter, see {@link AISFilter}; null or empty to queue every message
+     * @throws IllegalArgumentException if the filter is malformed
+     */
+    void setFilter(String value) {
+        AISFilter parsed = AISFilter.parse(value);
+        filter = parsed;
+        log.info("AIS reader " + name + " filter set to '" + parsed + "'");
+    }
+
+    boolean isOpen() {
+        return runningReaders.get() > 0;
+    }
+
+    /**
+     * @return true once the reader was closed; it cannot be opened again
+     */
+    boolean isClosed() {
+        return !continueRetry;
+    }
+
+    /**
+     * @return a new consumer, reading from the oldest sentence no other consumer has read yet, or from where
+     * the last closed consumer stopped; consumers created before the reader is opened all read from the start
+     */
+    synchronized Consumer newConsumer() {
+        Consumer consumer = new Consumer();
+        if (queueReady) {
+            consumer.cursor();
+        } else {
+            pendingConsumers.add(consumer);
+        }
+        return consumer;
+    }
+
+    List<String> getSentences() {
+        return defaultConsumer.getSentences();
+    }
+
+    int drainTo(Collection<? super String> target, int maxElements) {
+        return defaultConsumer.drainTo(target, maxElements);
+    }
+
+    int drainSentencesTo(Collection<? super AISSentence> target, int maxElements) {
+        return defaultConsumer.drainSentencesTo(target, maxElements);
+    }
+
+    int drainMessagesTo(Collection<? super AISMessage> target, int maxElements) {
+        return defaultConsumer.drainMessagesTo(target, maxElements);
+    }
+
+    int drainPositions(AISPositionBatch batch) {
+        return defaultConsumer.drainPositions(batch);
+    }
+
+    private void drained(int count) {
+        drained.add(count);
+        AISJournal currentJournal = journal;
+        if (currentJournal != null) {
+            currentJournal.commit(System.currentTimeMillis());
+        }
+        logDrops();
+    }
+
+    private static void checkMaxElements(int maxElements) {
+        if (maxElements < 0) {
+            throw new IllegalArgumentException("maxElements must not be negative: " + maxElements);
+        }
+    }
+
+    /**
+     * @return sentences retained for the slowest consumer, on the heap or in the journal
+     */
+    long getQueueSize() {
+        AISJournal currentJournal = journal;
+        return currentJournal != null ? currentJournal.size() : sentences.size();
+    }
+
+    /**
+     * @return the journal, null when sentences are queued on the heap
+     */
+    AISJournal getJournal() {
+        return journal;
+    }
+
+    AISQueue<AISSentence> getQueue() {
+        return sentences;
+    }
+
+    AISLatencyHistogram getLatencyHistogram() {
+        return latency;
+    }
+
+    /**
+     * @return time between the provider receiving a message and its drain, for messages with a provider time
+     */
+    AISLatencyHistogram getProviderLatencyHistogram() {
+        return providerLatency;
+    }
+
+    /**
+     * @return sentences handed out by the drain methods
+     */
+    long getDrainedCount() {
+        return drained.sum();
+    }
+
+    /**
+     * @return counters of every opened feed
+     */
+    List<AISFeedStatistics> getFeedStatistics() {
+        return Collections.unmodifiableList(statistics);
+    }
+
+    /**
+     * Like {@link Consumer#awaitSentences}, for the default consumer.
+     */
+    boolean awaitSentences(int minSentences, long timeout, TimeUnit unit) {
+        return defaultConsumer.awaitSentences(minSentences, timeout, unit);
+    }
+
+    private synchronized void logDrops() {
+        long drops = sentences.getDroppedCount();
+        if (drops != reportedDrops) {
+            log.warning("AIS queue full, " + (drops - reportedDrops) + " sentences dropped ("
+                    + sentences.getPolicy() + ", capacity " + sentences.capacity() + ")");
+            reportedDrops = drops;
+        }
+    }
+
+    void open(final String host, final Integer port, final String userName, final String password) {
+        open(Collections.singletonList(new AISFeed(host, port != null ? port : 0, userName, password, null)));
+    }
+
+    /**
+     * @return true if {@link #open(List)} of these feeds would start this reader or find it reading them already
+     */
+    synchronized boolean canOpen(List<AISFeed> feeds) {
+        return !opened || continueRetry && new HashSet<>(this.feeds).equals(new HashSet<>(feeds));
+    }
+
+    /**
+     * Start reading the feeds. Ignored if the reader is already reading the same feeds for another handle.
+     *
+     * @param feeds the feeds, at least one
+     * @throws IllegalStateException if the reader was closed or opened for other feeds
+     */
+    synchronized void open(List<AISFeed> feeds) {
+        if (feeds.isEmpty()) {
+            throw new IllegalArgumentException("No AIS feed configured");
+        }
+        if (opened) {
+            if (!canOpen(feeds)) {
+                throw new IllegalStateException("AIS reader " + name + (continueRetry ? " already open for " + this.feeds
+                        : " closed") + ", cannot open " + feeds);
+            }
+            // Another handle of a shared reader
+            log.fine("AIS reader " + name + " already open for " + feeds);
+            return;
+        }
+        opened = true;
+        this.feeds = new ArrayList<>(feeds);
+        // Lines fed through a handler before the open already went to the heap or direct memory queue
+        if (!queueReady && journalDirectory != null && !journalDirectory.trim().isEmpty()) {
+            openJournal(feeds);
+        }
+        prepareQueue();
+        if (ra != null) {
+            ra.register(this);
+        }
+        if (readerMode == AISReaderMode.CHANNEL) {
+            ChannelLoop loop = new ChannelLoop(feeds);
+            monitor.register();
+            start("AIS Read thread " + name, loop);
+        } else {
+            for (AISFeed feed : feeds) {
+                streamFeeds.add(new StreamFeed(feed));
+            }
+            monitor.register();
+            for (StreamFeed streamFeed : streamFeeds) {
+                start("AIS Read thread " + name + " " + streamFeed.feed.getTag(), streamFeed);
+            }
+        }
+    }
+
+    /**
+     * Let the consumers created so far choose where to read, now that the queue to read is known.
+     */
+    private synchronized void prepareQueue() {
+        if (queueReady) {
+            return;
+        }
+        queueReady = true;
+        for (Consumer consumer : pendingConsumers) {
+            consumer.cursor();
+        }
+        pendingConsumers.clear();
+    }
+
+    /**
+     * Open the journal of these feeds, a subdirectory of the journal directory named after their tags so a
+     * restarted reader of the same feeds finds it again. Falls back to the heap queue if it is in use.
+     */
+    private void openJournal(List<AISFeed> feeds) {
+        StringBuilder key = new StringBuilder();
+        for (AISFeed feed : feeds) {
+            key.append(key.length() > 0 ? "+" : "").append(feed.getTag());
+        }
+        Path directory = Paths.get(journalDirectory.trim()).resolve(key.toString().replaceAll("[^A-Za-z0-9._+-]", "_"));
+        try {
+            journal = new AISJournal(directory, journalSegmentSize, journalRetentionSize, journalRetentionAge);
+        } catch (IOException | RuntimeException e) {
+            log.warning("Unable to open AIS journal " + directory + ", queueing on the heap: " + e);
+        }
+    }
+
+    private void start(String name, Runnable loop) {
+        ReaderWork work = new ReaderWork(name, loop);
+        runningReaders.incrementAndGet();
+        try {
+            launch(work);
+        } catch (WorkException | RuntimeException e) {
+            runningReaders.decrementAndGet();
+            throw new IllegalStateException("Unable to start " + name, e);
+        }
+    }
+
+    private void launch(ReaderWork work) throws WorkException {
+        switch (execution) {
+            case WORK_MANAGER:
+                WorkManager workManager = ra != null ? ra.getWorkManager() : null;
+                if (workManager != null) {
+                    workManager.startWork(work);
+                    return;
+                }
+                log.info("No work manager available, starting " + work.name + " on a new thread");
+                break;
+            case VIRTUAL_THREAD:
+                if (START_VIRTUAL_THREAD != null) {
+                    try {
+                        ((Thread) START_VIRTUAL_THREAD.invoke(null, work)).setName(work.name);
+                        return;
+                    } catch (ReflectiveOperationException e) {
+                        log.warning("Unable to start virtual thread, starting " + work.name + " on a new thread: " + e);
+                    }
+                } else {
+                    log.info("Virtual threads not available, starting " + work.name + " on a new thread");
+                }
+                break;
+            default:
+                break;
+        }
+        new Thread(work, work.name).start();
+    }
+
+    private static Method findStartVirtualThread() {
+        try {
+            return Thread.class.getMethod("startVirtualThread", Runnable.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stop reading and close the sockets. Queued sentences can still be drained.
+     */
+    void close() {
+        continueRetry = false;
+        if (ra != null) {
+            ra.unregister(this);
+        }
+        monitor.unregister();
+        AISJournal currentJournal = journal;
+        if (currentJournal != null) {
+            try {
+                currentJournal.close();
+            } catch (IOException e) {
+                log.warning("Error when closing AIS journal. " + e);
+            }
+        }
+        for (StreamFeed feed : streamFeeds) {
+            feed.closeSocket();
+        }
+        Selector readSelector = selector;
+        if (readSelector != null) {
+            readSelector.wakeup();
+        }
+        for (Thread reader : readerThreads) {
+            // Releases a reader blocked on a full queue or waiting to reconnect
+            reader.interrupt();
+        }
+    }
+
+    /**
+     * Create a handler that queues the lines of a feed the way the reader loops do, so lines can be fed to
+     * an unopened reader without a socket, e.g. from benchmarks. The stall watchdog is disabled. Consumers of
+     * an unopened reader read what the handler queues; a journal is only opened if the reader is opened first.
+     */
+    SentenceHandler newSentenceHandler(AISFeed feed) {
+        prepareQueue();
+        return new SentenceHandler(feed, new AISStallWatchdog(0, 0), newStatistics(feed));
+    }
+
+    private AISFeedStatistics newStatistics(AISFeed feed) {
+        AISFeedStatistics feedStatistics = new AISFeedStatistics(feed);
+        statistics.add(feedStatistics);
+        return feedStatistics;
+    }
+
+    /**
+     * @throws SocketTimeoutException if nothing was received within the read timeout or the watchdog
+     *                                finds the feed stalled
+     */
+    private void checkLiveness(AISFeed feed, AISStallWatchdog watchdog, long lastReceivedAt, long now)
+            throws SocketTimeoutException {
+        if (now - lastReceivedAt >= readTimeout) {
+            throw new SocketTimeoutException("No data received within " + readTimeout + " ms");
+        }
+        if (watchdog.check(now)) {
+            throw new SocketTimeoutException(String.format("Feed %s stalled at %.2f sentences/s, baseline %.2f/s",
+                    feed.getTag(), watchdog.getWindowRate(), watchdog.getBaselineRate()));
+        }
+    }
+
+    private static String loginCommand(String userName, String password) {
+        return '\u0001' + userName + '\u0000' + password + '\u0000';
+    }
+
+    private void queue(AISSentence sentence) {
+        if (readerMode == AISReaderMode.CHANNEL) {
+            offer(sentence);
+        } else {
+            // One thread per feed, but the buffer and journal take a single producer at a time
+            synchronized (producerLock) {
+                offer(sentence);
+            }
+        }
+    }
+
+    /**
+     * Keep a position report for the current conflation interval instead of queueing it.
+     */
+    private void conflate(int mmsi, AISSentence sentence, long now) {
+        if (readerMode == AISReaderMode.CHANNEL) {
+            conflator.put(mmsi, sentence, now);
+        } else {
+            synchronized (producerLock) {
+                conflator.put(mmsi, sentence, now);
+            }
+        }
+    }
+
+    /**
+     * Queue the reports of the conflation interval once it has passed. Called by the reader threads whenever
+     * they wake, so a quiet feed delays the reports by at most its read or watchdog timeout.
+     */
+    private void flushConflated(long now) {
+        if (conflator == null || !conflator.isDue(now)) {
+            return;
+        }
+        if (readerMode == AISReaderMode.CHANNEL) {
+            drainConflator();
+        } else {
+            synchronized (producerLock) {
+                if (conflator.isDue(now)) {
+                    drainConflator();
+                }
+            }
+        }
+    }
+
+    private void drainConflator() {
+        for (int slot = 0; slot < conflator.size(); slot++) {
+            offer(conflator.get(slot));
+        }
+        conflator.clear();
+    }
+
+    /**
+     * @return the latest state of a vessel, null if it is unknown or no vessels are kept
+     */
+    AISVesselState getVessel(int mmsi) {
+        return vessels != null ? vessels.find(mmsi) : null;
+    }
+
+    /**
+     * Refill a batch with the latest position of every vessel, as of one instant.
+     *
+     * @return number of vessels in the batch, 0 if no vessels are kept
+     */
+    int getVessels(AISPositionBatch batch) {
+        if (vessels == null) {
+            batch.clear();
+            return 0;
+        }
+        return vessels.snapshot(batch);
+    }
+
+    /**
+     * @return the static data of a vessel, null if none was heard or no vessels are kept
+     */
+    AISVesselInfo getVesselInfo(int mmsi) {
+        return vessels != null ? vessels.findInfo(mmsi) : null;
+    }
+
+    /**
+     * Look up the static data of every row of a batch.
+     *
+     * @return number of rows with static data, 0 if no vessels are kept
+     */
+    int enrich(AISPositionBatch batch, AISVesselInfo[] infos) {
+        if (vessels == null) {
+            for (int row = 0; row < batch.size() && row < infos.length; row++) {
+                infos[row] = null;
+            }
+            return 0;
+        }
+        return vessels.enrich(batch, infos);
+    }
+
+    /**
+     * @return the vessel table, null unless the {@code vesselCapacity} property is set
+     */
+    AISVesselTable getVesselTable() {
+        return vessels;
+    }
+
+    /**
+     * @return the conflator, null unless the {@code conflationInterval} property is set
+     */
+    AISConflator getConflator() {
+        return conflator;
+    }
+
+    private void offer(AISSentence sentence) {
+        AISJournal currentJournal = journal;
+        if (currentJournal != null) {
+            currentJournal.append(sentence);
+        } else {
+            sentences.offer(sentence);
+        }
+    }
+
+    /**
+     * Runs one reader loop as long running work. While it runs, its thread can be interrupted by
+     * {@link #close()}; a pooled thread is handed back with the interrupt cleared.
+     */
+    private class ReaderWork implements Work, WorkContextProvider {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final transient Runnable loop;
+
+        ReaderWork(String name, Runnable loop) {
+            this.name = name;
+            this.loop = loop;
+        }
+
+        @Override
+        public void run() {
+            Thread current = Thread.currentThread();
+            readerThreads.add(current);
+            try {
+                if (continueRetry) {
+                    loop.run();
+                }
+            } finally {
+                readerThreads.remove(current);
+                Thread.interrupted();
+                runningReaders.decrementAndGet();
+            }
+        }
+
+        /**
+         * Called by the container when it shuts down
+         */
+        @Override
+        public void release() {
+            close();
+        }
+
+        @Override
+        public List<WorkContext> getWorkContexts() {
+            HintsContext hints = new HintsContext();
+            hints.setName("AIS reader hints");
+            hints.setHint(HintsContext.NAME_HINT, name);
+            hints.setHint(HintsContext.LONGRUNNING_HINT, Boolean.TRUE);
+            return Collections.<WorkContext>singletonList(hints);
+        }
+    }
+
+    /**
+     * One feed read through a blocking socket on its own thread.
+     */
+    private class StreamFeed implements Runnable {
+        private final AISFeed feed;
+        private final AISReconnectBackoff backoff = new AISReconnectBackoff(reconnectInitialDelay, reconnectMaxDelay, reconnectJitter);
+        private final AISStallWatchdog watchdog = new AISStallWatchdog(stallWindow, stallRatio);
+        private final AISFeedStatistics feedStatistics;
+        private volatile Socket socket;
+        private long connectedAt;
+
+        StreamFeed(AISFeed feed) {
+            this.feed = feed;
+            this.feedStatistics = newStatistics(feed);
+        }
+
+        @Override
+        public void run() {
+            while (continueRetry) {
+                try {
+                    socket = new Socket();
+                    InputStream commandInput = tryOpen();
+                    read(commandInput);
+                } catch (Exception e) {
+                    if (continueRetry) {
+                        log.warning("AIS connection lost: " + feed + ": " + e.getLocalizedMessage());
+                        log.warning("Exception: " + e);
+                    }
+                } finally {
+                    feedStatistics.disconnected(continueRetry);
+                    try {
+                        closeSocket();
+                        if (connectedAt > 0 && System.currentTimeMillis() - connectedAt >= STABLE_CONNECTION_MILLIS) {
+                            backoff.reset();
+                        }
+                        connectedAt = 0;
+                        if (continueRetry) {
+                            Thread.sleep(backoff.nextDelay());
+                        }
+                    } catch (Exception e) {
+                        log.info("//NOP: {}" + e.getLocalizedMessage());
+                        log.info("Exception:" + e);
+                    }
+                }
+            }
+        }
+
+        void closeSocket() {
+            Socket current = socket;
+            if (current != null && !current.isClosed()) {
+                try {
+                    current.close();
+                } catch (IOException e) {
+                    log.warning("Error when closing socket. " + e);
+                }
+            }
+        }
+
+        private InputStream tryOpen() throws IOException {
+            socket.setKeepAlive(true);
+            long wakeUp = Math.min(watchdog.isEnabled() ? AISStallWatchdog.SAMPLE_MILLIS : Integer.MAX_VALUE,
+                    conflator != null ? conflator.getIntervalMillis() : Integer.MAX_VALUE);
+            socket.setSoTimeout((int) Math.min(readTimeout, wakeUp));
+            socket.connect(new InetSocketAddress(InetAddress.getByName(feed.getHost()), feed.getPort()), (int) Math.min(readTimeout, Integer.MAX_VALUE));
+            connectedAt = System.currentTimeMillis();
+            watchdog.connected(connectedAt);
+            feedStatistics.connected(connectedAt);
+
+            BufferedWriter commandOut = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+            log.info("AISWorker: Connection established to " + feed);
+            log.info("AISWorker: Socket-parameter: " + socket);
+
+            commandOut.write(loginCommand(feed.getUserName(), feed.getPassword()));
+            commandOut.flush();
+
+            return socket.getInputStream();
+        }
+
+        /**
+         * Read lines until end of stream. The socket timeout is the watchdog sample period or the conflation
+         * interval, so both also run while nothing arrives. Lines are framed by an {@link AISChannelReader},
+         * whose buffer keeps a line split across such a timeout until the rest arrives.
+         */
+        private void read(InputStream commandInput) throws IOException {
+            SentenceHandler handler = new SentenceHandler(feed, watchdog, feedStatistics);
+            AISChannelReader lineReader = new AISChannelReader();
+            ReadableByteChannel channel = Channels.newChannel(commandInput);
+            long lastReceivedAt = System.currentTimeMillis();
+            // Infinite read until read is EOF
+            while (true) {
+                int count;
+                handler.startRead();
+                try {
+                    count = lineReader.read(channel, handler);
+                } catch (SocketTimeoutException e) {
+                    count = 0;
+                } finally {
+                    handler.endRead();
+                }
+                long now = System.currentTimeMillis();
+                if (count < 0) {
+                    return;
+                }
+                if (count > 0) {
+                    lastReceivedAt = now;
+                    feedStatistics.bytesReceived(count);
+                } else {
+                    flushConflated(now);
+                }
+                checkLiveness(feed, watchdog, lastReceivedAt, now);
+            }
+        }
+    }
+
+    /**
+     * Reads all feeds on one thread with non-blocking channels. Connects, logins, reads, timeouts and
+     * reconnect delays of every feed are driven by a single selector.
+     */
+    private class ChannelLoop implements Runnable {
+        private final List<FeedChannel> channels = new ArrayList<>();
+
+        ChannelLoop(List<AISFeed> feeds) {
+            for (AISFeed feed : feeds) {
+                channels.add(new FeedChannel(feed));
+            }
+        }
+
+        @Override
+        public void run() {
+            try (Selector readSelector = Selector.open()) {
+                selector = readSelector;
+                while (continueRetry) {
+                    long now = System.currentTimeMillis();
+                    long wait = readTimeout;
+                    for (FeedChannel channel : channels) {
+                        channel.checkTimers(readSelector, now);
+                        wait = Math.min(wait, channel.untilNextTimer(now));
+                    }
+                    if (conflator != null) {
+                        flushConflated(now);
+                        wait = Math.min(wait, conflator.getDelay(now));
+                    }
+                    readSelector.select(Math.max(1, wait));
+
+                    now = System.currentTimeMillis();
+                    Iterator<SelectionKey> keys = readSelector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        ((FeedChannel) key.attachment()).ready(key, now);
+                    }
+                }
+            } catch (IOException e) {
+                log.severe("AIS selector failed: " + e);
+            } finally {
+                selector = null;
+                for (FeedChannel channel : channels) {
+                    channel.disconnect();
+                }
+            }
+        }
+    }
+
+    /**
+     * Connection state of one feed in the {@link ChannelLoop}. Only used by the loop thread.
+     */
+    private class FeedChannel {
+        private final AISFeed feed;
+        private final AISChannelReader reader = new AISChannelReader();
+        private final AISReconnectBackoff backoff = new AISReconnectBackoff(reconnectInitialDelay, reconnectMaxDelay, reconnectJitter);
+        private final AISStallWatchdog watchdog = new AISStallWatchdog(stallWindow, stallRatio);
+        private final AISFeedStatistics feedStatistics;
+        private final SentenceHandler handler;
+        private SocketChannel channel;
+        private ByteBuffer login;
+        private long retryAt;
+        private long connectedAt;
+        private long lastReceivedAt;
+
+        FeedChannel(AISFeed feed) {
+            this.feed = feed;
+            this.feedStatistics = newStatistics(feed);
+            this.handler = new SentenceHandler(feed, watchdog, feedStatistics);
+        }
+
+        void checkTimers(Selector readSelector, long now) {
+            if (channel == null) {
+                if (now >= retryAt) {
+                    connect(readSelector, now);
+                }
+            } else {
+                try {
+                    checkLiveness(feed, watchdog, lastReceivedAt, now);
+                } catch (SocketTimeoutException e) {
+                    fail(e, now);
+                }
+            }
+        }
+
+        long untilNextTimer(long now) {
+            if (channel == null) {
+                return retryAt - now;
+            }
+            long next = lastReceivedAt + readTimeout;
+            if (watchdog.isEnabled()) {
+                next = Math.min(next, watchdog.getNextCheck());
+            }
+            return next - now;
+        }
+
+        private void connect(Selector readSelector, long now) {
+            try {
+                reader.reset();
+                login = ByteBuffer.wrap(loginCommand(feed.getUserName(), feed.getPassword()).getBytes());
+                // The connect is covered by the same timeout as reads
+                lastReceivedAt = now;
+                connectedAt = now;
+                watchdog.connected(now);
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.socket().setKeepAlive(true);
+                if (channel.connect(new InetSocketAddress(InetAddress.getByName(feed.getHost()), feed.getPort()))) {
+                    connected(channel.register(readSelector, 0, this));
+                } else {
+                    channel.register(readSelector, SelectionKey.OP_CONNECT, this);
+                }
+            } catch (Exception e) {
+                fail(e, now);
+            }
+        }
+
+        void ready(SelectionKey key, long now) {
+            try {
+                if (key.isConnectable()) {
+                    channel.finishConnect();
+                    connected(key);
+                } else if (key.isWritable()) {
+                    sendLogin(key);
+                } else if (key.isReadable()) {
+                    lastReceivedAt = now;
+                    handler.startRead(now);
+                    int count;
+                    try {
+                        count = reader.read(channel, handler);
+                    } finally {
+                        handler.endRead();
+                    }
+                    if (count < 0) {
+                        fail(new EOFException("End of stream"), now);
+                    } else {
+                        feedStatistics.bytesReceived(count);
+                    }
+                }
+            } catch (Exception e) {
+                fail(e, now);
+            }
+        }
+
+        private void connected(SelectionKey key) throws IOException {
+            feedStatistics.connected(System.currentTimeMillis());
+            log.info("AISWorker: Channel connection established to " + feed);
+            log.info("AISWorker: Socket-parameter: " + channel.socket());
+            sendLogin(key);
+        }
+
+        private void sendLogin(SelectionKey key) throws IOException {
+            channel.write(login);
+            key.interestOps(login.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        private void fail(Exception e, long now) {
+            if (continueRetry) {
+                log.warning("AIS connection lost: " + feed + ": " + e.getLocalizedMessage());
+                log.warning("Exception: " + e);
+            }
+            disconnect();
+            feedStatistics.disconnected(true);
+            if (now - connectedAt >= STABLE_CONNECTION_MILLIS) {
+                backoff.reset();
+            }
+            retryAt = now + backoff.nextDelay();
+        }
+
+        void disconnect() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.warning("Error when closing channel. " + e);
+                }
+                channel = null;
+                feedStatistics.disconnected(false);
+            }
+        }
+    }
+
+    /**
+     * A reader of all sentences with its own {@link AISCursor}, so consumers do not take sentences from each
+     * other. The cursor is opened with the reader, in the journal if there is one, or on creation when the
+     * reader is already open; the default consumer opens it on first use. Safe to use from any thread.
+     */
+    final class Consumer {
+
+        private AISCursor<AISSentence> cursor;
+        private boolean closed;
+
+        private synchronized AISCursor<AISSentence> cursor() {
+            if (cursor == null && !closed && queueReady) {
+                AISJournal currentJournal = journal;
+                cursor = currentJournal != null ? currentJournal.newCursor() : sentences.newCursor();
+            }
+            return cursor;
+        }
+
+        List<String> getSentences() {
+            ArrayList<String> returnList = new ArrayList<>((int) Math.min(getQueueSize(), sentences.capacity()));
+            drainTo(returnList, Integer.MAX_VALUE);
+
+            return returnList;
+        }
+
+        int drainTo(Collection<? super String> target, int maxElements) {
+            checkMaxElements(maxElements);
+            AISCursor<AISSentence> current = cursor();
+            long now = System.currentTimeMillis();
+            int count = 0;
+            AISSentence sentence;
+            while (count < maxElements && (sentence = take(current, now)) != null) {
+                target.add(sentence.getPayload());
+                count++;
+            }
+            drained(count);
+
+            return count;
+        }
+
+        int drainSentencesTo(Collection<? super AISSentence> target, int maxElements) {
+            checkMaxElements(maxElements);
+            AISCursor<AISSentence> current = cursor();
+            long now = System.currentTimeMillis();
+            int count = 0;
+            AISSentence sentence;
+            while (count < maxElements && (sentence = take(current, now)) != null) {
+                target.add(sentence);
+                count++;
+            }
+            drained(count);
+
+            return count;
+        }
+
+        /**
+         * Like {@link #drainTo}, handing out each payload as a lazily decoded message.
+         */
+        int drainMessagesTo(Collection<? super AISMessage> target, int maxElements) {
+            checkMaxElements(maxElements);
+            AISCursor<AISSentence> current = cursor();
+            long now = System.currentTimeMillis();
+            int count = 0;
+            AISSentence sentence;
+            while (count < maxElements && (sentence = take(current, now)) != null) {
+                target.add(new AISMessage(sentence));
+                count++;
+            }
+            drained(count);
+
+            return count;
+        }
+
+        /**
+         * Refill a batch with the position reports among the oldest unread sentences. Other sentences read
+         * on the way are skipped.
+         */
+        int drainPositions(AISPositionBatch batch) {
+            batch.clear();
+            AISCursor<AISSentence> current = cursor();
+            long now = System.currentTimeMillis();
+            if (current instanceof AISSlabQueue.Cursor) {
+                return drainPositions((AISSlabQueue.Cursor) current, batch, now);
+            }
+            int count = 0;
+            AISSentence sentence;
+            while (!batch.isFull() && (sentence = take(current, now)) != null) {
+                batch.add(sentence.getPayload(), sentence.getEventTime());
+                count++;
+            }
+            drained(count);
+
+            return batch.size();
+        }
+
+        /**
+         * Decode the payloads straight from copies of the records in direct memory, creating no sentences.
+         */
+        private int drainPositions(AISSlabQueue.Cursor current, AISPositionBatch batch, long now) {
+            AISSlabQueue.Record record = new AISSlabQueue.Record();
+            int count = 0;
+            while (!batch.isFull() && current.poll(record)) {
+                latency.record(now - record.receivedAt);
+                if (record.providerTime != 0) {
+                    providerLatency.record(now - record.providerTime);
+                }
+                batch.add(record.payload, record.length, record.providerTime != 0 ? record.providerTime
+                        : record.receivedAt);
+                count++;
+            }
+            drained(count);
+
+            return batch.size();
+        }
+
+        /**
+         * Take the next sentence and record how long it was queued and, if known, how long ago the provider
+         * received it.
+         */
+        private AISSentence take(AISCursor<AISSentence> current, long now) {
+            AISSentence sentence = current != null ? current.poll() : null;
+            if (sentence != null) {
+                latency.record(now - sentence.getReceivedAt());
+                if (sentence.getProviderTime() != 0) {
+                    providerLatency.record(now - sentence.getProviderTime());
+                }
+            }
+            return sentence;
+        }
+
+        /**
+         * @return sentences this consumer has not read yet
+         */
+        long getQueueSize() {
+            AISCursor<AISSentence> current = cursor();
+            return current != null ? current.size() : 0;
+        }
+
+        /**
+         * Wait until at least {@code minSentences} are unread. Returns early when the timeout expires or the
+         * calling thread is unparked, so callers wait in a loop.
+         *
+         * @param minSentences number of sentences to wait for
+         * @param timeout      maximum time to wait
+         * @param unit         unit of {@code timeout}
+         * @return true if at least {@code minSentences} are unread
+         */
+        boolean awaitSentences(int minSentences, long timeout, TimeUnit unit) {
+            AISCursor<AISSentence> current = cursor();
+            if (current == null) {
+                LockSupport.parkNanos(this, unit.toNanos(timeout));
+                return false;
+            }
+            return current.awaitSize(minSentences, unit.toNanos(timeout));
+        }
+
+        /**
+         * Stop reading. Sentences held back only for this consumer become free; the next consumer opened
+         * continues from here if no other one is open.
+         */
+        synchronized void close() {
+            closed = true;
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Tokenizes each line in place, verifies the checksums of VDM/VDO sentences and queues their payloads,
+     * reassembling multi-fragment messages.
+     * <p>
+     * Every line of one read gets the time the read started, taken once by the caller of {@link #startRead} and
+     * never earlier than that of the previous read. The provider time and station come from the tag block of
+     * the sentence, or of the first fragment of a multi-fragment message. Once the feed sent a VSI sentence,
+     * each accepted message waits for the VSI sentence after it until the next other line or the end of the
+     * read, and takes the time and station of that one unless its tag block had them.
+     */
+    class SentenceHandler implements AISChannelReader.LineHandler {
+        /** Assembler source of fragments without a tag block station */
+        private static final int NO_SOURCE = 0;
+        private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+        private final String feedTag;
+        private final AISStallWatchdog watchdog;
+        private final AISFeedStatistics feedStatistics;
+        private final AISNmeaSentence sentence = new AISNmeaSentence();
+        private final AISFragmentAssembler assembler = new AISFragmentAssembler();
+        /** Fragments of the assembler already added to the feed statistics, which outlive this handler */
+        private long reportedFragmentDrops;
+        /** View of the payload the filter and the area index decode the header bits from */
+        private final AISMessage header = new AISMessage();
+        /** Areas of the message last accepted, null when not a position report or no areas are configured */
+        private List<String> areas;
+        /** MMSI of the message last accepted if it is a position report to conflate, otherwise -1 */
+        private int conflateMmsi;
+        /** Whether the message last accepted goes into the vessel table once its event time is known */
+        private boolean vessel;
+
+        /** Receive time of the lines of the current read, 0 outside a read */
+        private long readAt;
+        private long lastReadAt;
+        /** Station last read, reused while its bytes match */
+        private String station;
+
+        /** Set once the feed sent a VSI sentence */
+        private boolean vsiSeen;
+        /** Accepted message waiting for its VSI sentence */
+        private AISSentence pending;
+        private int pendingMmsi;
+        private boolean pendingVessel;
+        private int pendingSequentialId;
+
+        SentenceHandler(AISFeed feed, AISStallWatchdog watchdog, AISFeedStatistics feedStatistics) {
+            this.feedTag = feed.getTag();
+            this.watchdog = watchdog;
+            this.feedStatistics = feedStatistics;
+        }
+
+        /**
+         * Start a read of one or more lines received at {@code now}.
+         */
+        void startRead(long now) {
+            readAt = Math.max(now, lastReadAt);
+            lastReadAt = readAt;
+        }
+
+        /**
+         * Start a blocking read whose lines get the time the first of them is handed over.
+         */
+        void startRead() {
+            readAt = -1;
+        }
+
+        /**
+         * End a read, queueing a message still waiting for its VSI sentence.
+         */
+        void endRead() {
+            flushPending(receiveTime());
+            readAt = 0;
+        }
+
+        /**
+         * @return the time of the current read, or the current time for lines handed over outside a read
+         */
+        private long receiveTime() {
+            if (readAt > 0) {
+                return readAt;
+            }
+            long now = System.currentTimeMillis();
+            if (readAt < 0) {
+                startRead(now);
+            }
+            return now < lastReadAt ? lastReadAt : now;
+        }
+
+        @Override
+        public void onLine(byte[] line, int length) {
+            if (sentence.wrap(line, length)) {
+                handle();
+            } else {
+                feedStatistics.parseError();
+            }
+        }
+
+        void onLine(String input) {
+            if (sentence.wrap(input)) {
+                handle();
+            } else {
+                feedStatistics.parseError();
+            }
+        }
+
+        private void handle() {
+            long now = receiveTime();
+            flushConflated(now);
+            watchdog.count();
+            feedStatistics.sentenceReceived(now);
+            try {
+                if (sentence.isVsi()) {
+                    vsi(now);
+                    return;
+                }
+                flushPending(now);
+                if (sentence.isVdmOrVdo() && checkChecksum()) {
+                    long tagTime = Math.max(0, sentence.getTagTime());
+                    String tagStation = station(sentence.getTagSourceStart(), sentence.getTagSourceEnd());
+                    if (sentence.getFragmentCount() == 1) {
+                        // This is a single sentence message, cache it
+                        if (accept(sentence.getLine(), sentence.getPayloadStart(), sentence.getPayloadLength(),
+                                sentence.getFillBits(), now)) {
+                            queue(new AISSentence(sentence.payloadToString(), feedTag, now,
+                                    checksumPolicy == AISChecksumPolicy.OFF || sentence.isChecksumValid(), areas,
+                                    tagTime, tagStation), -1, now);
+                            feedStatistics.messageQueued();
+                        }
+                    } else {
+                        if (assembler.add(sentence, source(), tagTime, tagStation, now)
+                                && accept(assembler.getPayload(), 0, assembler.getPayloadLength(),
+                                        assembler.getFillBits(), now)) {
+                            // This part completed a multi sentence message, cache it
+                            queue(new AISSentence(assembler.payloadToString(), feedTag, now,
+                                    checksumPolicy == AISChecksumPolicy.OFF || assembler.isChecksumValid(), areas,
+                                    assembler.getProviderTime(), assembler.getStation()),
+                                    sentence.getSequentialId(), now);
+                            feedStatistics.messageQueued();
+                        }
+                        long fragmentDrops = assembler.getDiscardedCount() + assembler.getExpiredCount()
+                                + assembler.getEvictedCount();
+                        if (fragmentDrops != reportedFragmentDrops) {
+                            feedStatistics.fragmentsDropped(fragmentDrops - reportedFragmentDrops);
+                            reportedFragmentDrops = fragmentDrops;
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                feedStatistics.parseError();
+                log.fine("Input:" + sentence);
+                log.fine("Exception: " + e);
+            }
+        }
+
+        /**
+         * Apply the filter, look up the areas of position reports and note whether to record them in the vessel
+         * table and to conflate them, decided before the payload is copied.
+         *
+         * @return false if the filter or {@link AISAreaMode#FILTER} drops the message
+         */
+        private boolean accept(byte[] payload, int offset, int length, int fillBits, long now) {
+            areas = null;
+            conflateMmsi = -1;
+            vessel = false;
+            AISFilter current = filter;
+            if (current.isAll() && areaIndex == null && conflator == null && vessels == null) {
+                return true;
+            }
+            header.wrap(payload, offset, length, fillBits);
+            if (!current.isAll() && !current.accept(header)) {
+                feedStatistics.filtered();
+                return false;
+            }
+            if (areaIndex != null && header.isPositionReport()) {
+                areas = areaIndex.find(header.getLatitude(), header.getLongitude());
+                if (areas.isEmpty() && areaMode == AISAreaMode.FILTER) {
+                    feedStatistics.filtered();
+                    return false;
+                }
+            }
+            vessel = vessels != null && (header.isPositionReport() || header.isStaticData()) && !header.isMalformed();
+            if (conflator != null && header.isPositionReport()) {
+                conflateMmsi = header.getMmsi();
+            }
+            return true;
+        }
+
+        /**
+         * Queue an accepted message, or hold it for its VSI sentence if the feed sends those.
+         *
+         * @param sequentialId sequential id of the VDM sentences, -1 for a single sentence message
+         */
+        private void queue(AISSentence sentence, int sequentialId, long now) {
+            if (vsiSeen) {
+                pending = sentence;
+                pendingMmsi = conflateMmsi;
+                pendingVessel = vessel;
+                pendingSequentialId = sequentialId;
+            } else {
+                enqueue(sentence, conflateMmsi, vessel, now);
+            }
+        }
+
+        private void enqueue(AISSentence sentence, int mmsi, boolean vessel, long now) {
+            if (vessel) {
+                updateVessel(sentence);
+            }
+            if (mmsi >= 0) {
+                conflate(mmsi, sentence, now);
+            } else {
+                AISFeedReader.this.queue(sentence);
+            }
+        }
+
+        /**
+         * Record a position report or static data message in the vessel table at its event time, which a VSI
+         * sentence may only have completed after the payload it was accepted from was overwritten.
+         */
+        private void updateVessel(AISSentence sentence) {
+            byte[] payloadBytes = sentence.getPayloadBytes();
+            if (payloadBytes != null) {
+                header.wrap(payloadBytes, 0, payloadBytes.length, 0);
+            } else {
+                header.wrap(sentence.getPayload(), 0);
+            }
+            vessels.update(header, sentence.getEventTime());
+        }
+
+        private void flushPending(long now) {
+            if (pending != null) {
+                AISSentence sentence = pending;
+                pending = null;
+                enqueue(sentence, pendingMmsi, pendingVessel, now);
+            }
+        }
+
+        /**
+         * Complete the waiting message with the time and station of a VSI sentence. Its sequential id must
+         * match that of the message unless one of them is empty.
+         */
+        private void vsi(long now) {
+            vsiSeen = true;
+            if (pending == null || (checksumPolicy != AISChecksumPolicy.OFF && !sentence.isChecksumValid())) {
+                return;
+            }
+            int sequentialId = sentence.getVsiSequentialId();
+            if (sequentialId >= 0 && pendingSequentialId >= 0 && sequentialId != pendingSequentialId) {
+                return;
+            }
+            long timeOfDay = sentence.getVsiTimeOfDay();
+            pending = pending.withProvider(timeOfDay >= 0 ? providerTime(timeOfDay, now) : 0,
+                    station(sentence.getVsiSourceStart(), sentence.getVsiSourceEnd()));
+            flushPending(now);
+        }
+
+        /**
+         * Key the fragments of the current line on the station of its tag block, so an aggregated feed relaying
+         * several receivers with the same sequential ids does not mix their messages. A VSI sentence only follows
+         * the completed message, too late to tell its fragments apart.
+         *
+         * @return a hash of the tag block station, {@link #NO_SOURCE} if there is none
+         */
+        private int source() {
+            int start = sentence.getTagSourceStart();
+            int end = sentence.getTagSourceEnd();
+            if (start < 0 || start == end) {
+                return NO_SOURCE;
+            }
+            byte[] line = sentence.getLine();
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + line[i];
+            }
+            return hash;
+        }
+
+        /**
+         * @return the station between the offsets of the current line, null if there is none
+         */
+        private String station(int start, int end) {
+            if (start < 0 || start == end) {
+                return null;
+            }
+            byte[] line = sentence.getLine();
+            String last = station;
+            boolean same = last != null && last.length() == end - start;
+            for (int i = 0; same && i < end - start; i++) {
+                same = last.charAt(i) == line[start + i];
+            }
+            if (!same) {
+                station = new String(line, start, end - start, StandardCharsets.US_ASCII);
+            }
+            return station;
+        }
+
+        /**
+         * Place a UTC time of day in the day closest to the receive time, which may be the day before or after
+         * around midnight.
+         *
+         * @param timeOfDay milliseconds since midnight
+         * @param now       receive time in milliseconds since the epoch
+         */
+        private long providerTime(long timeOfDay, long now) {
+            long time = now - Math.floorMod(now, DAY_MILLIS) + timeOfDay;
+            if (time - now > DAY_MILLIS / 2) {
+                return time - DAY_MILLIS;
+            }
+            if (now - time > DAY_MILLIS / 2) {
+                return time + DAY_MILLIS;
+            }
+            return time;
+        }
+
+        /**
+         * @return false if the sentence is to be dropped for its checksum
+         */
+        private boolean checkChecksum() {
+            if (checksumPolicy == AISChecksumPolicy.OFF || sentence.isChecksumValid()) {
+                return true;
+            }
+            if (sentence.hasChecksum()) {
+                feedStatistics.checksumError();
+            } else {
+                feedStatistics.checksumMissing();
+            }
+            if (checksumPolicy == AISChecksumPolicy.DROP) {
+                feedStatistics.checksumDropped();
+                log.fine("Checksum failed, dropping: " + sentence);
+                return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+/**
+ * Counters of one feed. They are updated by the single thread reading the feed and may be read from any
+ * thread; the counts of one snapshot are not taken atomically together.
+ */
+public final class AISFeedStatistics {
+
+    private final String tag;
+    private final String address;
+
+    private volatile long sentenceCount;
+    private volatile long messageCount;
+    private volatile long byteCount;
+    private volatile long checksumErrorCount;
+    private volatile long checksumMissingCount;
+    private volatile long checksumDroppedCount;
+    private volatile long filteredCount;
+    private volatile long parseErrorCount;
+    private volatile long fragmentDroppedCount;
+    private volatile long connectCount;
+    private volatile long connectionFailureCount;
+    private volatile long connectedAt;
+    private volatile long lastSentenceAt;
+
+    AISFeedStatistics(AISFeed feed) {
+        this.tag = feed.getTag();
+        this.address = feed.getHost() + ":" + feed.getPort();
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * @return host and port of the feed
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * @return NMEA sentences received
+     */
+    public long getSentenceCount() {
+        return sentenceCount;
+    }
+
+    /**
+     * @return complete messages queued, multi-fragment messages counting once
+     */
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * @return bytes read from the socket, line terminators included
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * @return complete messages the filter of the reader dropped instead of queueing them
+     */
+    public long getFilteredCount() {
+        return filteredCount;
+    }
+
+    /**
+     * @return VDM/VDO sentences whose checksum did not match
+     */
+    public long getChecksumErrorCount() {
+        return checksumErrorCount;
+    }
+
+    /**
+     * @return VDM/VDO sentences without checksum
+     */
+    public long getChecksumMissingCount() {
+        return checksumMissingCount;
+    }
+
+    /**
+     * @return sentences discarded by {@link AISChecksumPolicy#DROP}
+     */
+    public long getChecksumDroppedCount() {
+        return checksumDroppedCount;
+    }
+
+    /**
+     * @return lines that are not NMEA sentences or could not be tokenized
+     */
+    public long getParseErrorCount() {
+        return parseErrorCount;
+    }
+
+    /**
+     * @return fragments and partial messages dropped by the reassembly of multi-fragment messages
+     */
+    public long getFragmentDroppedCount() {
+        return fragmentDroppedCount;
+    }
+
+    /**
+     * @return connections established
+     */
+    public long getConnectCount() {
+        return connectCount;
+    }
+
+    /**
+     * @return connection attempts that failed and connections that were lost
+     */
+    public long getConnectionFailureCount() {
+        return connectionFailureCount;
+    }
+
+    public boolean isConnected() {
+        return connectedAt > 0;
+    }
+
+    /**
+     * @return when the current connection was established in milliseconds, 0 when not connected
+     */
+    public long getConnectedAt() {
+        return connectedAt;
+    }
+
+    /**
+     * @return when the last sentence was received in milliseconds, 0 if none was
+     */
+    public long getLastSentenceAt() {
+        return lastSentenceAt;
+    }
+
+    void sentenceReceived(long now) {
+        sentenceCount++;
+        lastSentenceAt = now;
+    }
+
+    void bytesReceived(long count) {
+        byteCount += count;
+    }
+
+    void parseError() {
+        parseErrorCount++;
+    }
+
+    void fragmentsDropped(long count) {
+        fragmentDroppedCount += count;
+    }
+
+    void connected(long now) {
+        connectCount++;
+        connectedAt = now;
+    }
+
+    /**
+     * @param failed true if the connection attempt failed or the connection was lost, false on close
+     */
+    void disconnected(boolean failed) {
+        if (failed) {
+            connectionFailureCount++;
+        }
+        connectedAt = 0;
+    }
+
+    void messageQueued() {
+        messageCount++;
+    }
+
+    void filtered() {
+        filteredCount++;
+    }
+
+    void checksumError() {
+        checksumErrorCount++;
+    }
+
+    void checksumMissing() {
+        checksumMissingCount++;
+    }
+
+    void checksumDropped() {
+        checksumDroppedCount++;
+    }
+
+    @Override
+    public String toString() {
+        return "AISFeedStatistics{tag=" + tag + ", connected=" + isConnected() + ", sentences=" + sentenceCount
+                + ", messages=" + messageCount + ", filtered=" + filteredCount + ", bytes=" + byteCount
+                + ", checksumErrors=" + checksumErrorCount
+                + ", checksumMissing=" + checksumMissingCount + ", checksumDropped=" + checksumDroppedCount
+                + ", parseErrors=" + parseErrorCount + ", fragmentsDropped=" + fragmentDroppedCount
+                + ", connects=" + connectCount + ", connectionFailures=" + connectionFailureCount + "}";
+    }
+}
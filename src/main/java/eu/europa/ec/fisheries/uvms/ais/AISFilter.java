@@ -0,0 +1,223 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides which messages a reader queues, evaluated on the header bits of each message before anything is
+ * allocated for it. A filter is written like {@code types=1-3,5,18,19,24,27; mmsi=257000001,257000002;
+ * exclude=219000003; box=54.5,10.0,58.0,13.5}, entries separated by {@code ;}:
+ * <ul>
+ * <li>{@code types}: message types to keep, single types or ranges; all types when absent</li>
+ * <li>{@code mmsi}: MMSIs to keep; all MMSIs when absent</li>
+ * <li>{@code exclude}: MMSIs to drop</li>
+ * <li>{@code box}: minimum latitude, minimum longitude, maximum latitude and maximum longitude in decimal
+ * degrees, the minimum longitude greater than the maximum one for a box across the antimeridian. With one or
+ * more boxes, position reports are kept only when they lie in one of them. Messages without a position, such
+ * as static and voyage data, are not checked against the boxes.</li>
+ * </ul>
+ * {@code mmsi}, {@code exclude} and {@code box} may be repeated. Instances are immutable, so a reader swaps in
+ * a new filter while its threads keep using the old one.
+ */
+final class AISFilter {
+
+    /** Accepts every message */
+    static final AISFilter ALL = new AISFilter("", -1L, null, null, new int[0]);
+
+    private static final int MAX_MESSAGE_TYPE = 63;
+
+    private final String text;
+    private final long typeMask;
+    private final AISLongHashSet allowed;
+    private final AISLongHashSet excluded;
+    /** Minimum latitude, minimum longitude, maximum latitude and maximum longitude of every box, fixed point */
+    private final int[] boxes;
+
+    private AISFilter(String text, long typeMask, AISLongHashSet allowed, AISLongHashSet excluded, int[] boxes) {
+        this.text = text;
+        this.typeMask = typeMask;
+        this.allowed = allowed;
+        this.excluded = excluded;
+        this.boxes = boxes;
+    }
+
+    /**
+     * Parse a configured filter.
+     *
+     * @param value the configured filter, may be null or empty
+     * @return the filter, {@link #ALL} when nothing is configured
+     * @throws IllegalArgumentException if an entry is malformed
+     */
+    static AISFilter parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return ALL;
+        }
+        long typeMask = -1L;
+        boolean typesSet = false;
+        AISLongHashSet allowed = null;
+        AISLongHashSet excluded = null;
+        List<int[]> boxes = new ArrayList<>();
+        for (String entry : value.split(";")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int equals = entry.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Filter entry has no '=': " + entry);
+            }
+            String key = entry.substring(0, equals).trim().toLowerCase();
+            String list = entry.substring(equals + 1);
+            switch (key) {
+                case "types":
+                    if (!typesSet) {
+                        typeMask = 0;
+                        typesSet = true;
+                    }
+                    typeMask |= parseTypes(list);
+                    break;
+                case "mmsi":
+                    allowed = parseMmsis(list, allowed);
+                    break;
+                case "exclude":
+                    excluded = parseMmsis(list, excluded);
+                    break;
+                case "box":
+                    boxes.add(parseBox(list));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown filter entry: " + entry);
+            }
+        }
+        int[] boxArray = new int[boxes.size() * 4];
+        for (int i = 0; i < boxes.size(); i++) {
+            System.arraycopy(boxes.get(i), 0, boxArray, i * 4, 4);
+        }
+        return new AISFilter(value.trim(), typeMask, allowed, excluded, boxArray);
+    }
+
+    private static long parseTypes(String list) {
+        long mask = 0;
+        for (String item : list.split(",")) {
+            item = item.trim();
+            int dash = item.indexOf('-', 1);
+            int from = parseType(dash < 0 ? item : item.substring(0, dash));
+            int to = dash < 0 ? from : parseType(item.substring(dash + 1));
+            if (from > to) {
+                throw new IllegalArgumentException("Empty message type range: " + item);
+            }
+            for (int type = from; type <= to; type++) {
+                mask |= 1L << type;
+            }
+        }
+        return mask;
+    }
+
+    private static int parseType(String value) {
+        int type;
+        try {
+            type = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Message type is not a number: " + value, e);
+        }
+        if (type < 0 || type > MAX_MESSAGE_TYPE) {
+            throw new IllegalArgumentException("Message type out of range: " + type);
+        }
+        return type;
+    }
+
+    private static AISLongHashSet parseMmsis(String list, AISLongHashSet set) {
+        String[] items = list.split(",");
+        AISLongHashSet result = set != null ? set : new AISLongHashSet(items.length);
+        for (String item : items) {
+            try {
+                result.add(Long.parseLong(item.trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("MMSI is not a number: " + item, e);
+            }
+        }
+        return result;
+    }
+
+    private static int[] parseBox(String list) {
+        String[] items = list.split(",");
+        if (items.length != 4) {
+            throw new IllegalArgumentException("Box needs minimum and maximum latitude and longitude: " + list);
+        }
+        double[] degrees = new double[4];
+        for (int i = 0; i < 4; i++) {
+            try {
+                degrees[i] = Double.parseDouble(items[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Box coordinate is not a number: " + items[i], e);
+            }
+        }
+        if (degrees[0] < -90 || degrees[2] > 90 || degrees[0] > degrees[2]
+                || Math.abs(degrees[1]) > 180 || Math.abs(degrees[3]) > 180) {
+            throw new IllegalArgumentException("Box out of range: " + list);
+        }
+        int[] box = new int[4];
+        for (int i = 0; i < 4; i++) {
+            box[i] = (int) Math.round(degrees[i] * AISMessage.UNITS_PER_DEGREE);
+        }
+        return box;
+    }
+
+    /**
+     * @return true if this filter accepts every message
+     */
+    boolean isAll() {
+        return this == ALL;
+    }
+
+    /**
+     * Decide on a message, decoding no more of it than the entries of this filter need.
+     *
+     * @param message a view of the payload
+     * @return true if the message is to be queued
+     */
+    boolean accept(AISMessage message) {
+        int type = message.getMessageType();
+        if ((typeMask & 1L << type) == 0) {
+            return false;
+        }
+        if (allowed != null || excluded != null) {
+            int mmsi = message.getMmsi();
+            if (allowed != null && !allowed.contains(mmsi) || excluded != null && excluded.contains(mmsi)) {
+                return false;
+            }
+        }
+        if (boxes.length == 0 || !AISMessage.isPositionReport(type)) {
+            return true;
+        }
+        int latitude = message.getLatitude();
+        int longitude = message.getLongitude();
+        for (int i = 0; i < boxes.length; i += 4) {
+            if (latitude >= boxes[i] && latitude <= boxes[i + 2] && (boxes[i + 1] <= boxes[i + 3]
+                    ? longitude >= boxes[i + 1] && longitude <= boxes[i + 3]
+                    : longitude >= boxes[i + 1] || longitude <= boxes[i + 3])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the filter as configured, empty for {@link #ALL}
+     */
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
+/**
+ * Reassembles multi-fragment AIS messages.
+ * <p>
+ * Partial messages are kept in a fixed table of pre-sized slots keyed by (sequential id, channel, source),
+ * so fragments of interleaved messages never mix. A partial is dropped when it grows older than the
+ * configured age, when a fragment arrives out of order, when a new first fragment reuses its key, or when
+ * the table is full and its slot is the oldest one. Memory use is therefore fixed at construction.
+ * Instances are not thread safe and belong to a single reader thread.
+ */
+final class AISFragmentAssembler {
+
+    /** Fragment count is a single digit in the VDM/VDO sentence */
+    static final int MAX_FRAGMENTS = 9;
+
+    /** An NMEA sentence is at most 82 characters, which also bounds the payload of one fragment */
+    static final int MAX_FRAGMENT_PAYLOAD = 82;
+
+    static final int DEFAULT_MAX_PARTIALS = 64;
+    static final long DEFAULT_MAX_AGE_MILLIS = 10 * 1000L;
+
+    private static Logger log = Logger.getLogger(AISFragmentAssembler.class.getName());
+
+    private static final class Slot {
+        final byte[] data = new byte[MAX_FRAGMENTS * MAX_FRAGMENT_PAYLOAD];
+        boolean active;
+        int source;
+        int sequentialId;
+        byte channel;
+        int fragmentCount;
+        int nextFragment;
+        int length;
+        long createdAt;
+        boolean checksumValid;
+        long providerTime;
+        String station;
+    }
+
+    private final Slot[] slots;
+    private final long maxAgeMillis;
+
+    private byte[] payload;
+    private int payloadLength;
+    private int fillBits;
+    private boolean checksumValid;
+    private long providerTime;
+    private String station;
+
+    private long completed;
+    private long expired;
+    private long evicted;
+    private long discarded;
+
+    AISFragmentAssembler() {
+        this(DEFAULT_MAX_PARTIALS, DEFAULT_MAX_AGE_MILLIS);
+    }
+
+    AISFragmentAssembler(int maxPartials, long maxAgeMillis) {
+        this.slots = new Slot[maxPartials];
+        for (int i = 0; i < maxPartials; i++) {
+            slots[i] = new Slot();
+        }
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Add one fragment of a multi-fragment message.
+     *
+     * @param sentence     a VDM/VDO sentence with a fragment count above one
+     * @param source       identifies the receiver or feed the sentence came from
+     * @param providerTime provider time of the sentence, kept from the first fragment
+     * @param station      station of the sentence, kept from the first fragment
+     * @param now          current time in milliseconds
+     * @return true if this fragment completed a message, which is then available through
+     * {@link #getPayload()} until the next call
+     */
+    boolean add(AISNmeaSentence sentence, int source, long providerTime, String station, long now) {
+        int fragmentCount = sentence.getFragmentCount();
+        int fragmentNumber = sentence.getFragmentNumber();
+        int sequentialId = sentence.getSequentialId();
+        byte channel = sentence.getChannel();
+
+        if (fragmentCount < 2 || fragmentCount > MAX_FRAGMENTS || fragmentNumber < 1 || fragmentNumber > fragmentCount
+                || sentence.getPayloadLength() > MAX_FRAGMENT_PAYLOAD) {
+            discarded++;
+            return false;
+        }
+
+        Slot slot = find(source, sequentialId, channel, now);
+        if (fragmentNumber == 1) {
+            if (slot != null) {
+                // The rest of the previous message with this key never arrived
+                release(slot);
+                discarded++;
+            }
+            slot = allocate(now);
+            slot.active = true;
+            slot.source = source;
+            slot.sequentialId = sequentialId;
+            slot.channel = channel;
+            slot.fragmentCount = fragmentCount;
+            slot.nextFragment = 1;
+            slot.length = 0;
+            slot.createdAt = now;
+            slot.checksumValid = true;
+            slot.providerTime = providerTime;
+            slot.station = station;
+        } else if (slot == null) {
+            // The first fragment was lost, expired or evicted
+            discarded++;
+            return false;
+        } else if (slot.nextFragment != fragmentNumber || slot.fragmentCount != fragmentCount) {
+            release(slot);
+            discarded++;
+            return false;
+        }
+
+        System.arraycopy(sentence.getLine(), sentence.getPayloadStart(), slot.data, slot.length, sentence.getPayloadLength());
+        slot.length += sentence.getPayloadLength();
+        slot.nextFragment++;
+        slot.checksumValid &= sentence.isChecksumValid();
+
+        if (fragmentNumber < fragmentCount) {
+            return false;
+        }
+
+        payload = slot.data;
+        payloadLength = slot.length;
+        fillBits = sentence.getFillBits();
+        checksumValid = slot.checksumValid;
+        this.providerTime = slot.providerTime;
+        this.station = slot.station;
+        release(slot);
+        completed++;
+        return true;
+    }
+
+    private Slot find(int source, int sequentialId, byte channel, long now) {
+        Slot match = null;
+        for (Slot slot : slots) {
+            if (!slot.active) {
+                continue;
+            }
+            if (now - slot.createdAt > maxAgeMillis) {
+                release(slot);
+                expired++;
+            } else if (slot.sequentialId == sequentialId && slot.channel == channel && slot.source == source) {
+                match = slot;
+            }
+        }
+        return match;
+    }
+
+    private Slot allocate(long now) {
+        Slot oldest = null;
+        for (Slot slot : slots) {
+            if (!slot.active) {
+                return slot;
+            }
+            if (oldest == null || slot.createdAt < oldest.createdAt) {
+                oldest = slot;
+            }
+        }
+        log.fine("Fragment table full, evicting partial message " + oldest.sequentialId + " of age "
+                + (now - oldest.createdAt) + " ms");
+        release(oldest);
+        evicted++;
+        return oldest;
+    }
+
+    private static void release(Slot slot) {
+        slot.active = false;
+    }
+
+    /**
+     * @return the array holding the last completed payload, valid until the next {@link #add}
+     */
+    byte[] getPayload() {
+        return payload;
+    }
+
+    int getPayloadLength() {
+        return payloadLength;
+    }
+
+    int getFillBits() {
+        return fillBits;
+    }
+
+    /**
+     * @return true if every fragment of the last completed message had a valid checksum
+     */
+    boolean isChecksumValid() {
+        return checksumValid;
+    }
+
+    /**
+     * @return the provider time of the first fragment of the last completed message
+     */
+    long getProviderTime() {
+        return providerTime;
+    }
+
+    /**
+     * @return the station of the first fragment of the last completed message, null if it had none
+     */
+    String getStation() {
+        return station;
+    }
+
+    /**
+     * @return the last completed payload as ASCII text
+     */
+    String payloadToString() {
+        return new String(payload, 0, payloadLength, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Number of partial messages currently held
+     */
+    int getPartialCount() {
+        int count = 0;
+        for (Slot slot : slots) {
+            if (slot.active) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    long getCompletedCount() {
+        return completed;
+    }
+
+    /**
+     * Partials dropped because they grew older than the maximum age
+     */
+    long getExpiredCount() {
+        return expired;
+    }
+
+    /**
+     * Partials dropped to make room in a full table
+     */
+    long getEvictedCount() {
+        return evicted;
+    }
+
+    /**
+     * Fragments and partials dropped because they were malformed, orphaned, out of order or superseded
+     */
+    long getDiscardedCount() {
+        return discarded;
+    }
+}
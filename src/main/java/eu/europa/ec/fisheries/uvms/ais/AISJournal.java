@@ -0,0 +1,749 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal of sentences in memory-mapped segment files, used instead of the heap queue when a
+ * journal directory is configured.
+ * <p>
+ * Records are addressed by a byte position that grows forever; every segment file is named after the
+ * position of its first record, and a new one starts where the previous one ends. A record is a length
+ * followed by the receive time, flags, feed tag, areas, provider time and station if any and payload; the length is written last, so a record cut
+ * short by a crash reads as the end of the journal. Consumers read through {@link AISCursor}s with the
+ * same semantics as those of {@link AISRingBuffer}. The position of the slowest cursor is kept in a mapped
+ * offset file, so a restarted reader continues where its slowest consumer stopped and faster ones may see
+ * some sentences again. Writes to mapped files survive a crash of the JVM but not necessarily one of the
+ * operating system.
+ * <p>
+ * Segments are deleted once every cursor has passed them, or while unread when the journal exceeds its
+ * retention size or a segment its retention age; their sentences are then counted as dropped. One producer
+ * thread appends, any number of consumers read. A directory is used by one journal at a time, enforced by a
+ * file lock.
+ */
+final class AISJournal implements Closeable {
+
+    static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    static final long DEFAULT_RETENTION_SIZE = 4L * 1024 * 1024 * 1024;
+    static final long DEFAULT_RETENTION_AGE = TimeUnit.HOURS.toMillis(24);
+    static final long MIN_SEGMENT_SIZE = 64 * 1024;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String OFFSET_FILE = "consumer.offset";
+    private static final String LOCK_FILE = "journal.lock";
+
+    /** Length, receive time, flags and tag length */
+    private static final int HEADER_SIZE = 4 + 8 + 1 + 1;
+    private static final int MAX_TAG_LENGTH = 255;
+    private static final byte FLAG_CHECKSUM_VALID = 1;
+    /** The tag is followed by the number of areas and each area as its length and bytes */
+    private static final byte FLAG_AREAS = 2;
+    /** The areas are followed by the provider time */
+    private static final byte FLAG_PROVIDER_TIME = 4;
+    /** The provider time is followed by the station as its length and bytes */
+    private static final byte FLAG_STATION = 8;
+    private static final int MAX_AREAS = 255;
+
+    private static Logger log = Logger.getLogger(AISJournal.class.getName());
+
+    /** Unmaps a segment before its file is deleted, null if this JVM offers no way to */
+    private static final Unmapper UNMAPPER = findUnmapper();
+
+    private interface Unmapper {
+        void unmap(MappedByteBuffer buffer) throws ReflectiveOperationException;
+    }
+
+    private static final class Segment {
+        final long base;
+        final Path file;
+        final MappedByteBuffer buffer;
+        /** Consumer side view with its own position */
+        final ByteBuffer readBuffer;
+        volatile long lastAppendAt;
+
+        Segment(long base, Path file, MappedByteBuffer buffer, long lastAppendAt) {
+            this.base = base;
+            this.file = file;
+            this.buffer = buffer;
+            this.readBuffer = buffer.duplicate();
+            this.lastAppendAt = lastAppendAt;
+        }
+    }
+
+    private final Path directory;
+    private final long segmentSize;
+    private final long retentionSize;
+    private final long retentionAge;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final FileChannel offsetChannel;
+    private final MappedByteBuffer offset;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    // Producer side
+    private volatile Segment head;
+    private volatile long writePosition;
+    private volatile long appended;
+    private volatile boolean closed;
+    private String lastTag;
+    private byte[] lastTagBytes;
+    private List<String> lastAreas;
+    private byte[] lastAreaBytes;
+    private String lastStation;
+    private byte[] lastStationBytes;
+
+    // Consumer side, guarded by this
+    private final List<Cursor> cursors = new ArrayList<>();
+    /** The same cursors for the producer to wake their waiters, replaced on change */
+    private volatile Cursor[] waitable = new Cursor[0];
+    /** The last cursor closed, kept so the next one opened continues from it */
+    private Cursor parked;
+    private byte[] payloadBytes = new byte[AISChannelReader.MAX_LINE_LENGTH];
+    private byte[] readTagBytes = new byte[0];
+    private String readTag;
+    private byte[] readAreaBytes = new byte[0];
+    private List<String> readAreas;
+    private byte[] readStationBytes = new byte[0];
+    private String readStation;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Open a journal, recovering the segments and consumer offset found in the directory.
+     *
+     * @param directory     directory of the journal, created if missing
+     * @param segmentSize   bytes per segment file
+     * @param retentionSize bytes of segments kept at most
+     * @param retentionAge  milliseconds a segment is kept at most after its last append
+     * @throws IOException if the directory is locked by another journal or cannot be read
+     */
+    AISJournal(Path directory, long segmentSize, long retentionSize, long retentionAge) throws IOException {
+        validate(segmentSize, retentionSize, retentionAge);
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.retentionSize = retentionSize;
+        this.retentionAge = retentionAge;
+
+        Files.createDirectories(directory);
+        lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lockChannel.close();
+            throw new IOException("Journal " + directory + " is in use by this JVM");
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("Journal " + directory + " is in use by another process");
+        }
+        offsetChannel = FileChannel.open(directory.resolve(OFFSET_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        offset = offsetChannel.map(FileChannel.MapMode.READ_WRITE, 0, 8);
+        recover();
+    }
+
+    /**
+     * @throws IllegalArgumentException if a setting is out of range
+     */
+    static void validate(long segmentSize, long retentionSize, long retentionAge) {
+        if (segmentSize < MIN_SEGMENT_SIZE || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Journal segment size out of range: " + segmentSize);
+        }
+        if (retentionSize < segmentSize) {
+            throw new IllegalArgumentException("Journal retention size below segment size: " + retentionSize);
+        }
+        if (retentionAge < 1) {
+            throw new IllegalArgumentException("Journal retention age must be positive: " + retentionAge);
+        }
+    }
+
+    private void recover() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long base = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(base, map(file, base, Files.size(file), false,
+                        Files.getLastModifiedTime(file).toMillis()));
+            }
+        }
+        long stored = offset.getLong(0);
+        if (segments.isEmpty()) {
+            writePosition = stored;
+            parked = new Cursor(stored);
+            cursors.add(parked);
+            waitable = new Cursor[]{parked};
+            return;
+        }
+        head = segments.lastEntry().getValue();
+        writePosition = head.base + scan(head, 0, Long.MAX_VALUE)[0];
+        long readPosition = Math.max(segments.firstKey(), Math.min(stored, writePosition));
+        parked = new Cursor(readPosition);
+        cursors.add(parked);
+        waitable = new Cursor[]{parked};
+        long unread = 0;
+        for (Segment segment : segments.tailMap(segments.floorKey(readPosition)).values()) {
+            unread += scan(segment, Math.max(0, readPosition - segment.base), end(segment) - segment.base)[1];
+        }
+        appended = unread;
+        log.info("AIS journal " + directory + " recovered with " + unread + " sentences to drain in "
+                + segments.size() + " segments");
+    }
+
+    /**
+     * Walk the records of a segment.
+     *
+     * @return the offset after the last complete record and the number of records walked
+     */
+    private static long[] scan(Segment segment, long from, long to) {
+        ByteBuffer buffer = segment.readBuffer;
+        long at = from;
+        long records = 0;
+        while (at + HEADER_SIZE <= Math.min(to, buffer.capacity())) {
+            int length = buffer.getInt((int) at);
+            if (length < HEADER_SIZE - 4 || at + 4 + length > buffer.capacity()) {
+                break;
+            }
+            at += 4 + length;
+            records++;
+        }
+        return new long[]{at, records};
+    }
+
+    private Segment map(Path file, long base, long size, boolean create, long lastAppendAt) throws IOException {
+        try (FileChannel channel = create
+                ? FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            return new Segment(base, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, size), lastAppendAt);
+        }
+    }
+
+    /**
+     * @return position after the last record of a segment
+     */
+    private long end(Segment segment) {
+        Long next = segments.higherKey(segment.base);
+        return next != null ? next : writePosition;
+    }
+
+    /**
+     * Append a sentence. Must only be called from the producer thread.
+     *
+     * @return false if the journal is closed or the segment could not be created
+     */
+    boolean append(AISSentence sentence) {
+        if (closed) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        byte[] tag = tagBytes(sentence.getFeedTag());
+        byte[] areas = areaBytes(sentence.getAreas());
+        long providerTime = sentence.getProviderTime();
+        byte[] station = stationBytes(sentence.getStation());
+        String payload = sentence.getPayload();
+        int length = HEADER_SIZE - 4 + tag.length + areas.length + (providerTime != 0 ? 8 : 0)
+                + (station != null ? 1 + station.length : 0) + payload.length();
+        try {
+            if (head == null || writePosition - head.base + 4 + length > head.buffer.capacity()) {
+                roll(sentence.getReceivedAt());
+            }
+        } catch (IOException e) {
+            dropped.incrementAndGet();
+            log.severe("Unable to create AIS journal segment in " + directory + ": " + e);
+            return false;
+        }
+
+        MappedByteBuffer buffer = head.buffer;
+        int at = (int) (writePosition - head.base);
+        buffer.putLong(at + 4, sentence.getReceivedAt());
+        buffer.put(at + 12, (byte) ((sentence.isChecksumValid() ? FLAG_CHECKSUM_VALID : 0)
+                | (areas.length > 0 ? FLAG_AREAS : 0) | (providerTime != 0 ? FLAG_PROVIDER_TIME : 0)
+                | (station != null ? FLAG_STATION : 0)));
+        buffer.put(at + 13, (byte) tag.length);
+        int index = at + HEADER_SIZE;
+        for (byte b : tag) {
+            buffer.put(index++, b);
+        }
+        for (byte b : areas) {
+            buffer.put(index++, b);
+        }
+        if (providerTime != 0) {
+            buffer.putLong(index, providerTime);
+            index += 8;
+        }
+        if (station != null) {
+            buffer.put(index++, (byte) station.length);
+            for (byte b : station) {
+                buffer.put(index++, b);
+            }
+        }
+        for (int i = 0; i < payload.length(); i++) {
+            buffer.put(index++, (byte) payload.charAt(i));
+        }
+        buffer.putInt(at, length);
+        head.lastAppendAt = sentence.getReceivedAt();
+
+        appended++;
+        writePosition += 4 + length;
+        for (Cursor cursor : waitable) {
+            Thread w = cursor.waiter;
+            if (w != null && appended >= cursor.waitCount) {
+                LockSupport.unpark(w);
+            }
+        }
+        return true;
+    }
+
+    private byte[] tagBytes(String tag) {
+        if (!tag.equals(lastTag)) {
+            byte[] bytes = tag.getBytes(StandardCharsets.UTF_8);
+            lastTagBytes = bytes.length > MAX_TAG_LENGTH ? Arrays.copyOf(bytes, MAX_TAG_LENGTH) : bytes;
+            lastTag = tag;
+        }
+        return lastTagBytes;
+    }
+
+    private byte[] stationBytes(String station) {
+        if (station == null) {
+            return null;
+        }
+        if (!station.equals(lastStation)) {
+            byte[] bytes = station.getBytes(StandardCharsets.UTF_8);
+            lastStationBytes = bytes.length > MAX_TAG_LENGTH ? Arrays.copyOf(bytes, MAX_TAG_LENGTH) : bytes;
+            lastStation = station;
+        }
+        return lastStationBytes;
+    }
+
+    /**
+     * Area lists come from the shared entries of an {@link AISAreaIndex}, so the last one is reused while it is
+     * the same list.
+     */
+    private byte[] areaBytes(List<String> areas) {
+        if (areas.isEmpty()) {
+            return new byte[0];
+        }
+        if (areas != lastAreas) {
+            int count = Math.min(areas.size(), MAX_AREAS);
+            byte[][] names = new byte[count][];
+            int size = 1;
+            for (int i = 0; i < count; i++) {
+                byte[] name = areas.get(i).getBytes(StandardCharsets.UTF_8);
+                names[i] = name.length > MAX_TAG_LENGTH ? Arrays.copyOf(name, MAX_TAG_LENGTH) : name;
+                size += 1 + names[i].length;
+            }
+            byte[] bytes = new byte[size];
+            bytes[0] = (byte) count;
+            int index = 1;
+            for (byte[] name : names) {
+                bytes[index++] = (byte) name.length;
+                System.arraycopy(name, 0, bytes, index, name.length);
+                index += name.length;
+            }
+            lastAreaBytes = bytes;
+            lastAreas = areas;
+        }
+        return lastAreaBytes;
+    }
+
+    private void roll(long now) throws IOException {
+        long base = writePosition;
+        Path file = directory.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+        Segment segment = map(file, base, segmentSize, true, now);
+        segments.put(base, segment);
+        head = segment;
+        expire(now);
+    }
+
+    /**
+     * Open a cursor. It continues from the last cursor closed if there is one, otherwise it starts at the
+     * oldest sentence any open cursor has not read yet.
+     *
+     * @return the cursor
+     */
+    synchronized AISCursor<AISSentence> newCursor() {
+        if (parked != null) {
+            Cursor cursor = parked;
+            parked = null;
+            return cursor;
+        }
+        Cursor slowest = slowest();
+        Cursor cursor = new Cursor(slowest.position);
+        cursor.index = slowest.index;
+        cursors.add(cursor);
+        waitable = cursors.toArray(new Cursor[0]);
+        return cursor;
+    }
+
+    private synchronized void close(Cursor cursor) {
+        if (cursor == parked || !cursors.contains(cursor)) {
+            return;
+        }
+        if (cursors.size() == 1) {
+            parked = cursor;
+        } else {
+            cursors.remove(cursor);
+            waitable = cursors.toArray(new Cursor[0]);
+        }
+    }
+
+    private Cursor slowest() {
+        Cursor slowest = cursors.get(0);
+        for (Cursor cursor : cursors) {
+            if (cursor.position < slowest.position) {
+                slowest = cursor;
+            }
+        }
+        return slowest;
+    }
+
+    private synchronized AISSentence poll(Cursor cursor) {
+        if (cursor.position >= writePosition) {
+            return null;
+        }
+        Segment segment = segments.floorEntry(cursor.position).getValue();
+        ByteBuffer buffer = segment.readBuffer;
+        int at = (int) (cursor.position - segment.base);
+        int length = buffer.getInt(at);
+        long receivedAt = buffer.getLong(at + 4);
+        byte flags = buffer.get(at + 12);
+        boolean checksumValid = (flags & FLAG_CHECKSUM_VALID) != 0;
+        int tagLength = buffer.get(at + 13) & 0xFF;
+
+        buffer.position(at + HEADER_SIZE);
+        String tag = readTag(buffer, tagLength);
+        List<String> areas = (flags & FLAG_AREAS) != 0 ? readAreas(buffer) : null;
+        long providerTime = (flags & FLAG_PROVIDER_TIME) != 0 ? buffer.getLong() : 0;
+        String station = (flags & FLAG_STATION) != 0 ? readStation(buffer) : null;
+        int payloadLength = length - (buffer.position() - at - 4);
+        if (payloadLength > payloadBytes.length) {
+            payloadBytes = new byte[payloadLength];
+        }
+        buffer.get(payloadBytes, 0, payloadLength);
+
+        cursor.position += 4 + length;
+        cursor.index++;
+        return new AISSentence(new String(payloadBytes, 0, payloadLength, StandardCharsets.US_ASCII), tag,
+                receivedAt, checksumValid, areas, providerTime, station);
+    }
+
+    /**
+     * The tags of a journal are few, so the last one is reused while its bytes match.
+     */
+    private String readTag(ByteBuffer buffer, int tagLength) {
+        boolean same = tagLength == readTagBytes.length;
+        for (int i = 0; same && i < tagLength; i++) {
+            same = buffer.get(buffer.position() + i) == readTagBytes[i];
+        }
+        if (same && readTag != null) {
+            buffer.position(buffer.position() + tagLength);
+        } else {
+            readTagBytes = new byte[tagLength];
+            buffer.get(readTagBytes);
+            readTag = new String(readTagBytes, StandardCharsets.UTF_8);
+        }
+        return readTag;
+    }
+
+    /**
+     * Sentences of a feed often come from the same station in runs, so the last one is reused while its bytes
+     * match.
+     */
+    private String readStation(ByteBuffer buffer) {
+        int stationLength = buffer.get() & 0xFF;
+        boolean same = stationLength == readStationBytes.length;
+        for (int i = 0; same && i < stationLength; i++) {
+            same = buffer.get(buffer.position() + i) == readStationBytes[i];
+        }
+        if (same && readStation != null) {
+            buffer.position(buffer.position() + stationLength);
+        } else {
+            readStationBytes = new byte[stationLength];
+            buffer.get(readStationBytes);
+            readStation = new String(readStationBytes, StandardCharsets.UTF_8);
+        }
+        return readStation;
+    }
+
+    /**
+     * Positions of a feed fall in the same few areas for long stretches, so the last list is reused while its
+     * bytes match.
+     */
+    private List<String> readAreas(ByteBuffer buffer) {
+        int start = buffer.position();
+        int end = start + 1;
+        for (int count = buffer.get(start) & 0xFF; count > 0; count--) {
+            end += 1 + (buffer.get(end) & 0xFF);
+        }
+        boolean same = end - start == readAreaBytes.length;
+        for (int i = 0; same && i < readAreaBytes.length; i++) {
+            same = buffer.get(start + i) == readAreaBytes[i];
+        }
+        if (same && readAreas != null) {
+            buffer.position(end);
+            return readAreas;
+        }
+        readAreaBytes = new byte[end - start];
+        buffer.get(readAreaBytes);
+        String[] names = new String[readAreaBytes[0] & 0xFF];
+        int index = 1;
+        for (int i = 0; i < names.length; i++) {
+            int nameLength = readAreaBytes[index++] & 0xFF;
+            names[i] = new String(readAreaBytes, index, nameLength, StandardCharsets.UTF_8);
+            index += nameLength;
+        }
+        readAreas = Collections.unmodifiableList(Arrays.asList(names));
+        return readAreas;
+    }
+
+    /**
+     * Persist the position of the slowest cursor and delete the segments no longer needed. Called after each
+     * drain.
+     */
+    synchronized void commit(long now) {
+        if (!closed) {
+            offset.putLong(0, slowest().position);
+        }
+        expire(now);
+    }
+
+    /**
+     * Delete segments every cursor has passed, and the oldest unread ones beyond the retention size or age,
+     * moving the cursors still in them to their end. The segment being written is kept.
+     */
+    private synchronized void expire(long now) {
+        long totalSize = 0;
+        for (Segment segment : segments.values()) {
+            totalSize += segment.buffer.capacity();
+        }
+        Iterator<Map.Entry<Long, Segment>> entries = segments.entrySet().iterator();
+        while (entries.hasNext()) {
+            Segment segment = entries.next().getValue();
+            if (segment == head) {
+                break;
+            }
+            long end = end(segment);
+            boolean drained = slowest().position >= end;
+            if (!drained && totalSize <= retentionSize && now - segment.lastAppendAt <= retentionAge) {
+                break;
+            }
+            if (!drained) {
+                long lost = 0;
+                for (Cursor cursor : cursors) {
+                    if (cursor.position < end) {
+                        long skipped = scan(segment, Math.max(0, cursor.position - segment.base), end - segment.base)[1];
+                        cursor.position = end;
+                        cursor.index += skipped;
+                        lost = Math.max(lost, skipped);
+                    }
+                }
+                dropped.addAndGet(lost);
+                log.warning("AIS journal " + directory + " over retention, " + lost + " unread sentences deleted");
+            }
+            entries.remove();
+            totalSize -= segment.buffer.capacity();
+            // No cursor is left in the segment and the producer has moved on, so nothing touches it again
+            unmap(segment.buffer);
+            try {
+                Files.deleteIfExists(segment.file);
+            } catch (IOException e) {
+                log.warning("Unable to delete AIS journal segment " + segment.file + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Release a mapping now rather than when the buffer is collected, which may take long enough for deleted
+     * segments to hold on to the disk space of their files, and on Windows keeps the file from being deleted.
+     * The buffer must not be accessed afterwards.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (UNMAPPER != null) {
+            try {
+                UNMAPPER.unmap(buffer);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                log.warning("Unable to unmap AIS journal segment: " + e);
+            }
+        }
+    }
+
+    /**
+     * @return {@code Unsafe.invokeCleaner} from Java 9 on, the cleaner of the buffer on Java 8, or null
+     */
+    private static Unmapper findUnmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            final Object unsafe = theUnsafe.get(null);
+            return new Unmapper() {
+                @Override
+                public void unmap(MappedByteBuffer buffer) throws ReflectiveOperationException {
+                    invokeCleaner.invoke(unsafe, buffer);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 8
+        }
+        try {
+            final Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            final Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return new Unmapper() {
+                @Override
+                public void unmap(MappedByteBuffer buffer) throws ReflectiveOperationException {
+                    Object bufferCleaner = cleaner.invoke(buffer);
+                    if (bufferCleaner != null) {
+                        clean.invoke(bufferCleaner);
+                    }
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.info("Unable to unmap AIS journal segments, they stay mapped until collected: " + e);
+            return null;
+        }
+    }
+
+    private boolean awaitCount(Cursor cursor, long count, long timeoutNanos) {
+        if (appended >= count) {
+            return true;
+        }
+        cursor.waitCount = count;
+        cursor.waiter = Thread.currentThread();
+        try {
+            if (appended < count && timeoutNanos > 0) {
+                LockSupport.parkNanos(cursor, timeoutNanos);
+            }
+            return appended >= count;
+        } finally {
+            cursor.waiter = null;
+        }
+    }
+
+    /**
+     * @return number of sentences the slowest cursor has not read yet
+     */
+    synchronized long size() {
+        return Math.max(0, appended - slowest().index);
+    }
+
+    /**
+     * @return disk space taken by the segments
+     */
+    long getSizeOnDisk() {
+        long size = 0;
+        for (Segment segment : segments.values()) {
+            size += segment.buffer.capacity();
+        }
+        return size;
+    }
+
+    /**
+     * @return sentences lost to retention or appended after close
+     */
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Persist the offset and release the directory. Undrained sentences can still be drained; later
+     * appends are dropped.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        offset.putLong(0, slowest().position);
+        offset.force();
+        Segment current = head;
+        if (current != null) {
+            current.buffer.force();
+        }
+        offsetChannel.close();
+        lock.release();
+        lockChannel.close();
+    }
+
+    /**
+     * Read position as a byte position and as the number of sentences read since the journal was opened,
+     * counting the ones recovered as unread from zero.
+     */
+    private final class Cursor implements AISCursor<AISSentence> {
+
+        long position;
+        long index;
+        /** Thread waiting in {@link #awaitSize} for the producer to append the count */
+        volatile Thread waiter;
+        volatile long waitCount;
+
+        Cursor(long position) {
+            this.position = position;
+        }
+
+        @Override
+        public AISSentence poll() {
+            return AISJournal.this.poll(this);
+        }
+
+        @Override
+        public long size() {
+            synchronized (AISJournal.this) {
+                return Math.max(0, appended - index);
+            }
+        }
+
+        @Override
+        public boolean awaitSize(int minElements, long timeoutNanos) {
+            long count;
+            synchronized (AISJournal.this) {
+                count = index + minElements;
+            }
+            return awaitCount(this, count, timeoutNanos);
+        }
+
+        @Override
+        public void close() {
+            AISJournal.this.close(this);
+        }
+    }
+}
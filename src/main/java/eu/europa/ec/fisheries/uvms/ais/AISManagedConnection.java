@@ -33,11 +33,7 @@ copy of the GNU General Public License along with the IFDM Suite. If not, see <h
 package eu.europa.ec.fisheries.uvms.ais;
 
 import java.io.*;
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
-import java.net.Socket;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Logger;
 
 import javax.resource.NotSupportedException;
@@ -48,12 +44,10 @@ import javax.resource.spi.ConnectionRequestInfo;
 import javax.resource.spi.LocalTransaction;
 import javax.resource.spi.ManagedConnection;
 import javax.resource.spi.ManagedConnectionMetaData;
+import javax.resource.spi.ResourceAdapter;
 
 import javax.security.auth.Subject;
 import javax.transaction.xa.XAResource;
-import javax.xml.datatype.DatatypeConfigurationException;
-import javax.xml.datatype.DatatypeFactory;
-import javax.xml.datatype.XMLGregorianCalendar;
 
 /**
  * AISManagedConnection
@@ -61,9 +55,6 @@ import javax.xml.datatype.XMLGregorianCalendar;
  * @version $Revision: $
  */
 public class AISManagedConnection implements ManagedConnection {
-    private static final int RETRY_DELAY_TIME_SEC = 10;
-    private static final int SOCKET_SO_TIMEOUT = 5 * 60 * 1000;
-
     /**
      * The logger
      */
@@ -89,11 +80,20 @@ public class AISManagedConnection implements ManagedConnection {
      */
     private Set<AISConnectionImpl> connections;
 
-    private ConcurrentLinkedQueue<String> sentences;
+    /**
+     * Consumer of the reader per connection handle, guarded by itself
+     */
+    private final Map<AISConnectionImpl, AISFeedReader.Consumer> consumers = new HashMap<>();
+
+    /**
+     * Feeds this connection was requested for, null if none
+     */
+    private final AISConnectionRequestInfo requestInfo;
 
-    private boolean open = false;
-    private boolean continueRetry = true;
-    private Socket socket;
+    /**
+     * Reader of the AIS feed, shared with the other managed connections of the same feeds
+     */
+    private volatile AISFeedReader reader;
 
     /**
      * Default constructor
@@ -101,10 +101,25 @@ public class AISManagedConnection implements ManagedConnection {
      * @param mcf mcf
      */
     public AISManagedConnection(AISManagedConnectionFactory mcf) {
+        this(mcf, null);
+    }
+
+    /**
+     * @param mcf         mcf
+     * @param requestInfo feeds to read, null for a reader of its own opened by the handles
+     */
+    public AISManagedConnection(AISManagedConnectionFactory mcf, AISConnectionRequestInfo requestInfo) {
         this.mcf = mcf;
         this.logwriter = null;
         this.listeners = Collections.synchronizedList(new ArrayList<ConnectionEventListener>(1));
         this.connections = new HashSet<AISConnectionImpl>();
+        this.requestInfo = requestInfo;
+        this.reader = acquireReader();
+    }
+
+    private AISFeedReader acquireReader() {
+        ResourceAdapter ra = mcf.getResourceAdapter();
+        return mcf.getReaderRegistry().acquire(requestInfo, mcf, ra instanceof AISResourceAdapter ? (AISResourceAdapter) ra : null);
     }
 
     /**
@@ -121,6 +136,7 @@ public class AISManagedConnection implements ManagedConnection {
         log.finest("getConnection()");
         AISConnectionImpl connection = new AISConnectionImpl(this, mcf);
         connections.add(connection);
+        consumer(connection);
         return connection;
     }
 
@@ -143,6 +159,7 @@ public class AISManagedConnection implements ManagedConnection {
         AISConnectionImpl handle = (AISConnectionImpl) connection;
         handle.setManagedConnection(this);
         connections.add(handle);
+        consumer(handle);
     }
 
     /**
@@ -154,6 +171,7 @@ public class AISManagedConnection implements ManagedConnection {
         log.finest("cleanup()");
         for (AISConnectionImpl connection : connections) {
             connection.setManagedConnection(null);
+            closeConsumer(connection);
         }
         connections.clear();
 
@@ -166,7 +184,8 @@ public class AISManagedConnection implements ManagedConnection {
      */
     public void destroy() throws ResourceException {
         log.finest("destroy()");
-
+        cleanup();
+        mcf.getReaderRegistry().release(requestInfo, reader);
     }
 
     /**
@@ -194,20 +213,14 @@ public class AISManagedConnection implements ManagedConnection {
     }
 
     /**
-     * Close handle
+     * Close handle. The reader keeps reading for the other handles and the next one the pool hands out; it is
+     * only closed when this managed connection is destroyed.
      *
      * @param handle The handle
      */
     void closeHandle(AISConnection handle) {
-        continueRetry = false;
-        if (socket != null) {
-            try {
-                socket.close();
-            } catch (IOException e) {
-                log.warning("Error when closing socket. " + e);
-            }
-        }
         connections.remove((AISConnectionImpl) handle);
+        closeConsumer((AISConnectionImpl) handle);
         ConnectionEvent event = new ConnectionEvent(this, ConnectionEvent.CONNECTION_CLOSED);
         event.setConnectionHandle(handle);
         for (ConnectionEventListener cel : listeners) {
@@ -266,7 +279,7 @@ public class AISManagedConnection implements ManagedConnection {
      */
     public ManagedConnectionMetaData getMetaData() throws ResourceException {
         log.finest("getMetaData()");
-        return new AISManagedConnectionMetaData();
+        return new AISManagedConnectionMetaData(reader.getUserName());
     }
 
     /**
@@ -274,113 +287,143 @@ public class AISManagedConnection implements ManagedConnection {
      */
     void callMe() {
         log.finest("callMe()");
-        if (sentences == null) {
-            sentences = new ConcurrentLinkedQueue<>();
-        }
-        //System.out.println("Sentences: " + sentences.size());
-        //System.out.println("Sentences: " + sentences);
     }
 
     public boolean isOpen() {
-        return open;
+        return reader.isOpen();
+    }
+
+    /**
+     * @param cxRequestInfo the requested feeds, null if none
+     * @return true if this connection was requested for the same feeds
+     */
+    boolean matches(ConnectionRequestInfo cxRequestInfo) {
+        return requestInfo == null ? cxRequestInfo == null : requestInfo.equals(cxRequestInfo);
     }
 
-    public List<String> getSentences() {
-        if (sentences == null) {
-            sentences = new ConcurrentLinkedQueue<>();
+    /**
+     * @param handle The handle
+     * @return the consumer reading the sentences for a handle, created when missing
+     */
+    private AISFeedReader.Consumer consumer(AISConnectionImpl handle) {
+        synchronized (consumers) {
+            AISFeedReader.Consumer consumer = consumers.get(handle);
+            if (consumer == null) {
+                consumer = reader.newConsumer();
+                consumers.put(handle, consumer);
+            }
+            return consumer;
         }
+    }
+
+    private void closeConsumer(AISConnectionImpl handle) {
+        AISFeedReader.Consumer consumer;
+        synchronized (consumers) {
+            consumer = consumers.remove(handle);
+        }
+        if (consumer != null) {
+            consumer.close();
+        }
+    }
 
-        ArrayList<String> returnList = new ArrayList<>();
-        returnList.addAll(sentences);
-        sentences.clear();
+    public List<String> getSentences(AISConnectionImpl handle) {
+        return consumer(handle).getSentences();
+    }
+
+    public int drainTo(AISConnectionImpl handle, Collection<? super String> target, int maxElements) {
+        return consumer(handle).drainTo(target, maxElements);
+    }
+
+    public int drainSentencesTo(AISConnectionImpl handle, Collection<? super AISSentence> target, int maxElements) {
+        return consumer(handle).drainSentencesTo(target, maxElements);
+    }
+
+    public int drainMessagesTo(AISConnectionImpl handle, Collection<? super AISMessage> target, int maxElements) {
+        return consumer(handle).drainMessagesTo(target, maxElements);
+    }
+
+    public int drainPositions(AISConnectionImpl handle, AISPositionBatch batch) {
+        return consumer(handle).drainPositions(batch);
+    }
 
-        return returnList;
+    public long getQueueSize(AISConnectionImpl handle) {
+        return consumer(handle).getQueueSize();
     }
 
-    public long getQueueSize() {
-        if (sentences == null) {
-            sentences = new ConcurrentLinkedQueue<>();
+    public void setFilter(String filter) {
+        if (requestInfo != null) {
+            throw new IllegalStateException("The filter of a reader shared by the connections of feeds " + requestInfo
+                    + " can only be set with the filter property of the connection factory");
         }
+        reader.setFilter(filter);
+    }
+
+    public String getFilter() {
+        return reader.getFilter();
+    }
+
+    public AISVesselState getVessel(int mmsi) {
+        return reader.getVessel(mmsi);
+    }
+
+    public int getVessels(AISPositionBatch batch) {
+        return reader.getVessels(batch);
+    }
 
-        return sentences.size();
+    public AISVesselInfo getVesselInfo(int mmsi) {
+        return reader.getVesselInfo(mmsi);
+    }
+
+    public int enrich(AISPositionBatch batch, AISVesselInfo[] infos) {
+        return reader.enrich(batch, infos);
+    }
+
+    public List<AISFeedStatistics> getFeedStatistics() {
+        return reader.getFeedStatistics();
     }
 
     void open(final String host, final Integer port, final String userName, final String password) {
-        new Thread("AIS Read thread") {
-            @Override
-            public void run() {
-                open = true;
-                while (continueRetry) {
-                    socket = new Socket();
-                    try {
-                        BufferedReader commandInput = tryOpen(host, port, userName, password);
-                        read(commandInput);
-                    } catch (Exception e) {
-                        log.warning("AIS connection lost: " + e.getLocalizedMessage());
-                        log.warning("Exception: " + e);
-                    } finally {
-                        try {
-                            if (socket.isConnected()) {
-                                socket.close();
-                            }
-                            Thread.sleep(RETRY_DELAY_TIME_SEC * 1000);
-                        } catch (Exception e) {
-                            log.info("//NOP: {}" + e.getLocalizedMessage());
-                            log.info("Exception:" + e);
-                        }
-                    }
-                }
-
-                open = false;
+        replaceReader(Collections.singletonList(new AISFeed(host, port != null ? port : 0, userName, password, null)));
+        reader.open(host, port, userName, password);
+    }
+
+    void open() {
+        List<AISFeed> feeds = requestInfo != null ? requestInfo.getFeeds() : AISFeed.parseList(mcf.getFeeds());
+        if (feeds.isEmpty()) {
+            throw new IllegalStateException("No feeds configured on the connection factory");
+        }
+        open(feeds);
+    }
+
+    void open(List<AISFeed> feeds) {
+        replaceReader(feeds);
+        reader.open(feeds);
+    }
+
+    /**
+     * Replace a reader closed by the resource adapter while the connection waited in the pool. A connection requested
+     * without feeds also keeps reading the feeds its first handle opened, and the pool hands it to any later request
+     * without feeds; if such a handle opens other feeds while no other handle uses the connection, its reader is
+     * replaced too. Otherwise an open of other feeds fails in the reader.
+     */
+    private void replaceReader(List<AISFeed> feeds) {
+        synchronized (consumers) {
+            boolean replace;
+            if (requestInfo != null) {
+                replace = reader.isClosed() && new HashSet<>(requestInfo.getFeeds()).equals(new HashSet<>(feeds));
+            } else {
+                replace = !reader.canOpen(feeds) && (reader.isClosed() || connections.size() <= 1);
             }
-        }.start();
-    }
-
-    BufferedReader tryOpen(final String host, final Integer port, final String userName, final String password) throws IOException {
-        sentences = new ConcurrentLinkedQueue<>();
-
-        socket.setKeepAlive(true);
-        socket.setSoTimeout(SOCKET_SO_TIMEOUT);
-        socket.connect(new InetSocketAddress(InetAddress.getByName(host), port));
-
-        BufferedWriter commandOut = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
-        log.info("AISWorker: Connection established");
-        log.info("AISWorker: Socket-parameter: " + socket);
-
-        String loginCmd = '\u0001' + userName + '\u0000' + password + '\u0000';
-        commandOut.write(loginCmd);
-        commandOut.flush();
-
-        return new BufferedReader(new InputStreamReader(socket.getInputStream()));
-    }
-
-    void read(BufferedReader commandInput) throws IOException {
-        String input;
-        String tmp = "";
-        // Infinite read until read is EOF
-        while ((input = commandInput.readLine()) != null) {
-
-            try {
-                // Split the incoming line
-                String[] arr = input.split(",");
-                if (arr != null && arr.length > 4 && !"$ABVSI".equals(arr[0])) {
-                    if (Integer.parseInt(arr[1]) == 2) {
-                        tmp += arr[5];
-                        // If this part is the last sentence part, cache it
-                        if (Integer.parseInt(arr[1]) == Integer.parseInt(arr[2])) {
-                            sentences.add(tmp);
-                            tmp = "";
-                        }
-                    } else {
-                        // This is a single sentence message, cache it
-                        sentences.add(arr[5]);
-                    }
-                }
-            } catch (Exception e) {
-                log.fine("Input:" + input);
-                log.fine("Exception: " + e);
+            if (!replace) {
+                return;
             }
-
+            for (AISFeedReader.Consumer consumer : consumers.values()) {
+                consumer.close();
+            }
+            consumers.clear();
+            log.info("Replacing AIS reader " + reader.getName() + " of a pooled connection to open " + feeds);
+            mcf.getReaderRegistry().release(null, reader);
+            reader = acquireReader();
         }
     }
 }
\ No newline at end of file
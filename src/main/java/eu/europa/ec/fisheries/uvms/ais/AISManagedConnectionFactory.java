@@ -39,6 +39,7 @@ import java.util.Set;
 import java.util.logging.Logger;
 
 import javax.resource.ResourceException;
+import javax.resource.spi.ConfigProperty;
 import javax.resource.spi.ConnectionDefinition;
 import javax.resource.spi.ConnectionManager;
 import javax.resource.spi.ConnectionRequestInfo;
@@ -58,7 +59,8 @@ import javax.security.auth.Subject;
    connectionFactoryImpl = AISConnectionFactoryImpl.class,
    connection = AISConnection.class,
    connectionImpl = AISConnectionImpl.class)
-public class AISManagedConnectionFactory implements ManagedConnectionFactory, ResourceAdapterAssociation
+public class AISManagedConnectionFactory implements ManagedConnectionFactory, ResourceAdapterAssociation,
+   AISReaderConfiguration
 {
 
    /** The serial version UID */
@@ -73,6 +75,105 @@ public class AISManagedConnectionFactory implements ManagedConnectionFactory, Re
    /** The logwriter */
    private PrintWriter logwriter;
 
+   /** Readers shared by the managed connections, created on first use */
+   private transient AISReaderRegistry readerRegistry;
+
+   /** readerMode */
+   @ConfigProperty(defaultValue = "STREAM")
+   private String readerMode;
+
+   /** queueCapacity */
+   @ConfigProperty(defaultValue = "262144")
+   private Integer queueCapacity;
+
+   /** overflowPolicy */
+   @ConfigProperty(defaultValue = "DROP_OLDEST")
+   private String overflowPolicy;
+
+   /** feeds */
+   @ConfigProperty(defaultValue = "")
+   private String feeds;
+
+   /** readerExecution */
+   @ConfigProperty(defaultValue = "WORK_MANAGER")
+   private String readerExecution;
+
+   /** reconnectInitialDelay */
+   @ConfigProperty(defaultValue = "1000")
+   private Long reconnectInitialDelay;
+
+   /** reconnectMaxDelay */
+   @ConfigProperty(defaultValue = "60000")
+   private Long reconnectMaxDelay;
+
+   /** reconnectJitter */
+   @ConfigProperty(defaultValue = "0.2")
+   private Double reconnectJitter;
+
+   /** readTimeout */
+   @ConfigProperty(defaultValue = "300000")
+   private Long readTimeout;
+
+   /** stallWindow */
+   @ConfigProperty(defaultValue = "30000")
+   private Long stallWindow;
+
+   /** stallRatio */
+   @ConfigProperty(defaultValue = "0.1")
+   private Double stallRatio;
+
+   /** checksumPolicy */
+   @ConfigProperty(defaultValue = "DROP")
+   private String checksumPolicy;
+
+   /** journalDirectory */
+   @ConfigProperty(defaultValue = "")
+   private String journalDirectory;
+
+   /** journalSegmentSize */
+   @ConfigProperty(defaultValue = "67108864")
+   private Long journalSegmentSize;
+
+   /** journalRetentionSize */
+   @ConfigProperty(defaultValue = "4294967296")
+   private Long journalRetentionSize;
+
+   /** journalRetentionAge */
+   @ConfigProperty(defaultValue = "86400000")
+   private Long journalRetentionAge;
+
+   /** filter */
+   @ConfigProperty(defaultValue = "")
+   private String filter;
+
+   /** areaFiles */
+   @ConfigProperty(defaultValue = "")
+   private String areaFiles;
+
+   /** areaMode */
+   @ConfigProperty(defaultValue = "TAG")
+   private String areaMode;
+
+   /** conflationInterval */
+   @ConfigProperty(defaultValue = "0")
+   private Long conflationInterval;
+
+   /** vesselCapacity */
+   @ConfigProperty(defaultValue = "0")
+   private Integer vesselCapacity;
+
+   /** vesselTimeout */
+   @ConfigProperty(defaultValue = "3600000")
+   private Long vesselTimeout;
+
+   /** queueStorage */
+   @ConfigProperty(defaultValue = "HEAP")
+   private String queueStorage;
+
+   /** queueMemory */
+   @ConfigProperty(defaultValue = "67108864")
+   private Long queueMemory;
+
    /**
     * Default constructor
     */
@@ -81,6 +182,438 @@ public class AISManagedConnectionFactory implements ManagedConnectionFactory, Re
 
    }
 
+   /** 
+    * Set readerMode
+    * @param readerMode The value, one of {@link AISReaderMode}
+    */
+   public void setReaderMode(String readerMode)
+   {
+      this.readerMode = readerMode;
+   }
+
+   /** 
+    * Get readerMode
+    * @return The value
+    */
+   public String getReaderMode()
+   {
+      return readerMode;
+   }
+
+   /** 
+    * Set queueCapacity
+    * @param queueCapacity The value, rounded up to a power of two
+    */
+   public void setQueueCapacity(Integer queueCapacity)
+   {
+      this.queueCapacity = queueCapacity;
+   }
+
+   /** 
+    * Get queueCapacity
+    * @return The value
+    */
+   public Integer getQueueCapacity()
+   {
+      return queueCapacity;
+   }
+
+   /** 
+    * Set overflowPolicy
+    * @param overflowPolicy The value, one of {@link AISOverflowPolicy}
+    */
+   public void setOverflowPolicy(String overflowPolicy)
+   {
+      this.overflowPolicy = overflowPolicy;
+   }
+
+   /** 
+    * Get overflowPolicy
+    * @return The value
+    */
+   public String getOverflowPolicy()
+   {
+      return overflowPolicy;
+   }
+
+   /** 
+    * Set feeds
+    * @param feeds The value, a list of [tag=][user[:password]@]host:port entries separated by ;
+    */
+   public void setFeeds(String feeds)
+   {
+      this.feeds = feeds;
+   }
+
+   /** 
+    * Get feeds
+    * @return The value
+    */
+   public String getFeeds()
+   {
+      return feeds;
+   }
+
+   /** 
+    * Set readerExecution
+    * @param readerExecution The value, one of {@link AISReaderExecution}
+    */
+   public void setReaderExecution(String readerExecution)
+   {
+      this.readerExecution = readerExecution;
+   }
+
+   /** 
+    * Get readerExecution
+    * @return The value
+    */
+   public String getReaderExecution()
+   {
+      return readerExecution;
+   }
+
+   /** 
+    * Set reconnectInitialDelay
+    * @param reconnectInitialDelay The value, in milliseconds
+    */
+   public void setReconnectInitialDelay(Long reconnectInitialDelay)
+   {
+      this.reconnectInitialDelay = reconnectInitialDelay;
+   }
+
+   /** 
+    * Get reconnectInitialDelay
+    * @return The value
+    */
+   public Long getReconnectInitialDelay()
+   {
+      return reconnectInitialDelay;
+   }
+
+   /** 
+    * Set reconnectMaxDelay
+    * @param reconnectMaxDelay The value, in milliseconds
+    */
+   public void setReconnectMaxDelay(Long reconnectMaxDelay)
+   {
+      this.reconnectMaxDelay = reconnectMaxDelay;
+   }
+
+   /** 
+    * Get reconnectMaxDelay
+    * @return The value
+    */
+   public Long getReconnectMaxDelay()
+   {
+      return reconnectMaxDelay;
+   }
+
+   /** 
+    * Set reconnectJitter
+    * @param reconnectJitter The value, fraction of each delay added or removed at random
+    */
+   public void setReconnectJitter(Double reconnectJitter)
+   {
+      this.reconnectJitter = reconnectJitter;
+   }
+
+   /** 
+    * Get reconnectJitter
+    * @return The value
+    */
+   public Double getReconnectJitter()
+   {
+      return reconnectJitter;
+   }
+
+   /** 
+    * Set readTimeout
+    * @param readTimeout The value, in milliseconds
+    */
+   public void setReadTimeout(Long readTimeout)
+   {
+      this.readTimeout = readTimeout;
+   }
+
+   /** 
+    * Get readTimeout
+    * @return The value
+    */
+   public Long getReadTimeout()
+   {
+      return readTimeout;
+   }
+
+   /** 
+    * Set stallWindow
+    * @param stallWindow The value, in milliseconds, 0 disables the stall watchdog
+    */
+   public void setStallWindow(Long stallWindow)
+   {
+      this.stallWindow = stallWindow;
+   }
+
+   /** 
+    * Get stallWindow
+    * @return The value
+    */
+   public Long getStallWindow()
+   {
+      return stallWindow;
+   }
+
+   /** 
+    * Set stallRatio
+    * @param stallRatio The value, fraction of the learned sentence rate
+    */
+   public void setStallRatio(Double stallRatio)
+   {
+      this.stallRatio = stallRatio;
+   }
+
+   /** 
+    * Get stallRatio
+    * @return The value
+    */
+   public Double getStallRatio()
+   {
+      return stallRatio;
+   }
+
+   /** 
+    * Set checksumPolicy
+    * @param checksumPolicy The value, one of {@link AISChecksumPolicy}
+    */
+   public void setChecksumPolicy(String checksumPolicy)
+   {
+      this.checksumPolicy = checksumPolicy;
+   }
+
+   /** 
+    * Get checksumPolicy
+    * @return The value
+    */
+   public String getChecksumPolicy()
+   {
+      return checksumPolicy;
+   }
+
+   /** 
+    * Set journalDirectory
+    * @param journalDirectory The value, directory of the on-disk sentence journal, empty to queue on the heap
+    */
+   public void setJournalDirectory(String journalDirectory)
+   {
+      this.journalDirectory = journalDirectory;
+   }
+
+   /** 
+    * Get journalDirectory
+    * @return The value
+    */
+   public String getJournalDirectory()
+   {
+      return journalDirectory;
+   }
+
+   /** 
+    * Set journalSegmentSize
+    * @param journalSegmentSize The value, bytes per journal segment file
+    */
+   public void setJournalSegmentSize(Long journalSegmentSize)
+   {
+      this.journalSegmentSize = journalSegmentSize;
+   }
+
+   /** 
+    * Get journalSegmentSize
+    * @return The value
+    */
+   public Long getJournalSegmentSize()
+   {
+      return journalSegmentSize;
+   }
+
+   /** 
+    * Set journalRetentionSize
+    * @param journalRetentionSize The value, bytes of journal segments kept at most
+    */
+   public void setJournalRetentionSize(Long journalRetentionSize)
+   {
+      this.journalRetentionSize = journalRetentionSize;
+   }
+
+   /** 
+    * Get journalRetentionSize
+    * @return The value
+    */
+   public Long getJournalRetentionSize()
+   {
+      return journalRetentionSize;
+   }
+
+   /** 
+    * Set journalRetentionAge
+    * @param journalRetentionAge The value, milliseconds a journal segment is kept at most
+    */
+   public void setJournalRetentionAge(Long journalRetentionAge)
+   {
+      this.journalRetentionAge = journalRetentionAge;
+   }
+
+   /** 
+    * Get journalRetentionAge
+    * @return The value
+    */
+   public Long getJournalRetentionAge()
+   {
+      return journalRetentionAge;
+   }
+
+   /** 
+    * Set filter
+    * @param filter The value, messages to queue, e.g. types=1-3,18,19,27; box=54.5,10.0,58.0,13.5
+    */
+   public void setFilter(String filter)
+   {
+      this.filter = filter;
+   }
+
+   /** 
+    * Get filter
+    * @return The value
+    */
+   public String getFilter()
+   {
+      return filter;
+   }
+
+   /** 
+    * Set areaFiles
+    * @param areaFiles The value, area files separated by ;, see {@link AISAreaFiles}
+    */
+   public void setAreaFiles(String areaFiles)
+   {
+      this.areaFiles = areaFiles;
+   }
+
+   /** 
+    * Get areaFiles
+    * @return The value
+    */
+   public String getAreaFiles()
+   {
+      return areaFiles;
+   }
+
+   /** 
+    * Set areaMode
+    * @param areaMode The value, one of {@link AISAreaMode}
+    */
+   public void setAreaMode(String areaMode)
+   {
+      this.areaMode = areaMode;
+   }
+
+   /** 
+    * Get areaMode
+    * @return The value
+    */
+   public String getAreaMode()
+   {
+      return areaMode;
+   }
+
+   /** 
+    * Set conflationInterval
+    * @param conflationInterval The value, in milliseconds, 0 to queue every position report
+    */
+   public void setConflationInterval(Long conflationInterval)
+   {
+      this.conflationInterval = conflationInterval;
+   }
+
+   /** 
+    * Get conflationInterval
+    * @return The value
+    */
+   public Long getConflationInterval()
+   {
+      return conflationInterval;
+   }
+
+   /** 
+    * Set vesselCapacity
+    * @param vesselCapacity The value, maximum number of vessels whose latest position is kept, 0 to keep none
+    */
+   public void setVesselCapacity(Integer vesselCapacity)
+   {
+      this.vesselCapacity = vesselCapacity;
+   }
+
+   /** 
+    * Get vesselCapacity
+    * @return The value
+    */
+   public Integer getVesselCapacity()
+   {
+      return vesselCapacity;
+   }
+
+   /** 
+    * Set vesselTimeout
+    * @param vesselTimeout The value, in milliseconds, 0 to keep vessels not heard any more
+    */
+   public void setVesselTimeout(Long vesselTimeout)
+   {
+      this.vesselTimeout = vesselTimeout;
+   }
+
+   /** 
+    * Get vesselTimeout
+    * @return The value
+    */
+   public Long getVesselTimeout()
+   {
+      return vesselTimeout;
+   }
+
+   /** 
+    * Set queueStorage
+    * @param queueStorage The value, HEAP or DIRECT
+    */
+   public void setQueueStorage(String queueStorage)
+   {
+      this.queueStorage = queueStorage;
+   }
+
+   /** 
+    * Get queueStorage
+    * @return The value
+    */
+   public String getQueueStorage()
+   {
+      return queueStorage;
+   }
+
+   /** 
+    * Set queueMemory
+    * @param queueMemory The value, bytes of direct memory holding the queue
+    */
+   public void setQueueMemory(Long queueMemory)
+   {
+      this.queueMemory = queueMemory;
+   }
+
+   /** 
+    * Get queueMemory
+    * @return The value
+    */
+   public Long getQueueMemory()
+   {
+      return queueMemory;
+   }
+
    /**
     * Creates a Connection Factory instance. 
     *
@@ -117,11 +650,34 @@ public class AISManagedConnectionFactory implements ManagedConnectionFactory, Re
          ConnectionRequestInfo cxRequestInfo) throws ResourceException
    {
       log.finest("createManagedConnection()");
-      return new AISManagedConnection(this);
+      try
+      {
+         return new AISManagedConnection(this, cxRequestInfo instanceof AISConnectionRequestInfo
+               ? (AISConnectionRequestInfo)cxRequestInfo : null);
+      }
+      catch (IllegalArgumentException e)
+      {
+         throw new ResourceException("Invalid AIS reader configuration: " + e.getMessage(), e);
+      }
+   }
+
+   /**
+    * Get the readers shared by the managed connections of this factory
+    *
+    * @return The registry
+    */
+   synchronized AISReaderRegistry getReaderRegistry()
+   {
+      if (readerRegistry == null)
+      {
+         readerRegistry = new AISReaderRegistry();
+      }
+      return readerRegistry;
    }
 
    /**
-    * Returns a matched connection from the candidate set of connections. 
+    * Returns a matched connection from the candidate set of connections. A managed connection matches when it
+    * was created for the same feeds, so handles of the same feeds share its reader.
     *
     * @param connectionSet Candidate connection set
     * @param subject Caller's security information
@@ -138,7 +694,7 @@ public class AISManagedConnectionFactory implements ManagedConnectionFactory, Re
       while (result == null && it.hasNext())
       {
          ManagedConnection mc = (ManagedConnection)it.next();
-         if (mc instanceof AISManagedConnection)
+         if (mc instanceof AISManagedConnection && ((AISManagedConnection)mc).matches(cxRequestInfo))
          {
             result = mc;
          }
@@ -201,6 +757,102 @@ public class AISManagedConnectionFactory implements ManagedConnectionFactory, Re
    public int hashCode()
    {
       int result = 17;
+      if (readerMode != null)
+         result += 31 * result + 7 * readerMode.hashCode();
+      else
+         result += 31 * result + 7;
+      if (queueCapacity != null)
+         result += 31 * result + 7 * queueCapacity.hashCode();
+      else
+         result += 31 * result + 7;
+      if (overflowPolicy != null)
+         result += 31 * result + 7 * overflowPolicy.hashCode();
+      else
+         result += 31 * result + 7;
+      if (feeds != null)
+         result += 31 * result + 7 * feeds.hashCode();
+      else
+         result += 31 * result + 7;
+      if (readerExecution != null)
+         result += 31 * result + 7 * readerExecution.hashCode();
+      else
+         result += 31 * result + 7;
+      if (reconnectInitialDelay != null)
+         result += 31 * result + 7 * reconnectInitialDelay.hashCode();
+      else
+         result += 31 * result + 7;
+      if (reconnectMaxDelay != null)
+         result += 31 * result + 7 * reconnectMaxDelay.hashCode();
+      else
+         result += 31 * result + 7;
+      if (reconnectJitter != null)
+         result += 31 * result + 7 * reconnectJitter.hashCode();
+      else
+         result += 31 * result + 7;
+      if (readTimeout != null)
+         result += 31 * result + 7 * readTimeout.hashCode();
+      else
+         result += 31 * result + 7;
+      if (stallWindow != null)
+         result += 31 * result + 7 * stallWindow.hashCode();
+      else
+         result += 31 * result + 7;
+      if (stallRatio != null)
+         result += 31 * result + 7 * stallRatio.hashCode();
+      else
+         result += 31 * result + 7;
+      if (checksumPolicy != null)
+         result += 31 * result + 7 * checksumPolicy.hashCode();
+      else
+         result += 31 * result + 7;
+      if (journalDirectory != null)
+         result += 31 * result + 7 * journalDirectory.hashCode();
+      else
+         result += 31 * result + 7;
+      if (journalSegmentSize != null)
+         result += 31 * result + 7 * journalSegmentSize.hashCode();
+      else
+         result += 31 * result + 7;
+      if (journalRetentionSize != null)
+         result += 31 * result + 7 * journalRetentionSize.hashCode();
+      else
+         result += 31 * result + 7;
+      if (journalRetentionAge != null)
+         result += 31 * result + 7 * journalRetentionAge.hashCode();
+      else
+         result += 31 * result + 7;
+      if (filter != null)
+         result += 31 * result + 7 * filter.hashCode();
+      else
+         result += 31 * result + 7;
+      if (areaFiles != null)
+         result += 31 * result + 7 * areaFiles.hashCode();
+      else
+         result += 31 * result + 7;
+      if (areaMode != null)
+         result += 31 * result + 7 * areaMode.hashCode();
+      else
+         result += 31 * result + 7;
+      if (conflationInterval != null)
+         result += 31 * result + 7 * conflationInterval.hashCode();
+      else
+         result += 31 * result + 7;
+      if (vesselCapacity != null)
+         result += 31 * result + 7 * vesselCapacity.hashCode();
+      else
+         result += 31 * result + 7;
+      if (vesselTimeout != null)
+         result += 31 * result + 7 * vesselTimeout.hashCode();
+      else
+         result += 31 * result + 7;
+      if (queueStorage != null)
+         result += 31 * result + 7 * queueStorage.hashCode();
+      else
+         result += 31 * result + 7;
+      if (queueMemory != null)
+         result += 31 * result + 7 * queueMemory.hashCode();
+      else
+         result += 31 * result + 7;
       return result;
    }
 
@@ -219,6 +871,175 @@ public class AISManagedConnectionFactory implements ManagedConnectionFactory, Re
       if (!(other instanceof AISManagedConnectionFactory))
          return false;
       boolean result = true;
+      AISManagedConnectionFactory obj = (AISManagedConnectionFactory)other;
+      if (result)
+      {
+         if (readerMode == null)
+            result = obj.getReaderMode() == null;
+         else
+            result = readerMode.equals(obj.getReaderMode());
+      }
+      if (result)
+      {
+         if (queueCapacity == null)
+            result = obj.getQueueCapacity() == null;
+         else
+            result = queueCapacity.equals(obj.getQueueCapacity());
+      }
+      if (result)
+      {
+         if (overflowPolicy == null)
+            result = obj.getOverflowPolicy() == null;
+         else
+            result = overflowPolicy.equals(obj.getOverflowPolicy());
+      }
+      if (result)
+      {
+         if (feeds == null)
+            result = obj.getFeeds() == null;
+         else
+            result = feeds.equals(obj.getFeeds());
+      }
+      if (result)
+      {
+         if (readerExecution == null)
+            result = obj.getReaderExecution() == null;
+         else
+            result = readerExecution.equals(obj.getReaderExecution());
+      }
+      if (result)
+      {
+         if (reconnectInitialDelay == null)
+            result = obj.getReconnectInitialDelay() == null;
+         else
+            result = reconnectInitialDelay.equals(obj.getReconnectInitialDelay());
+      }
+      if (result)
+      {
+         if (reconnectMaxDelay == null)
+            result = obj.getReconnectMaxDelay() == null;
+         else
+            result = reconnectMaxDelay.equals(obj.getReconnectMaxDelay());
+      }
+      if (result)
+      {
+         if (reconnectJitter == null)
+            result = obj.getReconnectJitter() == null;
+         else
+            result = reconnectJitter.equals(obj.getReconnectJitter());
+      }
+      if (result)
+      {
+         if (readTimeout == null)
+            result = obj.getReadTimeout() == null;
+         else
+            result = readTimeout.equals(obj.getReadTimeout());
+      }
+      if (result)
+      {
+         if (stallWindow == null)
+            result = obj.getStallWindow() == null;
+         else
+            result = stallWindow.equals(obj.getStallWindow());
+      }
+      if (result)
+      {
+         if (stallRatio == null)
+            result = obj.getStallRatio() == null;
+         else
+            result = stallRatio.equals(obj.getStallRatio());
+      }
+      if (result)
+      {
+         if (checksumPolicy == null)
+            result = obj.getChecksumPolicy() == null;
+         else
+            result = checksumPolicy.equals(obj.getChecksumPolicy());
+      }
+      if (result)
+      {
+         if (journalDirectory == null)
+            result = obj.getJournalDirectory() == null;
+         else
+            result = journalDirectory.equals(obj.getJournalDirectory());
+      }
+      if (result)
+      {
+         if (journalSegmentSize == null)
+            result = obj.getJournalSegmentSize() == null;
+         else
+            result = journalSegmentSize.equals(obj.getJournalSegmentSize());
+      }
+      if (result)
+      {
+         if (journalRetentionSize == null)
+            result = obj.getJournalRetentionSize() == null;
+         else
+            result = journalRetentionSize.equals(obj.getJournalRetentionSize());
+      }
+      if (result)
+      {
+         if (journalRetentionAge == null)
+            result = obj.getJournalRetentionAge() == null;
+         else
+            result = journalRetentionAge.equals(obj.getJournalRetentionAge());
+      }
+      if (result)
+      {
+         if (filter == null)
+            result = obj.getFilter() == null;
+         else
+            result = filter.equals(obj.getFilter());
+      }
+      if (result)
+      {
+         if (areaFiles == null)
+            result = obj.getAreaFiles() == null;
+         else
+            result = areaFiles.equals(obj.getAreaFiles());
+      }
+      if (result)
+      {
+         if (areaMode == null)
+            result = obj.getAreaMode() == null;
+         else
+            result = areaMode.equals(obj.getAreaMode());
+      }
+      if (result)
+      {
+         if (conflationInterval == null)
+            result = obj.getConflationInterval() == null;
+         else
+            result = conflationInterval.equals(obj.getConflationInterval());
+      }
+      if (result)
+      {
+         if (vesselCapacity == null)
+            result = obj.getVesselCapacity() == null;
+         else
+            result = vesselCapacity.equals(obj.getVesselCapacity());
+      }
+      if (result)
+      {
+         if (vesselTimeout == null)
+            result = obj.getVesselTimeout() == null;
+         else
+            result = vesselTimeout.equals(obj.getVesselTimeout());
+      }
+      if (result)
+      {
+         if (queueStorage == null)
+            result = obj.getQueueStorage() == null;
+         else
+            result = queueStorage.equals(obj.getQueueStorage());
+      }
+      if (result)
+      {
+         if (queueMemory == null)
+            result = obj.getQueueMemory() == null;
+         else
+            result = queueMemory.equals(obj.getQueueMemory());
+      }
       return result;
    }
 
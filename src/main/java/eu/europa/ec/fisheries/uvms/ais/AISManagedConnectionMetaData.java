@@ -45,15 +45,34 @@ import javax.resource.spi.ManagedConnectionMetaData;
  */
 public class AISManagedConnectionMetaData implements ManagedConnectionMetaData
 {
+   /** EIS product name */
+   static final String EIS_PRODUCT_NAME = "AIS NMEA 0183 feed";
+
+   /** EIS product version: sentence format and message standard */
+   static final String EIS_PRODUCT_VERSION = "IEC 61162-1 / ITU-R M.1371";
+
    /** The logger */
    private static Logger log = Logger.getLogger(AISManagedConnectionMetaData.class.getName());
 
+   /** userName */
+   private final String userName;
+
    /**
     * Default constructor
     */
    public AISManagedConnectionMetaData()
    {
+      this(null);
+   }
 
+   /**
+    * Constructor
+    *
+    * @param userName User the feeds are read as, may be null
+    */
+   public AISManagedConnectionMetaData(String userName)
+   {
+      this.userName = userName;
    }
 
    /**
@@ -66,7 +85,7 @@ public class AISManagedConnectionMetaData implements ManagedConnectionMetaData
    public String getEISProductName() throws ResourceException
    {
       log.finest("getEISProductName()");
-      return null; //TODO
+      return EIS_PRODUCT_NAME;
    }
 
    /**
@@ -79,20 +98,20 @@ public class AISManagedConnectionMetaData implements ManagedConnectionMetaData
    public String getEISProductVersion() throws ResourceException
    {
       log.finest("getEISProductVersion()");
-      return null; //TODO
+      return EIS_PRODUCT_VERSION;
    }
 
    /**
     * Returns maximum limit on number of active concurrent connections 
     *
-    * @return Maximum limit for number of active concurrent connections
+    * @return Maximum limit for number of active concurrent connections, 0 as feeds set no limit
     * @throws ResourceException Thrown if an error occurs
     */
    @Override
    public int getMaxConnections() throws ResourceException
    {
       log.finest("getMaxConnections()");
-      return 0; //TODO
+      return 0;
    }
 
    /**
@@ -105,7 +124,7 @@ public class AISManagedConnectionMetaData implements ManagedConnectionMetaData
    public String getUserName() throws ResourceException
    {
       log.finest("getUserName()");
-      return null; //TODO
+      return userName;
    }
 
 
@@ -0,0 +1,597 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decoded view of an armoured AIS payload (ITU-R M.1371) for message types 1, 2, 3, 5, 18, 19, 24 and 27.
+ * <p>
+ * Decoding is lazy: {@link #wrap} only records the payload, and the 6 bit characters are de-armoured through a
+ * lookup table into 64 bit words as far as the fields actually read require. Reading the type and MMSI decodes
+ * seven characters. Numeric fields are returned as primitives in the units used on the air, normalised across
+ * message types:
+ * <ul>
+ * <li>latitude and longitude as fixed point 1/10000 minute ({@link #UNITS_PER_DEGREE} per degree)</li>
+ * <li>speed over ground in 1/10 knot, course over ground in 1/10 degree, true heading in degrees</li>
+ * </ul>
+ * Fields that do not exist in the wrapped message type, or lie beyond the end of a truncated payload, return the
+ * corresponding "not available" value, or null for text. An instance can be reused by wrapping another payload;
+ * it is not thread safe.
+ */
+public final class AISMessage {
+
+    /** Fixed point units per degree of latitude or longitude */
+    public static final int UNITS_PER_DEGREE = 600000;
+    public static final int LATITUDE_NOT_AVAILABLE = 91 * UNITS_PER_DEGREE;
+    public static final int LONGITUDE_NOT_AVAILABLE = 181 * UNITS_PER_DEGREE;
+    public static final short SPEED_NOT_AVAILABLE = 1023;
+    public static final short COURSE_NOT_AVAILABLE = 3600;
+    public static final short HEADING_NOT_AVAILABLE = 511;
+    public static final int TIME_STAMP_NOT_AVAILABLE = 60;
+    public static final int NAVIGATIONAL_STATUS_NOT_DEFINED = 15;
+    public static final int RATE_OF_TURN_NOT_AVAILABLE = -128;
+
+    /** Longest payload: nine fragments of at most 82 characters */
+    private static final int MAX_PAYLOAD_CHARS = AISFragmentAssembler.MAX_FRAGMENTS * AISFragmentAssembler.MAX_FRAGMENT_PAYLOAD;
+
+    /** Armoured character to 6 bit value, -1 for characters outside the armouring alphabet */
+    private static final byte[] SIXBIT = new byte[128];
+
+    static {
+        for (int c = 0; c < SIXBIT.length; c++) {
+            if (c >= '0' && c <= 'W') {
+                SIXBIT[c] = (byte) (c - '0');
+            } else if (c >= '`' && c <= 'w') {
+                SIXBIT[c] = (byte) (c - '0' - 8);
+            } else {
+                SIXBIT[c] = -1;
+            }
+        }
+    }
+
+    private final long[] words = new long[(MAX_PAYLOAD_CHARS * 6 + 63) / 64];
+
+    private String feedTag;
+    private long receivedAt;
+    private boolean checksumValid;
+    private List<String> areas = Collections.emptyList();
+    private long providerTime;
+    private String station;
+
+    private CharSequence text;
+    private byte[] bytes;
+    private int offset;
+    private int length;
+    private int bitLength;
+    private int decodedChars;
+    private boolean malformed;
+
+    /**
+     * Create an instance to be reused with {@link #wrap}.
+     */
+    public AISMessage() {
+    }
+
+    /**
+     * Create a view of a payload as returned by {@link AISConnection#getSentences()}.
+     *
+     * @param payload the armoured payload
+     */
+    public AISMessage(CharSequence payload) {
+        wrap(payload, 0);
+    }
+
+    /**
+     * Create a view of a received sentence, keeping its feed tag and receive time.
+     *
+     * @param sentence the sentence
+     */
+    public AISMessage(AISSentence sentence) {
+        byte[] payloadBytes = sentence.getPayloadBytes();
+        if (payloadBytes != null) {
+            wrap(payloadBytes, 0, payloadBytes.length, 0);
+        } else {
+            wrap(sentence.getPayload(), 0);
+        }
+        this.feedTag = sentence.getFeedTag();
+        this.receivedAt = sentence.getReceivedAt();
+        this.checksumValid = sentence.isChecksumValid();
+        this.areas = sentence.getAreas();
+        this.providerTime = sentence.getProviderTime();
+        this.station = sentence.getStation();
+    }
+
+    /**
+     * Start viewing another payload.
+     *
+     * @param payload  the armoured payload
+     * @param fillBits number of padding bits at the end of the payload
+     * @return this
+     */
+    public AISMessage wrap(CharSequence payload, int fillBits) {
+        this.text = payload;
+        this.bytes = null;
+        reset(Math.min(payload.length(), MAX_PAYLOAD_CHARS), fillBits);
+        return this;
+    }
+
+    /**
+     * Start viewing a payload held in a byte array, without copying it. The bytes must not change while
+     * this view is used.
+     */
+    AISMessage wrap(byte[] payload, int offset, int length, int fillBits) {
+        this.text = null;
+        this.bytes = payload;
+        this.offset = offset;
+        reset(Math.min(length, MAX_PAYLOAD_CHARS), fillBits);
+        return this;
+    }
+
+    private void reset(int length, int fillBits) {
+        this.feedTag = null;
+        this.receivedAt = 0;
+        this.checksumValid = true;
+        this.areas = Collections.emptyList();
+        this.providerTime = 0;
+        this.station = null;
+        this.length = length;
+        this.bitLength = Math.max(0, length * 6 - fillBits);
+        this.decodedChars = 0;
+        this.malformed = false;
+    }
+
+    /**
+     * @return tag of the feed the message came from, or null if not created from an {@link AISSentence}
+     */
+    public String getFeedTag() {
+        return feedTag;
+    }
+
+    /**
+     * @return receive time in milliseconds since the epoch, or 0 if not created from an {@link AISSentence}
+     */
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    /**
+     * @return false if the sentence this message was created from failed its checksum, see {@link AISSentence}
+     */
+    public boolean isChecksumValid() {
+        return checksumValid;
+    }
+
+    /**
+     * @return the areas of the sentence this message was created from, see {@link AISSentence#getAreas()}
+     */
+    public List<String> getAreas() {
+        return areas;
+    }
+
+    /**
+     * @return the provider time of the sentence this message was created from, see
+     * {@link AISSentence#getProviderTime()}
+     */
+    public long getProviderTime() {
+        return providerTime;
+    }
+
+    /**
+     * @return the station of the sentence this message was created from, see {@link AISSentence#getStation()}
+     */
+    public String getStation() {
+        return station;
+    }
+
+    /**
+     * @return number of bits in the payload
+     */
+    public int getBitLength() {
+        return bitLength;
+    }
+
+    /**
+     * @return true if a character read so far was outside the armouring alphabet; such characters decode as 0
+     */
+    public boolean isMalformed() {
+        return malformed;
+    }
+
+    public int getMessageType() {
+        return has(6) ? (int) bits(0, 6) : 0;
+    }
+
+    public int getRepeatIndicator() {
+        return has(8) ? (int) bits(6, 2) : 0;
+    }
+
+    public int getMmsi() {
+        return has(38) ? (int) bits(8, 30) : 0;
+    }
+
+    /**
+     * @return true for types 1, 2, 3, 18, 19 and 27
+     */
+    public boolean isPositionReport() {
+        return isPositionReport(getMessageType());
+    }
+
+    static boolean isPositionReport(int type) {
+        return (type >= 1 && type <= 3) || type == 18 || type == 19 || type == 27;
+    }
+
+    /**
+     * @return true for types 5, 19 and 24
+     */
+    public boolean isStaticData() {
+        int type = getMessageType();
+        return type == 5 || type == 19 || type == 24;
+    }
+
+    public int getNavigationalStatus() {
+        switch (getMessageType()) {
+            case 1:
+            case 2:
+            case 3:
+                return uint(38, 4, NAVIGATIONAL_STATUS_NOT_DEFINED);
+            case 27:
+                return uint(40, 4, NAVIGATIONAL_STATUS_NOT_DEFINED);
+            default:
+                return NAVIGATIONAL_STATUS_NOT_DEFINED;
+        }
+    }
+
+    /**
+     * @return the raw rate of turn indicator of types 1 to 3, see ITU-R M.1371 for its scale
+     */
+    public int getRateOfTurn() {
+        int type = getMessageType();
+        if (type >= 1 && type <= 3) {
+            return sint(42, 8, RATE_OF_TURN_NOT_AVAILABLE);
+        }
+        return RATE_OF_TURN_NOT_AVAILABLE;
+    }
+
+    /**
+     * @return speed over ground in 1/10 knot
+     */
+    public short getSpeedOverGround() {
+        switch (getMessageType()) {
+            case 1:
+            case 2:
+            case 3:
+                return (short) uint(50, 10, SPEED_NOT_AVAILABLE);
+            case 18:
+            case 19:
+                return (short) uint(46, 10, SPEED_NOT_AVAILABLE);
+            case 27:
+                int knots = uint(79, 6, 63);
+                return knots == 63 ? SPEED_NOT_AVAILABLE : (short) (knots * 10);
+            default:
+                return SPEED_NOT_AVAILABLE;
+        }
+    }
+
+    public boolean isPositionAccurate() {
+        switch (getMessageType()) {
+            case 1:
+            case 2:
+            case 3:
+                return uint(60, 1, 0) == 1;
+            case 18:
+            case 19:
+                return uint(56, 1, 0) == 1;
+            case 27:
+                return uint(38, 1, 0) == 1;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return longitude in 1/10000 minute, east positive
+     */
+    public int getLongitude() {
+        switch (getMessageType()) {
+            case 1:
+            case 2:
+            case 3:
+                return sint(61, 28, LONGITUDE_NOT_AVAILABLE);
+            case 18:
+            case 19:
+                return sint(57, 28, LONGITUDE_NOT_AVAILABLE);
+            case 27:
+                return sint(44, 18, LONGITUDE_NOT_AVAILABLE / 1000) * 1000;
+            default:
+                return LONGITUDE_NOT_AVAILABLE;
+        }
+    }
+
+    /**
+     * @return latitude in 1/10000 minute, north positive
+     */
+    public int getLatitude() {
+        switch (getMessageType()) {
+            case 1:
+            case 2:
+            case 3:
+                return sint(89, 27, LATITUDE_NOT_AVAILABLE);
+            case 18:
+            case 19:
+                return sint(85, 27, LATITUDE_NOT_AVAILABLE);
+            case 27:
+                return sint(62, 17, LATITUDE_NOT_AVAILABLE / 1000) * 1000;
+            default:
+                return LATITUDE_NOT_AVAILABLE;
+        }
+    }
+
+    /**
+     * @return course over ground in 1/10 degree
+     */
+    public short getCourseOverGround() {
+        switch (getMessageType()) {
+            case 1:
+            case 2:
+            case 3:
+                return (short) uint(116, 12, COURSE_NOT_AVAILABLE);
+            case 18:
+            case 19:
+                return (short) uint(112, 12, COURSE_NOT_AVAILABLE);
+            case 27:
+                int degrees = uint(85, 9, 511);
+                return degrees == 511 ? COURSE_NOT_AVAILABLE : (short) (degrees * 10);
+            default:
+                return COURSE_NOT_AVAILABLE;
+        }
+    }
+
+    /**
+     * @return true heading in degrees
+     */
+    public short getTrueHeading() {
+        switch (getMessageType()) {
+            case 1:
+            case 2:
+            case 3:
+                return (short) uint(128, 9, HEADING_NOT_AVAILABLE);
+            case 18:
+            case 19:
+                return (short) uint(124, 9, HEADING_NOT_AVAILABLE);
+            default:
+                return HEADING_NOT_AVAILABLE;
+        }
+    }
+
+    /**
+     * @return UTC second of the position fix, 60 and above meaning not available
+     */
+    public int getTimeStamp() {
+        switch (getMessageType()) {
+            case 1:
+            case 2:
+            case 3:
+                return uint(137, 6, TIME_STAMP_NOT_AVAILABLE);
+            case 18:
+            case 19:
+                return uint(133, 6, TIME_STAMP_NOT_AVAILABLE);
+            default:
+                return TIME_STAMP_NOT_AVAILABLE;
+        }
+    }
+
+    /**
+     * @return the part number of a type 24 message, 0 for part A and 1 for part B, or -1 for other types
+     */
+    public int getPartNumber() {
+        return getMessageType() == 24 ? uint(38, 2, -1) : -1;
+    }
+
+    /**
+     * @return IMO number of type 5, 0 when not available
+     */
+    public int getImoNumber() {
+        return getMessageType() == 5 ? uint(40, 30, 0) : 0;
+    }
+
+    public String getCallSign() {
+        switch (getMessageType()) {
+            case 5:
+                return text(70, 7);
+            case 24:
+                return getPartNumber() == 1 ? text(90, 7) : null;
+            default:
+                return null;
+        }
+    }
+
+    public String getShipName() {
+        switch (getMessageType()) {
+            case 5:
+                return text(112, 20);
+            case 19:
+                return text(143, 20);
+            case 24:
+                return getPartNumber() == 0 ? text(40, 20) : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return ship and cargo type, 0 when not available
+     */
+    public int getShipType() {
+        switch (getMessageType()) {
+            case 5:
+                return uint(232, 8, 0);
+            case 19:
+                return uint(263, 8, 0);
+            case 24:
+                return getPartNumber() == 1 ? uint(40, 8, 0) : 0;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return distance in metres from the position reference to the bow, 0 when not available
+     */
+    public int getDimensionToBow() {
+        return dimension(0, 9);
+    }
+
+    public int getDimensionToStern() {
+        return dimension(9, 9);
+    }
+
+    public int getDimensionToPort() {
+        return dimension(18, 6);
+    }
+
+    public int getDimensionToStarboard() {
+        return dimension(24, 6);
+    }
+
+    private int dimension(int relative, int size) {
+        switch (getMessageType()) {
+            case 5:
+                return uint(240 + relative, size, 0);
+            case 19:
+                return uint(271 + relative, size, 0);
+            case 24:
+                return getPartNumber() == 1 ? uint(132 + relative, size, 0) : 0;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return maximum present static draught of type 5 in 1/10 metre, 0 when not available
+     */
+    public int getDraught() {
+        return getMessageType() == 5 ? uint(294, 8, 0) : 0;
+    }
+
+    public String getDestination() {
+        return getMessageType() == 5 ? text(302, 20) : null;
+    }
+
+    /**
+     * @return ETA month of type 5, 0 when not available
+     */
+    public int getEtaMonth() {
+        return getMessageType() == 5 ? uint(274, 4, 0) : 0;
+    }
+
+    public int getEtaDay() {
+        return getMessageType() == 5 ? uint(278, 5, 0) : 0;
+    }
+
+    /**
+     * @return ETA hour of type 5, 24 when not available
+     */
+    public int getEtaHour() {
+        return getMessageType() == 5 ? uint(283, 5, 24) : 24;
+    }
+
+    /**
+     * @return ETA minute of type 5, 60 when not available
+     */
+    public int getEtaMinute() {
+        return getMessageType() == 5 ? uint(288, 6, 60) : 60;
+    }
+
+    private boolean has(int endBit) {
+        return endBit <= bitLength;
+    }
+
+    private int uint(int start, int size, int notAvailable) {
+        return has(start + size) ? (int) bits(start, size) : notAvailable;
+    }
+
+    private int sint(int start, int size, int notAvailable) {
+        if (!has(start + size)) {
+            return notAvailable;
+        }
+        return (int) (bits(start, size) << (64 - size) >> (64 - size));
+    }
+
+    private String text(int start, int chars) {
+        int end = start + chars * 6;
+        if (!has(end)) {
+            return null;
+        }
+        char[] result = new char[chars];
+        int count = 0;
+        for (int bit = start; bit < end; bit += 6) {
+            int value = (int) bits(bit, 6);
+            if (value == 0) {
+                // '@' terminates the text
+                break;
+            }
+            result[count++] = (char) (value < 32 ? value + 64 : value);
+        }
+        while (count > 0 && result[count - 1] == ' ') {
+            count--;
+        }
+        return new String(result, 0, count);
+    }
+
+    /**
+     * @return {@code size} bits, at most 32, starting at bit {@code start}, most significant bit first
+     */
+    private long bits(int start, int size) {
+        ensureDecoded(start + size);
+        int word = start >>> 6;
+        int shift = start & 63;
+        long value = words[word] << shift;
+        if (shift + size > 64) {
+            value |= words[word + 1] >>> (64 - shift);
+        }
+        return value >>> (64 - size);
+    }
+
+    private void ensureDecoded(int endBit) {
+        int chars = Math.min(length, (endBit + 5) / 6);
+        for (int i = decodedChars; i < chars; i++) {
+            int c = text != null ? text.charAt(i) : bytes[offset + i];
+            int value = c >= 0 && c < SIXBIT.length ? SIXBIT[c] : -1;
+            if (value < 0) {
+                malformed = true;
+                value = 0;
+            }
+            int bit = i * 6;
+            int word = bit >>> 6;
+            int shift = bit & 63;
+            if (shift == 0) {
+                words[word] = 0;
+            }
+            if (shift <= 58) {
+                words[word] |= (long) value << (58 - shift);
+            } else {
+                words[word] |= (long) value >>> (shift - 58);
+                words[word + 1] = (long) value << (122 - shift);
+            }
+        }
+        if (chars > decodedChars) {
+            decodedChars = chars;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AISMessage{type=" + getMessageType() + ", mmsi=" + getMmsi() + "}";
+    }
+}
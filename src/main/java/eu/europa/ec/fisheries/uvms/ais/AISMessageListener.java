@@ -0,0 +1,31 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.util.List;
+
+/**
+ * AISMessageListener
+ *
+ * Message listener for endpoints activated with an {@link AISActivationSpec}.
+ *
+ * @version $Revision: $
+ */
+public interface AISMessageListener
+{
+   /**
+    * Receive a batch of AIS payloads
+    *
+    * @param sentences The armoured payloads in arrival order; the list is not reused by the adapter
+    */
+   public void onSentences(List<String> sentences);
+}
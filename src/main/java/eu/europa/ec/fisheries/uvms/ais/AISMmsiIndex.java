@@ -0,0 +1,127 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.util.Arrays;
+
+/**
+ * Numbers vessels densely: maps each MMSI added to a slot, 0 for the first one, 1 for the next and so on, so
+ * per vessel state can be kept in plain arrays indexed by slot. The hash table holds slot numbers and
+ * probes linearly, comparing against the MMSI stored per slot; nothing is boxed. The table doubles when half
+ * full. Not thread safe.
+ */
+final class AISMmsiIndex {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int GOLDEN_RATIO = 0x9E3779B9;
+
+    /** Slot plus one per hash bucket, 0 for a free bucket */
+    private int[] table;
+    private int shift;
+    private int mask;
+    private int[] mmsis;
+    private int size;
+
+    AISMmsiIndex() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * @param expectedSize number of vessels to make room for
+     */
+    AISMmsiIndex(int expectedSize) {
+        allocate(Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize) * 2 - 1) << 1));
+        mmsis = new int[table.length / 2];
+    }
+
+    private void allocate(int capacity) {
+        table = new int[capacity];
+        mask = capacity - 1;
+        shift = 32 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    private int bucket(int mmsi) {
+        return (mmsi * GOLDEN_RATIO) >>> shift;
+    }
+
+    /**
+     * @return the slot of the vessel, -1 if it was not added
+     */
+    int slot(int mmsi) {
+        int i = bucket(mmsi);
+        int entry;
+        while ((entry = table[i]) != 0) {
+            if (mmsis[entry - 1] == mmsi) {
+                return entry - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the slot of the vessel, a new one numbered {@link #size()} if it was not added before
+     */
+    int add(int mmsi) {
+        int i = bucket(mmsi);
+        int entry;
+        while ((entry = table[i]) != 0) {
+            if (mmsis[entry - 1] == mmsi) {
+                return entry - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        int slot = size++;
+        if (slot == mmsis.length) {
+            mmsis = Arrays.copyOf(mmsis, slot * 2);
+        }
+        mmsis[slot] = mmsi;
+        table[i] = slot + 1;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        allocate(table.length * 2);
+        for (int slot = 0; slot < size; slot++) {
+            int i = bucket(mmsis[slot]);
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = slot + 1;
+        }
+    }
+
+    /**
+     * @return the MMSI of a slot below {@link #size()}
+     */
+    int getMmsi(int slot) {
+        return mmsis[slot];
+    }
+
+    /**
+     * @return number of vessels added, which is also the next slot number
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Forget every vessel, keeping the table at its current capacity.
+     */
+    void clear() {
+        Arrays.fill(table, 0);
+        size = 0;
+    }
+}
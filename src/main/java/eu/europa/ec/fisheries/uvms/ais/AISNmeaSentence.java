@@ -0,0 +1,454 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable view over one NMEA 0183 line such as {@code !AIVDM,2,1,3,B,55P5TL01VIaAL@7WKO@m...,0*3E}.
+ * <p>
+ * {@link #wrap(byte[], int)} indexes the field offsets in place and computes the XOR checksum in the same pass; the
+ * typed accessors parse the fields straight from the wrapped bytes, so tokenizing a line allocates nothing. Only
+ * {@link #payloadToString()} creates an object. A wrapped array must not be modified while it is being read through
+ * this view. Instances are not thread safe.
+ * <p>
+ * A line may start with an NMEA 4.10 tag block such as {@code \s:r3669961,c:1478131200*hh\}, whose receiver
+ * timestamp and source are parsed in the same pass; other parameters such as the group are skipped. A tag block
+ * with a wrong or missing checksum is ignored, the sentence after it is not. VSI sentences such as
+ * {@code $ABVSI,r3669961,1,013536.96326433,1444,-115,22*hh}, which carry the station and time of the VDM before
+ * them, are recognised as well.
+ */
+final class AISNmeaSentence {
+
+    static final int MAX_FIELDS = 16;
+
+    private static final int FIELD_FRAGMENT_COUNT = 1;
+    private static final int FIELD_FRAGMENT_NUMBER = 2;
+    private static final int FIELD_SEQUENTIAL_ID = 3;
+    private static final int FIELD_CHANNEL = 4;
+    private static final int FIELD_PAYLOAD = 5;
+    private static final int FIELD_FILL_BITS = 6;
+
+    private static final int FIELD_VSI_SOURCE = 1;
+    private static final int FIELD_VSI_SEQUENTIAL_ID = 2;
+    private static final int FIELD_VSI_TIME = 3;
+
+    /** Tag block timestamps below this are seconds, above it milliseconds */
+    private static final long MAX_TAG_SECONDS = 100000000000L;
+
+    private final int[] fieldStart = new int[MAX_FIELDS];
+    private final int[] fieldEnd = new int[MAX_FIELDS];
+    private int fieldCount;
+    private int checksumAt;
+    private int checksum;
+
+    private boolean tagBlock;
+    private long tagTime;
+    private int tagSourceStart;
+    private int tagSourceEnd;
+
+    private byte[] copy = new byte[AISChannelReader.MAX_LINE_LENGTH];
+    private byte[] line;
+    private int length;
+
+    /**
+     * Index the fields of a line.
+     *
+     * @param line   the line bytes, without terminator
+     * @param length number of valid bytes in {@code line}
+     * @return true if the line starts like an NMEA sentence
+     */
+    boolean wrap(byte[] line, int length) {
+        this.line = line;
+        this.length = length;
+        this.fieldCount = 0;
+        this.checksumAt = -1;
+        this.tagBlock = false;
+
+        int begin = 0;
+        if (length > 0 && line[0] == '\\') {
+            begin = wrapTagBlock();
+            if (begin < 0) {
+                return false;
+            }
+        }
+        if (begin >= length || (line[begin] != '!' && line[begin] != '$')) {
+            return false;
+        }
+
+        // The checksum covers everything between the start character and '*'
+        int start = begin;
+        int xor = 0;
+        for (int i = begin + 1; i < length; i++) {
+            byte b = line[i];
+            if (b == '*') {
+                addField(start, i);
+                checksumAt = i;
+                checksum = xor;
+                return true;
+            }
+            xor ^= b & 0xFF;
+            if (b == ',') {
+                addField(start, i);
+                start = i + 1;
+            }
+        }
+        addField(start, length);
+        return true;
+    }
+
+    /**
+     * Index the fields of a line held as characters, e.g. from {@link java.io.BufferedReader#readLine()}.
+     * The characters are narrowed into an internal buffer that is reused between calls.
+     *
+     * @param input the line
+     * @return true if the line starts like an NMEA sentence
+     */
+    boolean wrap(CharSequence input) {
+        int inputLength = input.length();
+        if (inputLength > copy.length) {
+            copy = new byte[inputLength];
+        }
+        for (int i = 0; i < inputLength; i++) {
+            copy[i] = (byte) input.charAt(i);
+        }
+        return wrap(copy, inputLength);
+    }
+
+    /**
+     * Parse the tag block at the start of the line.
+     *
+     * @return index of the sentence after the block, -1 if the block is not terminated
+     */
+    private int wrapTagBlock() {
+        int end = -1;
+        for (int i = 1; i < length; i++) {
+            if (line[i] == '\\') {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            return -1;
+        }
+        tagTime = -1;
+        tagSourceStart = -1;
+        tagSourceEnd = -1;
+        int xor = 0;
+        int star = -1;
+        for (int i = 1; i < end; i++) {
+            if (line[i] == '*') {
+                star = i;
+                break;
+            }
+            xor ^= line[i] & 0xFF;
+        }
+        if (star < 0 || star + 3 != end || hexValue(line[star + 1]) < 0 || hexValue(line[star + 2]) < 0
+                || (hexValue(line[star + 1]) << 4 | hexValue(line[star + 2])) != xor) {
+            return end + 1;
+        }
+        int start = 1;
+        while (start < star) {
+            int next = start;
+            while (next < star && line[next] != ',') {
+                next++;
+            }
+            if (next - start > 2 && line[start + 1] == ':') {
+                tagParameter(line[start], start + 2, next);
+            }
+            start = next + 1;
+        }
+        tagBlock = true;
+        return end + 1;
+    }
+
+    private void tagParameter(byte code, int start, int end) {
+        switch (code) {
+            case 'c':
+                long value = parseLong(start, end);
+                if (value > 0) {
+                    tagTime = value < MAX_TAG_SECONDS ? value * 1000 : value;
+                }
+                break;
+            case 's':
+                tagSourceStart = start;
+                tagSourceEnd = end;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @return the digits between the offsets as a number, -1 if there are none or another character
+     */
+    private long parseLong(int start, int end) {
+        if (start == end || end - start > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount < MAX_FIELDS) {
+            fieldStart[fieldCount] = start;
+            fieldEnd[fieldCount] = end;
+            fieldCount++;
+        }
+    }
+
+    /**
+     * @return number of comma separated fields up to the checksum, the address field included
+     */
+    int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return true if the line ends in {@code *hh}
+     */
+    boolean hasChecksum() {
+        return checksumAt >= 0 && checksumAt + 2 < length;
+    }
+
+    /**
+     * @return true if the line has a checksum and it matches the XOR of the sentence bytes
+     */
+    boolean isChecksumValid() {
+        if (!hasChecksum()) {
+            return false;
+        }
+        int high = hexValue(line[checksumAt + 1]);
+        int low = hexValue(line[checksumAt + 2]);
+        return high >= 0 && low >= 0 && (high << 4 | low) == checksum;
+    }
+
+    private static int hexValue(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        }
+        if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * @return true for VDM (other vessels) and VDO (own vessel) sentences from any talker
+     */
+    boolean isVdmOrVdo() {
+        int begin = fieldStart[0];
+        return fieldCount > FIELD_FILL_BITS
+                && fieldEnd[0] - begin == 6
+                && line[begin + 3] == 'V' && line[begin + 4] == 'D' && (line[begin + 5] == 'M' || line[begin + 5] == 'O');
+    }
+
+    /**
+     * @return true for VSI sentences (VDL signal information) from any talker
+     */
+    boolean isVsi() {
+        int begin = fieldStart[0];
+        return fieldCount > FIELD_VSI_TIME
+                && fieldEnd[0] - begin == 6
+                && line[begin + 3] == 'V' && line[begin + 4] == 'S' && line[begin + 5] == 'I';
+    }
+
+    /**
+     * @return true if the line started with a tag block with a valid checksum
+     */
+    boolean hasTagBlock() {
+        return tagBlock;
+    }
+
+    /**
+     * @return the {@code c:} receiver timestamp of the tag block in milliseconds since the epoch, -1 if none
+     */
+    long getTagTime() {
+        return tagBlock ? tagTime : -1;
+    }
+
+    /**
+     * @return offset of the {@code s:} source of the tag block in the line, -1 if none
+     */
+    int getTagSourceStart() {
+        return tagBlock ? tagSourceStart : -1;
+    }
+
+    int getTagSourceEnd() {
+        return tagBlock ? tagSourceEnd : -1;
+    }
+
+    /**
+     * @return offset of the source identifier of a VSI sentence in the line
+     */
+    int getVsiSourceStart() {
+        checkField(FIELD_VSI_SOURCE);
+        return fieldStart[FIELD_VSI_SOURCE];
+    }
+
+    int getVsiSourceEnd() {
+        checkField(FIELD_VSI_SOURCE);
+        return fieldEnd[FIELD_VSI_SOURCE];
+    }
+
+    /**
+     * @return the sequential identifier of the VDM a VSI sentence describes, -1 when the field is empty
+     */
+    int getVsiSequentialId() {
+        if (isEmpty(FIELD_VSI_SEQUENTIAL_ID)) {
+            return -1;
+        }
+        return parseInt(FIELD_VSI_SEQUENTIAL_ID);
+    }
+
+    /**
+     * @return the UTC time of day of a VSI sentence, {@code hhmmss.ss}, in milliseconds, -1 if empty or invalid
+     */
+    long getVsiTimeOfDay() {
+        checkField(FIELD_VSI_TIME);
+        int start = fieldStart[FIELD_VSI_TIME];
+        int end = fieldEnd[FIELD_VSI_TIME];
+        if (end - start < 6) {
+            return -1;
+        }
+        long hours = parseLong(start, start + 2);
+        long minutes = parseLong(start + 2, start + 4);
+        long seconds = parseLong(start + 4, start + 6);
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 60) {
+            return -1;
+        }
+        long millis = ((hours * 60 + minutes) * 60 + seconds) * 1000;
+        if (end > start + 6 && line[start + 6] == '.') {
+            long scale = 100;
+            for (int i = start + 7; i < end && scale > 0; i++, scale /= 10) {
+                int digit = line[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                millis += digit * scale;
+            }
+        }
+        return millis;
+    }
+
+    int getFragmentCount() {
+        return parseInt(FIELD_FRAGMENT_COUNT);
+    }
+
+    int getFragmentNumber() {
+        return parseInt(FIELD_FRAGMENT_NUMBER);
+    }
+
+    /**
+     * @return the sequential message identifier, or -1 when the field is empty (single fragment messages)
+     */
+    int getSequentialId() {
+        if (isEmpty(FIELD_SEQUENTIAL_ID)) {
+            return -1;
+        }
+        return parseInt(FIELD_SEQUENTIAL_ID);
+    }
+
+    /**
+     * @return the radio channel, 'A', 'B', '1' or '2', or 0 when the field is empty
+     */
+    byte getChannel() {
+        if (isEmpty(FIELD_CHANNEL)) {
+            return 0;
+        }
+        return line[fieldStart[FIELD_CHANNEL]];
+    }
+
+    /**
+     * @return the wrapped array, valid until the next {@code wrap}
+     */
+    byte[] getLine() {
+        return line;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    int getPayloadStart() {
+        return fieldStart[FIELD_PAYLOAD];
+    }
+
+    int getPayloadEnd() {
+        return fieldEnd[FIELD_PAYLOAD];
+    }
+
+    int getPayloadLength() {
+        return fieldEnd[FIELD_PAYLOAD] - fieldStart[FIELD_PAYLOAD];
+    }
+
+    /**
+     * @return number of fill bits padding the payload to a whole number of 6 bit characters
+     */
+    int getFillBits() {
+        return parseInt(FIELD_FILL_BITS);
+    }
+
+    /**
+     * Decode the payload of this sentence.
+     *
+     * @return the armoured payload as ASCII text
+     */
+    String payloadToString() {
+        return new String(line, getPayloadStart(), getPayloadLength(), StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public String toString() {
+        return line == null ? "" : new String(line, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    private boolean isEmpty(int field) {
+        checkField(field);
+        return fieldStart[field] == fieldEnd[field];
+    }
+
+    private int parseInt(int field) {
+        checkField(field);
+        int start = fieldStart[field];
+        int end = fieldEnd[field];
+        if (start == end) {
+            throw new NumberFormatException("Empty field " + field);
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Not a digit in field " + field);
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private void checkField(int field) {
+        if (field >= fieldCount) {
+            throw new IllegalStateException("Sentence has no field " + field);
+        }
+    }
+}
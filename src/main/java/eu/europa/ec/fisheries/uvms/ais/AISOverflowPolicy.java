@@ -0,0 +1,47 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+/**
+ * What the reader does when the sentence buffer is full.
+ */
+public enum AISOverflowPolicy {
+
+    /**
+     * Discard the oldest queued sentence to make room, keeping the buffer as fresh as possible.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Discard the sentence just read, keeping what is already queued.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Stop reading until a consumer makes room. The socket receive buffer then fills up and TCP flow
+     * control pushes back on the provider.
+     */
+    BLOCK;
+
+    /**
+     * Parse a configured policy, case insensitive.
+     *
+     * @param value the configured value, may be null or empty
+     * @return the policy, {@link #DROP_OLDEST} when nothing is configured
+     */
+    public static AISOverflowPolicy parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return DROP_OLDEST;
+        }
+        return valueOf(value.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,195 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Position reports in columns: row {@code i} of every array describes the same report. The arrays are
+ * allocated once at the batch capacity and refilled by every {@link AISConnection#drainPositions} call,
+ * so only the first {@link #size()} rows are valid. Units follow {@link AISMessage}: positions in
+ * 1/10000 minute, speed and course in tenths, heading in degrees, and "not available" values are passed
+ * through unchanged. A batch is not thread safe.
+ */
+public final class AISPositionBatch {
+
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long SECOND_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    private final int[] mmsi;
+    private final int[] latitude;
+    private final int[] longitude;
+    private final short[] speedOverGround;
+    private final short[] courseOverGround;
+    private final short[] heading;
+    private final long[] timestamp;
+    private final byte[] messageType;
+    private int size;
+
+    private final AISMessage message = new AISMessage();
+
+    /**
+     * @param capacity maximum number of reports per drain
+     */
+    public AISPositionBatch(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        mmsi = new int[capacity];
+        latitude = new int[capacity];
+        longitude = new int[capacity];
+        speedOverGround = new short[capacity];
+        courseOverGround = new short[capacity];
+        heading = new short[capacity];
+        timestamp = new long[capacity];
+        messageType = new byte[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return mmsi.length;
+    }
+
+    public boolean isFull() {
+        return size == mmsi.length;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int[] getMmsi() {
+        return mmsi;
+    }
+
+    /**
+     * @return latitudes in 1/10000 minute
+     */
+    public int[] getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * @return longitudes in 1/10000 minute
+     */
+    public int[] getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * @return speeds over ground in 1/10 knot
+     */
+    public short[] getSpeedOverGround() {
+        return speedOverGround;
+    }
+
+    /**
+     * @return courses over ground in 1/10 degree
+     */
+    public short[] getCourseOverGround() {
+        return courseOverGround;
+    }
+
+    /**
+     * @return true headings in degrees
+     */
+    public short[] getHeading() {
+        return heading;
+    }
+
+    /**
+     * @return time of each report in milliseconds since the epoch
+     */
+    public long[] getTimestamp() {
+        return timestamp;
+    }
+
+    public byte[] getMessageType() {
+        return messageType;
+    }
+
+    /**
+     * Decode a payload and append it if it is a position report.
+     *
+     * @param payload   the armoured payload
+     * @param eventTime time the message was received, by the provider if known, in milliseconds
+     * @return true if a row was added
+     */
+    boolean add(CharSequence payload, long eventTime) {
+        if (isFull()) {
+            return false;
+        }
+        message.wrap(payload, 0);
+        return addMessage(eventTime);
+    }
+
+    /**
+     * Decode a payload held in a byte array and append it if it is a position report.
+     *
+     * @param payload   the armoured payload as ASCII bytes, only read during the call
+     * @param length    number of bytes in the payload
+     * @param eventTime time the message was received, by the provider if known, in milliseconds
+     * @return true if a row was added
+     */
+    boolean add(byte[] payload, int length, long eventTime) {
+        if (isFull()) {
+            return false;
+        }
+        message.wrap(payload, 0, length, 0);
+        return addMessage(eventTime);
+    }
+
+    private boolean addMessage(long eventTime) {
+        int type = message.getMessageType();
+        if (!AISMessage.isPositionReport(type)) {
+            return false;
+        }
+        return add(message.getMmsi(), message.getLatitude(), message.getLongitude(), message.getSpeedOverGround(),
+                message.getCourseOverGround(), message.getTrueHeading(), timestamp(message.getTimeStamp(), eventTime), type);
+    }
+
+    /**
+     * Append a row.
+     *
+     * @return false if the batch is full
+     */
+    boolean add(int vessel, int lat, int lon, short speed, short course, short trueHeading, long time, int type) {
+        if (isFull()) {
+            return false;
+        }
+        int row = size++;
+        mmsi[row] = vessel;
+        latitude[row] = lat;
+        longitude[row] = lon;
+        speedOverGround[row] = speed;
+        courseOverGround[row] = course;
+        heading[row] = trueHeading;
+        timestamp[row] = time;
+        messageType[row] = (byte) type;
+        return true;
+    }
+
+    /**
+     * Place the UTC second reported by the transmitter in the minute of {@code now}, or the minute before
+     * if that would lie in the future. Reports without a valid second get {@code now}.
+     */
+    static long timestamp(int utcSecond, long now) {
+        if (utcSecond < 0 || utcSecond > 59) {
+            return now;
+        }
+        long time = now - now % MINUTE_MILLIS + utcSecond * SECOND_MILLIS;
+        return time > now ? time - MINUTE_MILLIS : time;
+    }
+}
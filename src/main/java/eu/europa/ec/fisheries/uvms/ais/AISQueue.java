@@ -0,0 +1,86 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+/**
+ * Bounded queue written by one producer and read through any number of {@link AISCursor}s, on the heap as an
+ * {@link AISRingBuffer} or in direct memory as an {@link AISSlabQueue}. When full, {@link #offer} applies the
+ * configured {@link AISOverflowPolicy} against the slowest cursor and counts what it did.
+ *
+ * @param <E> element type
+ */
+interface AISQueue<E> {
+
+    /**
+     * Add an element. Must only be called from the producer thread.
+     *
+     * @param element the element, not null
+     * @return true if the element was queued; false if it was dropped by {@link AISOverflowPolicy#DROP_NEWEST},
+     * too large to store or the producer was interrupted while blocked; never throws for an element
+     */
+    boolean offer(E element);
+
+    /**
+     * Open a cursor. It continues from the last cursor closed if there is one, otherwise it starts at the
+     * oldest element any open cursor has not read yet.
+     *
+     * @return the cursor
+     */
+    AISCursor<E> newCursor();
+
+    /**
+     * @return number of elements retained for the slowest cursor; exact when producer and consumers are idle
+     */
+    long size();
+
+    /**
+     * @return number of cursors holding elements back, the parked one included
+     */
+    int getCursorCount();
+
+    /**
+     * @return most elements retained at once
+     */
+    int capacity();
+
+    /**
+     * @return largest number of elements retained for the slowest cursor
+     */
+    long getHighWaterMark();
+
+    AISOverflowPolicy getPolicy();
+
+    /**
+     * Elements a cursor had not read yet that {@link AISOverflowPolicy#DROP_OLDEST} overwrote
+     */
+    long getDroppedOldestCount();
+
+    /**
+     * Elements discarded by {@link AISOverflowPolicy#DROP_NEWEST}
+     */
+    long getDroppedNewestCount();
+
+    /**
+     * Times the producer had to wait under {@link AISOverflowPolicy#BLOCK}
+     */
+    long getBlockedCount();
+
+    /**
+     * Total time the producer spent waiting under {@link AISOverflowPolicy#BLOCK}
+     */
+    long getBlockedNanos();
+
+    /**
+     * @return all elements dropped, whatever the policy
+     */
+    long getDroppedCount();
+}
@@ -0,0 +1,42 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+/**
+ * Where the reader keeps queued sentences when no journal directory is configured.
+ */
+public enum AISQueueStorage {
+
+    /**
+     * One {@link AISSentence} object per queued sentence on the heap.
+     */
+    HEAP,
+
+    /**
+     * The bytes of each queued sentence in slabs of direct memory allocated up front, so the heap does not grow
+     * with the backlog. Sentences are only turned into objects when they are drained.
+     */
+    DIRECT;
+
+    /**
+     * Parse a configured storage, case insensitive.
+     *
+     * @param value the configured value, may be null or empty
+     * @return the storage, {@link #HEAP} when nothing is configured
+     */
+    public static AISQueueStorage parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return HEAP;
+        }
+        return valueOf(value.trim().toUpperCase());
+    }
+}
@@ -41,6 +41,9 @@ import javax.resource.cci.ResourceAdapterMetaData;
  */
 public class AISRaMetaData implements ResourceAdapterMetaData
 {
+   /** Version reported when the jar manifest has none */
+   private static final String UNKNOWN_VERSION = "unknown";
+
    /**
     * Default constructor
     */
@@ -57,7 +60,8 @@ public class AISRaMetaData implements ResourceAdapterMetaData
    @Override
    public String getAdapterVersion()
    {
-      return null; //TODO
+      String version = AISRaMetaData.class.getPackage().getImplementationVersion();
+      return version != null ? version : UNKNOWN_VERSION;
    }
 
    /**
@@ -68,7 +72,7 @@ public class AISRaMetaData implements ResourceAdapterMetaData
    @Override
    public String getAdapterVendorName()
    {
-      return null; //TODO
+      return "European Commission - DG MARE";
    }
 
    /**
@@ -79,7 +83,7 @@ public class AISRaMetaData implements ResourceAdapterMetaData
    @Override
    public String getAdapterName()
    {
-      return null; //TODO
+      return "UnionVMS AIS Resource Adapter";
    }
 
    /**
@@ -90,7 +94,7 @@ public class AISRaMetaData implements ResourceAdapterMetaData
    @Override
    public String getAdapterShortDescription()
    {
-      return null; //TODO
+      return "Reads AIS VDM/VDO sentences from NMEA 0183 TCP feeds";
    }
 
    /**
@@ -101,7 +105,7 @@ public class AISRaMetaData implements ResourceAdapterMetaData
    @Override
    public String getSpecVersion()
    {
-      return null; //TODO
+      return "1.7";
    }
 
    /**
@@ -112,7 +116,7 @@ public class AISRaMetaData implements ResourceAdapterMetaData
    @Override
    public String[] getInteractionSpecsSupported()
    {
-      return null; //TODO
+      return new String[0];
    }
 
    /**
@@ -123,7 +127,7 @@ public class AISRaMetaData implements ResourceAdapterMetaData
    @Override
    public boolean supportsExecuteWithInputAndOutputRecord()
    {
-      return false; //TODO
+      return false;
    }
 
    /**
@@ -134,7 +138,7 @@ public class AISRaMetaData implements ResourceAdapterMetaData
    @Override
    public boolean supportsExecuteWithInputRecordOnly()
    {
-      return false; //TODO
+      return false;
    }
 
    /**
@@ -145,7 +149,7 @@ public class AISRaMetaData implements ResourceAdapterMetaData
    @Override
    public boolean supportsLocalTransactionDemarcation()
    {
-      return false; //TODO
+      return false;
    }
 
 
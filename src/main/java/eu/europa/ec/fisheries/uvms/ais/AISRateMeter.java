@@ -0,0 +1,42 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+/**
+ * Turns a growing counter into a rate for monitoring. The rate is taken over the time between two
+ * samples at least a second apart, so callers polling at any interval see a stable value.
+ */
+final class AISRateMeter {
+
+    private static final long MIN_INTERVAL_MILLIS = 1000;
+
+    private long sampledAt = -1;
+    private long sampledCount;
+    private double rate;
+
+    /**
+     * @param count current value of the counter
+     * @param now   current time in milliseconds
+     * @return increments per second
+     */
+    synchronized double rate(long count, long now) {
+        if (sampledAt < 0) {
+            sampledAt = now;
+            sampledCount = count;
+        } else if (now - sampledAt >= MIN_INTERVAL_MILLIS) {
+            rate = (count - sampledCount) * 1000.0 / (now - sampledAt);
+            sampledAt = now;
+            sampledCount = count;
+        }
+        return rate;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+/**
+ * Reader settings shared by {@link AISManagedConnectionFactory} and {@link AISActivationSpec}. Values are
+ * as configured; null means the property was not set and {@link AISFeedReader} applies its default.
+ */
+interface AISReaderConfiguration {
+
+    String getReaderMode();
+
+    Integer getQueueCapacity();
+
+    String getOverflowPolicy();
+
+    String getReaderExecution();
+
+    Long getReconnectInitialDelay();
+
+    Long getReconnectMaxDelay();
+
+    Double getReconnectJitter();
+
+    Long getReadTimeout();
+
+    Long getStallWindow();
+
+    Double getStallRatio();
+
+    String getChecksumPolicy();
+
+    String getJournalDirectory();
+
+    Long getJournalSegmentSize();
+
+    Long getJournalRetentionSize();
+
+    Long getJournalRetentionAge();
+
+    String getFilter();
+
+    String getAreaFiles();
+
+    String getAreaMode();
+
+    Long getConflationInterval();
+
+    Integer getVesselCapacity();
+
+    Long getVesselTimeout();
+
+    String getQueueStorage();
+
+    Long getQueueMemory();
+}
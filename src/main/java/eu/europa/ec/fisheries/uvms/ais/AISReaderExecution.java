@@ -0,0 +1,47 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+/**
+ * Where the reader loops run.
+ */
+public enum AISReaderExecution {
+
+    /**
+     * As long running JCA work on the work manager of the resource adapter, so the container owns the
+     * threads and releases them on undeploy. Falls back to {@link #THREAD} when the adapter is not started.
+     */
+    WORK_MANAGER,
+
+    /**
+     * On virtual threads, when the JDK provides them; otherwise falls back to {@link #THREAD}.
+     */
+    VIRTUAL_THREAD,
+
+    /**
+     * On plain platform threads started by the adapter.
+     */
+    THREAD;
+
+    /**
+     * Parse a configured execution, case insensitive.
+     *
+     * @param value the configured value, may be null or empty
+     * @return the execution, {@link #WORK_MANAGER} when nothing is configured
+     */
+    public static AISReaderExecution parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return WORK_MANAGER;
+        }
+        return valueOf(value.trim().toUpperCase());
+    }
+}
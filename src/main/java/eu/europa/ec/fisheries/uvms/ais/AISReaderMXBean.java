@@ -0,0 +1,195 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+/**
+ * Monitoring view of one AIS reader, i.e. of one managed connection or one endpoint activation, registered
+ * as {@code eu.europa.ec.fisheries.uvms.ais:type=AISReader,name=<reader>} while the reader is open.
+ * Counters and rates cover all feeds of the reader; {@link AISFeedMXBean} breaks them down by feed.
+ */
+public interface AISReaderMXBean {
+
+    /**
+     * @return e.g. {@code connection-1} or {@code activation-1}
+     */
+    String getName();
+
+    /**
+     * @return true while at least one reader loop runs
+     */
+    boolean isOpen();
+
+    /**
+     * @return true if the reader is open and at least one of its feeds is ready
+     */
+    boolean isReady();
+
+    int getFeedCount();
+
+    int getConnectedFeedCount();
+
+    String getReaderMode();
+
+    /**
+     * @return the filter applied before sentences are queued, empty when every message is queued
+     */
+    String getFilter();
+
+    /**
+     * Replace the filter of the reader, effective with the next message of every feed.
+     *
+     * @param filter the filter, see the {@code filter} property; empty to queue every message
+     * @throws IllegalArgumentException if the filter is malformed
+     */
+    void setFilter(String filter);
+
+    /**
+     * @return interval in milliseconds over which position reports are conflated per vessel, 0 when off
+     */
+    long getConflationInterval();
+
+    /**
+     * @return position reports replaced by a newer report of the same vessel before they were queued
+     */
+    long getConflatedCount();
+
+    /**
+     * @return vessels whose latest position is kept, 0 when none are
+     */
+    int getVesselCount();
+
+    int getVesselCapacity();
+
+    /**
+     * @return new vessels ignored because the vessel table was full
+     */
+    long getVesselRejectedCount();
+
+    /**
+     * @return vessels removed from the vessel table after not being heard within the timeout
+     */
+    long getVesselExpiredCount();
+
+    /**
+     * @return sentences retained for the slowest consumer, on the heap or in the journal
+     */
+    long getQueueSize();
+
+    int getQueueCapacity();
+
+    /**
+     * @return largest queue size seen since the reader was created
+     */
+    long getQueueHighWaterMark();
+
+    String getOverflowPolicy();
+
+    /**
+     * @return {@code HEAP} or {@code DIRECT}, see {@link AISQueueStorage}; the journal replaces either
+     */
+    String getQueueStorage();
+
+    /**
+     * @return bytes of direct memory allocated for the queue, 0 on the heap
+     */
+    long getQueueMemory();
+
+    /**
+     * @return disk space of the journal segments, 0 without journal
+     */
+    long getJournalBytes();
+
+    /**
+     * @return undrained sentences deleted from the journal by its retention limits
+     */
+    long getJournalDroppedCount();
+
+    long getDroppedOldestCount();
+
+    long getDroppedNewestCount();
+
+    /**
+     * @return times the reader waited for room under the BLOCK overflow policy
+     */
+    long getBlockedCount();
+
+    long getBlockedMillis();
+
+    long getSentenceCount();
+
+    long getMessageCount();
+
+    long getByteCount();
+
+    double getSentencesPerSecond();
+
+    double getMessagesPerSecond();
+
+    double getBytesPerSecond();
+
+    /**
+     * @return messages handed out to consumers
+     */
+    long getDrainedCount();
+
+    double getDrainedPerSecond();
+
+    long getChecksumErrorCount();
+
+    long getParseErrorCount();
+
+    long getConnectionFailureCount();
+
+    /**
+     * @return exclusive upper bound in milliseconds of each bucket of {@link #getLatencyHistogram()}
+     */
+    long[] getLatencyBucketUpperBounds();
+
+    /**
+     * @return number of drained messages by time spent between receipt and drain
+     */
+    long[] getLatencyHistogram();
+
+    /**
+     * @return upper bound of the histogram bucket holding the median latency, -1 if nothing was drained
+     */
+    long getLatencyMedianMillis();
+
+    /**
+     * @return upper bound of the histogram bucket holding the 99th percentile latency, -1 if nothing was
+     * drained
+     */
+    long getLatency99thPercentileMillis();
+
+    /**
+     * @return number of drained messages with a provider time by time spent between their receipt by the
+     * provider, as stated in a tag block or VSI sentence, and drain; uses the buckets of the latency histogram
+     */
+    long[] getProviderLatencyHistogram();
+
+    /**
+     * @return upper bound of the histogram bucket holding the median provider latency, -1 if no message with
+     * a provider time was drained
+     */
+    long getProviderLatencyMedianMillis();
+
+    /**
+     * @return upper bound of the histogram bucket holding the 99th percentile provider latency, -1 if no
+     * message with a provider time was drained
+     */
+    long getProviderLatency99thPercentileMillis();
+
+    /**
+     * Reset the latency and provider latency histograms.
+     */
+    void resetLatencyHistogram();
+}
@@ -0,0 +1,42 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+/**
+ * How the AIS feed socket is read.
+ */
+public enum AISReaderMode {
+
+    /**
+     * Blocking socket stream decoded line by line through a {@link java.io.BufferedReader}.
+     */
+    STREAM,
+
+    /**
+     * {@link java.nio.channels.SocketChannel} read into a reusable direct buffer and framed in bytes;
+     * only the payloads handed out are decoded.
+     */
+    CHANNEL;
+
+    /**
+     * Parse a configured mode, case insensitive.
+     *
+     * @param value the configured value, may be null or empty
+     * @return the mode, {@link #STREAM} when nothing is configured
+     */
+    public static AISReaderMode parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return STREAM;
+        }
+        return valueOf(value.trim().toUpperCase());
+    }
+}
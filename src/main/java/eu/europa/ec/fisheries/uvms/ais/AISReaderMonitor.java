@@ -0,0 +1,351 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * {@link AISReaderMXBean} over one {@link AISFeedReader}. {@link #register()} also registers an
+ * {@link AISFeedMXBean} for every feed of the reader with the platform MBean server. Registration problems
+ * are logged and never stop the reader.
+ */
+final class AISReaderMonitor implements AISReaderMXBean {
+
+    static final String DOMAIN = "eu.europa.ec.fisheries.uvms.ais";
+
+    private static Logger log = Logger.getLogger(AISReaderMonitor.class.getName());
+
+    private final AISFeedReader reader;
+    private final AISRateMeter sentenceRate = new AISRateMeter();
+    private final AISRateMeter messageRate = new AISRateMeter();
+    private final AISRateMeter byteRate = new AISRateMeter();
+    private final AISRateMeter drainedRate = new AISRateMeter();
+    private final List<ObjectName> registered = new ArrayList<>();
+
+    AISReaderMonitor(AISFeedReader reader) {
+        this.reader = reader;
+    }
+
+    synchronized void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String quotedName = ObjectName.quote(reader.getName());
+        register(server, "type=AISReader,name=" + quotedName, this);
+        for (AISFeedStatistics statistics : reader.getFeedStatistics()) {
+            register(server, "type=AISFeed,reader=" + quotedName + ",name=" + ObjectName.quote(statistics.getTag()),
+                    new AISFeedMonitor(statistics));
+        }
+    }
+
+    private void register(MBeanServer server, String properties, Object mbean) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            server.registerMBean(mbean, name);
+            registered.add(name);
+        } catch (JMException e) {
+            log.warning("Unable to register AIS MBean " + properties + ": " + e);
+        }
+    }
+
+    synchronized void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                log.warning("Unable to unregister AIS MBean " + name + ": " + e);
+            }
+        }
+        registered.clear();
+    }
+
+    @Override
+    public String getName() {
+        return reader.getName();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return reader.isOpen();
+    }
+
+    @Override
+    public boolean isReady() {
+        if (!reader.isOpen()) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        for (AISFeedStatistics statistics : reader.getFeedStatistics()) {
+            if (AISFeedMonitor.isReady(statistics, now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getFeedCount() {
+        return reader.getFeedStatistics().size();
+    }
+
+    @Override
+    public int getConnectedFeedCount() {
+        int count = 0;
+        for (AISFeedStatistics statistics : reader.getFeedStatistics()) {
+            if (statistics.isConnected()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String getReaderMode() {
+        return reader.getReaderMode().name();
+    }
+
+    @Override
+    public String getFilter() {
+        return reader.getFilter();
+    }
+
+    @Override
+    public void setFilter(String filter) {
+        reader.setFilter(filter);
+    }
+
+    @Override
+    public long getConflationInterval() {
+        AISConflator conflator = reader.getConflator();
+        return conflator != null ? conflator.getIntervalMillis() : 0;
+    }
+
+    @Override
+    public long getConflatedCount() {
+        AISConflator conflator = reader.getConflator();
+        return conflator != null ? conflator.getConflatedCount() : 0;
+    }
+
+    @Override
+    public int getVesselCount() {
+        AISVesselTable vessels = reader.getVesselTable();
+        return vessels != null ? vessels.size() : 0;
+    }
+
+    @Override
+    public int getVesselCapacity() {
+        AISVesselTable vessels = reader.getVesselTable();
+        return vessels != null ? vessels.capacity() : 0;
+    }
+
+    @Override
+    public long getVesselRejectedCount() {
+        AISVesselTable vessels = reader.getVesselTable();
+        return vessels != null ? vessels.getRejectedCount() : 0;
+    }
+
+    @Override
+    public long getVesselExpiredCount() {
+        AISVesselTable vessels = reader.getVesselTable();
+        return vessels != null ? vessels.getExpiredCount() : 0;
+    }
+
+    @Override
+    public long getQueueSize() {
+        return reader.getQueueSize();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return reader.getQueue().capacity();
+    }
+
+    @Override
+    public long getQueueHighWaterMark() {
+        return reader.getQueue().getHighWaterMark();
+    }
+
+    @Override
+    public String getOverflowPolicy() {
+        return reader.getQueue().getPolicy().name();
+    }
+
+    @Override
+    public String getQueueStorage() {
+        return (reader.getQueue() instanceof AISSlabQueue ? AISQueueStorage.DIRECT : AISQueueStorage.HEAP).name();
+    }
+
+    @Override
+    public long getQueueMemory() {
+        AISQueue<AISSentence> queue = reader.getQueue();
+        return queue instanceof AISSlabQueue ? ((AISSlabQueue) queue).getMemory() : 0;
+    }
+
+    @Override
+    public long getJournalBytes() {
+        AISJournal journal = reader.getJournal();
+        return journal != null ? journal.getSizeOnDisk() : 0;
+    }
+
+    @Override
+    public long getJournalDroppedCount() {
+        AISJournal journal = reader.getJournal();
+        return journal != null ? journal.getDroppedCount() : 0;
+    }
+
+    @Override
+    public long getDroppedOldestCount() {
+        return reader.getQueue().getDroppedOldestCount();
+    }
+
+    @Override
+    public long getDroppedNewestCount() {
+        return reader.getQueue().getDroppedNewestCount();
+    }
+
+    @Override
+    public long getBlockedCount() {
+        return reader.getQueue().getBlockedCount();
+    }
+
+    @Override
+    public long getBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(reader.getQueue().getBlockedNanos());
+    }
+
+    @Override
+    public long getSentenceCount() {
+        long count = 0;
+        for (AISFeedStatistics statistics : reader.getFeedStatistics()) {
+            count += statistics.getSentenceCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getMessageCount() {
+        long count = 0;
+        for (AISFeedStatistics statistics : reader.getFeedStatistics()) {
+            count += statistics.getMessageCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getByteCount() {
+        long count = 0;
+        for (AISFeedStatistics statistics : reader.getFeedStatistics()) {
+            count += statistics.getByteCount();
+        }
+        return count;
+    }
+
+    @Override
+    public double getSentencesPerSecond() {
+        return sentenceRate.rate(getSentenceCount(), System.currentTimeMillis());
+    }
+
+    @Override
+    public double getMessagesPerSecond() {
+        return messageRate.rate(getMessageCount(), System.currentTimeMillis());
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return byteRate.rate(getByteCount(), System.currentTimeMillis());
+    }
+
+    @Override
+    public long getDrainedCount() {
+        return reader.getDrainedCount();
+    }
+
+    @Override
+    public double getDrainedPerSecond() {
+        return drainedRate.rate(reader.getDrainedCount(), System.currentTimeMillis());
+    }
+
+    @Override
+    public long getChecksumErrorCount() {
+        long count = 0;
+        for (AISFeedStatistics statistics : reader.getFeedStatistics()) {
+            count += statistics.getChecksumErrorCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getParseErrorCount() {
+        long count = 0;
+        for (AISFeedStatistics statistics : reader.getFeedStatistics()) {
+            count += statistics.getParseErrorCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getConnectionFailureCount() {
+        long count = 0;
+        for (AISFeedStatistics statistics : reader.getFeedStatistics()) {
+            count += statistics.getConnectionFailureCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long[] getLatencyBucketUpperBounds() {
+        return AISLatencyHistogram.getUpperBounds();
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        return reader.getLatencyHistogram().getCounts();
+    }
+
+    @Override
+    public long getLatencyMedianMillis() {
+        return reader.getLatencyHistogram().getPercentileUpperBound(0.5);
+    }
+
+    @Override
+    public long getLatency99thPercentileMillis() {
+        return reader.getLatencyHistogram().getPercentileUpperBound(0.99);
+    }
+
+    @Override
+    public long[] getProviderLatencyHistogram() {
+        return reader.getProviderLatencyHistogram().getCounts();
+    }
+
+    @Override
+    public long getProviderLatencyMedianMillis() {
+        return reader.getProviderLatencyHistogram().getPercentileUpperBound(0.5);
+    }
+
+    @Override
+    public long getProviderLatency99thPercentileMillis() {
+        return reader.getProviderLatencyHistogram().getPercentileUpperBound(0.99);
+    }
+
+    @Override
+    public void resetLatencyHistogram() {
+        reader.getLatencyHistogram().reset();
+        reader.getProviderLatencyHistogram().reset();
+    }
+}
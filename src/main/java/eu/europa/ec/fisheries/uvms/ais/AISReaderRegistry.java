@@ -0,0 +1,75 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Readers of one connection factory, shared by all its managed connections requested for the same feeds.
+ * <p>
+ * A managed connection takes a reference when it is created and gives it back when the pool destroys it, so a
+ * reader keeps reading while its connections wait in the pool and is closed with the last of them. Closing a
+ * handle therefore never stops ingestion, and cycling handles through the pool does not reconnect to the
+ * provider. A reader closed by the resource adapter is replaced on the next request. Managed connections
+ * requested without feeds get a reader of their own.
+ */
+final class AISReaderRegistry {
+
+    private static final class Entry {
+        final AISFeedReader reader;
+        int references;
+
+        Entry(AISFeedReader reader) {
+            this.reader = reader;
+        }
+    }
+
+    private final Map<AISConnectionRequestInfo, Entry> entries = new HashMap<>();
+
+    /**
+     * @param info   the feeds of the managed connection, null for a reader of its own
+     * @param config reader settings of a new reader
+     * @param ra     resource adapter of a new reader, may be null
+     * @return the reader to use until {@link #release}
+     * @throws IllegalArgumentException if a setting is invalid
+     */
+    synchronized AISFeedReader acquire(AISConnectionRequestInfo info, AISReaderConfiguration config,
+                                       AISResourceAdapter ra) {
+        if (info == null) {
+            return new AISFeedReader(AISFeedReader.nextName("connection"), config, ra);
+        }
+        Entry entry = entries.get(info);
+        if (entry == null || entry.reader.isClosed()) {
+            entry = new Entry(new AISFeedReader(AISFeedReader.nextName("connection"), config, ra));
+            entries.put(info, entry);
+        }
+        entry.references++;
+        return entry.reader;
+    }
+
+    /**
+     * Give back a reader, closing it if no other managed connection uses it.
+     */
+    synchronized void release(AISConnectionRequestInfo info, AISFeedReader reader) {
+        Entry entry = info != null ? entries.get(info) : null;
+        if (entry != null && entry.reader == reader) {
+            if (--entry.references > 0) {
+                return;
+            }
+            entries.remove(info);
+        }
+        if (!reader.isClosed()) {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Delay before the next connection attempt to a feed: the first retry comes quickly, every further
+ * failure doubles the delay up to a cap, and each delay is spread by a random jitter so that readers
+ * of the same provider do not reconnect in lockstep. Not thread safe.
+ */
+final class AISReconnectBackoff {
+
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final double jitter;
+    private int attempts;
+
+    /**
+     * @param initialDelayMillis delay before the first retry
+     * @param maxDelayMillis     largest delay
+     * @param jitter             fraction of the delay added or removed at random, 0 to 1
+     */
+    AISReconnectBackoff(long initialDelayMillis, long maxDelayMillis, double jitter) {
+        if (initialDelayMillis < 0 || maxDelayMillis < initialDelayMillis) {
+            throw new IllegalArgumentException("Invalid reconnect delays: " + initialDelayMillis + ", " + maxDelayMillis);
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("Reconnect jitter must be between 0 and 1: " + jitter);
+        }
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.jitter = jitter;
+    }
+
+    /**
+     * @return delay in milliseconds before the next attempt
+     */
+    long nextDelay() {
+        long delay = initialDelayMillis;
+        for (int i = 0; i < attempts && delay < maxDelayMillis; i++) {
+            delay <<= 1;
+        }
+        delay = Math.min(delay, maxDelayMillis);
+        attempts++;
+        if (jitter > 0 && delay > 0) {
+            double spread = delay * jitter;
+            delay += (long) (ThreadLocalRandom.current().nextDouble(-spread, spread));
+        }
+        return Math.max(0, delay);
+    }
+
+    /**
+     * Start over with the initial delay, after a connection proved healthy.
+     */
+    void reset() {
+        attempts = 0;
+    }
+
+    int getAttempts() {
+        return attempts;
+    }
+}
@@ -32,6 +32,8 @@ copy of the GNU General Public License along with the IFDM Suite. If not, see <h
  */
 package eu.europa.ec.fisheries.uvms.ais;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import javax.resource.ResourceException;
@@ -43,6 +45,7 @@ import javax.resource.spi.ResourceAdapter;
 import javax.resource.spi.ResourceAdapterInternalException;
 import javax.resource.spi.TransactionSupport;
 import javax.resource.spi.endpoint.MessageEndpointFactory;
+import javax.resource.spi.work.WorkManager;
 
 import javax.transaction.xa.XAResource;
 
@@ -71,12 +74,22 @@ public class AISResourceAdapter implements ResourceAdapter, java.io.Serializable
    @ConfigProperty(defaultValue = "0")
    private Integer port;
 
+   /** The bootstrap context */
+   private transient BootstrapContext bootstrapContext;
+
+   /** The activations by activation spec */
+   private transient ConcurrentHashMap<AISActivationSpec, AISActivation> activations;
+
+   /** The open readers */
+   private transient Set<AISFeedReader> readers;
+
    /**
     * Default constructor
     */
    public AISResourceAdapter()
    {
-
+      this.activations = new ConcurrentHashMap<AISActivationSpec, AISActivation>();
+      this.readers = ConcurrentHashMap.<AISFeedReader>newKeySet();
    }
 
    /** 
@@ -127,6 +140,9 @@ public class AISResourceAdapter implements ResourceAdapter, java.io.Serializable
    {
       log.finest("endpointActivation()");
 
+      AISActivation activation = new AISActivation(this, endpointFactory, (AISActivationSpec)spec);
+      activation.start();
+      activations.put((AISActivationSpec)spec, activation);
    }
 
    /**
@@ -140,6 +156,9 @@ public class AISResourceAdapter implements ResourceAdapter, java.io.Serializable
    {
       log.finest("endpointDeactivation()");
 
+      AISActivation activation = activations.remove(spec);
+      if (activation != null)
+         activation.stop();
    }
 
    /**
@@ -152,7 +171,7 @@ public class AISResourceAdapter implements ResourceAdapter, java.io.Serializable
       throws ResourceAdapterInternalException
    {
       log.finest("start()");
-
+      this.bootstrapContext = ctx;
    }
 
    /**
@@ -163,6 +182,45 @@ public class AISResourceAdapter implements ResourceAdapter, java.io.Serializable
    {
       log.finest("stop()");
 
+      for (AISActivation activation : activations.values())
+      {
+         activation.stop();
+      }
+      activations.clear();
+      for (AISFeedReader reader : readers)
+      {
+         reader.close();
+      }
+      readers.clear();
+      this.bootstrapContext = null;
+   }
+
+   /**
+    * Get the work manager of the container
+    * @return The work manager, or null if the resource adapter is not started
+    */
+   WorkManager getWorkManager()
+   {
+      BootstrapContext ctx = bootstrapContext;
+      return ctx != null ? ctx.getWorkManager() : null;
+   }
+
+   /**
+    * Track an open reader, so that it is closed when the resource adapter stops
+    * @param reader The reader
+    */
+   void register(AISFeedReader reader)
+   {
+      readers.add(reader);
+   }
+
+   /**
+    * Stop tracking a closed reader
+    * @param reader The reader
+    */
+   void unregister(AISFeedReader reader)
+   {
+      readers.remove(reader);
    }
 
    /**
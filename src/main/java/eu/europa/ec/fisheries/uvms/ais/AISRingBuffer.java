@@ -0,0 +1,351 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, pre-allocated ring written by one producer and read through any number of {@link AISCursor}s.
+ * <p>
+ * The producer is the reader thread and numbers the elements with an ever increasing sequence; each cursor
+ * holds the sequence of the next element it will read and advances it with a CAS, so reading is lock-free
+ * and never removes an element another cursor still needs. A slot is only overwritten once every cursor has
+ * passed it. The producer keeps a lower bound of the cursor positions and only looks at the cursors again,
+ * under the ring's lock, when that bound says the ring is full; {@link #newCursor()} takes the same lock so
+ * a cursor never starts behind a slot being overwritten. The ring starts with one parked cursor at sequence
+ * zero, so sentences read before the first consumer opens are kept for it. When full, {@link #offer} applies
+ * the configured {@link AISOverflowPolicy} against the slowest cursor and counts what it did.
+ *
+ * @param <E> element type
+ */
+final class AISRingBuffer<E> implements AISQueue<E> {
+
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final int capacity;
+    private final int mask;
+    private final AISOverflowPolicy policy;
+    private final AtomicReferenceArray<E> elements;
+
+    /** Sequence of the next element to write */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** All cursors the producer has to respect, replaced on change under the ring's lock */
+    private volatile Cursor<?>[] cursors;
+    /** The last cursor closed, kept so the next one opened continues from it; guarded by this */
+    private Cursor<E> parked;
+    /** Producer only: no cursor is behind this sequence */
+    private long minPosition;
+
+    /** Written by the producer only */
+    private volatile long highWaterMark;
+
+    private final AtomicLong droppedOldest = new AtomicLong();
+    private final AtomicLong droppedNewest = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
+
+    /**
+     * @param capacity requested capacity, rounded up to a power of two
+     * @param policy   what to do when full
+     */
+    AISRingBuffer(int capacity, AISOverflowPolicy policy) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.policy = policy;
+        this.elements = new AtomicReferenceArray<>(this.capacity);
+        this.parked = new Cursor<>(this, 0);
+        this.cursors = new Cursor<?>[]{parked};
+    }
+
+    /**
+     * Add an element. Must only be called from the producer thread.
+     *
+     * @param element the element, not null
+     * @return true if the element was queued; false if it was dropped by {@link AISOverflowPolicy#DROP_NEWEST}
+     * or the producer was interrupted while blocked
+     */
+    @Override
+    public boolean offer(E element) {
+        long t = tail.get();
+        if (t - minPosition >= capacity && !makeRoom(t)) {
+            return false;
+        }
+        elements.lazySet((int) t & mask, element);
+        tail.lazySet(t + 1);
+
+        if (t + 1 - minPosition > highWaterMark) {
+            long size = t + 1 - slowest();
+            if (size > highWaterMark) {
+                highWaterMark = Math.min(size, capacity);
+            }
+        }
+        for (Cursor<?> cursor : cursors) {
+            Thread w = cursor.waiter;
+            if (w != null && t + 1 >= cursor.waitSequence) {
+                LockSupport.unpark(w);
+            }
+        }
+        return true;
+    }
+
+    private boolean makeRoom(long t) {
+        synchronized (this) {
+            minPosition = slowest();
+        }
+        if (t - minPosition < capacity) {
+            return true;
+        }
+        switch (policy) {
+            case DROP_NEWEST:
+                droppedNewest.incrementAndGet();
+                return false;
+            case DROP_OLDEST:
+                synchronized (this) {
+                    for (Cursor<?> cursor : cursors) {
+                        cursor.advanceTo(t - capacity + 1);
+                    }
+                    minPosition = slowest();
+                }
+                droppedOldest.incrementAndGet();
+                return true;
+            case BLOCK:
+            default:
+                return awaitRoom(t);
+        }
+    }
+
+    private boolean awaitRoom(long t) {
+        blocked.incrementAndGet();
+        long start = System.nanoTime();
+        long park = MIN_PARK_NANOS;
+        try {
+            while (true) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, park);
+                park = Math.min(park << 1, MAX_PARK_NANOS);
+                synchronized (this) {
+                    minPosition = slowest();
+                }
+                if (t - minPosition < capacity) {
+                    return true;
+                }
+            }
+        } finally {
+            blockedNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private long slowest() {
+        long min = Long.MAX_VALUE;
+        for (Cursor<?> cursor : cursors) {
+            min = Math.min(min, cursor.position.get());
+        }
+        return min == Long.MAX_VALUE ? tail.get() : min;
+    }
+
+    /**
+     * Open a cursor. It continues from the last cursor closed if there is one, otherwise it starts at the
+     * oldest element any open cursor has not read yet.
+     *
+     * @return the cursor
+     */
+    @Override
+    public synchronized AISCursor<E> newCursor() {
+        if (parked != null) {
+            Cursor<E> cursor = parked;
+            parked = null;
+            return cursor;
+        }
+        Cursor<E> cursor = new Cursor<>(this, slowest());
+        Cursor<?>[] current = cursors;
+        Cursor<?>[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = cursor;
+        cursors = updated;
+        return cursor;
+    }
+
+    private synchronized void close(Cursor<E> cursor) {
+        if (cursor == parked) {
+            return;
+        }
+        Cursor<?>[] current = cursors;
+        int index = Arrays.asList(current).indexOf(cursor);
+        if (index < 0) {
+            return;
+        }
+        if (current.length == 1) {
+            parked = cursor;
+            return;
+        }
+        Cursor<?>[] updated = new Cursor<?>[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, updated.length - index);
+        cursors = updated;
+    }
+
+    private boolean awaitSequence(Cursor<E> cursor, long sequence, long timeoutNanos) {
+        if (tail.get() >= sequence) {
+            return true;
+        }
+        cursor.waitSequence = sequence;
+        cursor.waiter = Thread.currentThread();
+        try {
+            if (tail.get() < sequence && timeoutNanos > 0) {
+                LockSupport.parkNanos(cursor, timeoutNanos);
+            }
+            return tail.get() >= sequence;
+        } finally {
+            cursor.waiter = null;
+        }
+    }
+
+    /**
+     * @return number of elements retained for the slowest cursor; exact when producer and consumers are idle
+     */
+    @Override
+    public long size() {
+        return Math.max(0, Math.min(tail.get() - slowest(), capacity));
+    }
+
+    /**
+     * @return number of cursors holding elements back, the parked one included
+     */
+    @Override
+    public int getCursorCount() {
+        return cursors.length;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return largest number of elements retained for the slowest cursor
+     */
+    @Override
+    public long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    @Override
+    public AISOverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Times {@link AISOverflowPolicy#DROP_OLDEST} overwrote an element a cursor had not read yet
+     */
+    @Override
+    public long getDroppedOldestCount() {
+        return droppedOldest.get();
+    }
+
+    /**
+     * Elements discarded by {@link AISOverflowPolicy#DROP_NEWEST}
+     */
+    @Override
+    public long getDroppedNewestCount() {
+        return droppedNewest.get();
+    }
+
+    /**
+     * Times the producer had to wait under {@link AISOverflowPolicy#BLOCK}
+     */
+    @Override
+    public long getBlockedCount() {
+        return blocked.get();
+    }
+
+    /**
+     * Total time the producer spent waiting under {@link AISOverflowPolicy#BLOCK}
+     */
+    @Override
+    public long getBlockedNanos() {
+        return blockedNanos.get();
+    }
+
+    /**
+     * @return all elements dropped, whatever the policy
+     */
+    @Override
+    public long getDroppedCount() {
+        return droppedOldest.get() + droppedNewest.get();
+    }
+
+    private static final class Cursor<E> implements AISCursor<E> {
+
+        private final AISRingBuffer<E> ring;
+        private final AtomicLong position;
+        /** Thread waiting in {@link #awaitSize} for the producer to reach the sequence */
+        private volatile Thread waiter;
+        private volatile long waitSequence;
+
+        Cursor(AISRingBuffer<E> ring, long position) {
+            this.ring = ring;
+            this.position = new AtomicLong(position);
+        }
+
+        @Override
+        public E poll() {
+            while (true) {
+                long p = position.get();
+                if (p >= ring.tail.get()) {
+                    return null;
+                }
+                // The slot is only overwritten after the producer moved this cursor past it, which fails the CAS
+                E element = ring.elements.get((int) p & ring.mask);
+                if (position.compareAndSet(p, p + 1)) {
+                    return element;
+                }
+            }
+        }
+
+        /**
+         * Called by the producer under the ring's lock when it needs the slot at {@code sequence - 1}.
+         */
+        void advanceTo(long sequence) {
+            long p;
+            while ((p = position.get()) < sequence) {
+                if (position.compareAndSet(p, sequence)) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public long size() {
+            return Math.max(0, Math.min(ring.tail.get() - position.get(), ring.capacity));
+        }
+
+        @Override
+        public boolean awaitSize(int minElements, long timeoutNanos) {
+            return ring.awaitSequence(this, position.get() + minElements, timeoutNanos);
+        }
+
+        @Override
+        public void close() {
+            ring.close(this);
+        }
+    }
+}
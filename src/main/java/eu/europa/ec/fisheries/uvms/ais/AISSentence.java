@@ -0,0 +1,242 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A received AIS message: its armoured payload, with multi-fragment messages already reassembled, the tag
+ * of the feed it came from, when it was received and the configured areas its position lies in. When the
+ * provider sends NMEA 4.10 tag blocks or VSI sentences, it also carries the time and station the provider
+ * received it at.
+ */
+public final class AISSentence {
+
+    /** Created from {@link #payloadBytes} on first use when the sentence was read from direct memory */
+    private String payload;
+    private final byte[] payloadBytes;
+    private final String feedTag;
+    private final long receivedAt;
+    private final boolean checksumValid;
+    private final List<String> areas;
+    private final long providerTime;
+    private final String station;
+
+    /**
+     * @param payload    the armoured payload
+     * @param feedTag    tag of the originating {@link AISFeed}
+     * @param receivedAt receive time in milliseconds since the epoch
+     */
+    public AISSentence(String payload, String feedTag, long receivedAt) {
+        this(payload, feedTag, receivedAt, true);
+    }
+
+    /**
+     * @param payload       the armoured payload
+     * @param feedTag       tag of the originating {@link AISFeed}
+     * @param receivedAt    receive time in milliseconds since the epoch
+     * @param checksumValid false if the checksum of a sentence of the message was missing or wrong
+     */
+    public AISSentence(String payload, String feedTag, long receivedAt, boolean checksumValid) {
+        this(payload, feedTag, receivedAt, checksumValid, null);
+    }
+
+    /**
+     * @param payload       the armoured payload
+     * @param feedTag       tag of the originating {@link AISFeed}
+     * @param receivedAt    receive time in milliseconds since the epoch
+     * @param checksumValid false if the checksum of a sentence of the message was missing or wrong
+     * @param areas         identifiers of the areas the position lies in, null or empty when none
+     */
+    public AISSentence(String payload, String feedTag, long receivedAt, boolean checksumValid, List<String> areas) {
+        this(payload, feedTag, receivedAt, checksumValid, areas, 0, null);
+    }
+
+    /**
+     * @param payload       the armoured payload
+     * @param feedTag       tag of the originating {@link AISFeed}
+     * @param receivedAt    receive time in milliseconds since the epoch
+     * @param checksumValid false if the checksum of a sentence of the message was missing or wrong
+     * @param areas         identifiers of the areas the position lies in, null or empty when none
+     * @param providerTime  time the provider received the message in milliseconds since the epoch, 0 if unknown
+     * @param station       identifier of the base station or satellite that received the message, null if unknown
+     */
+    public AISSentence(String payload, String feedTag, long receivedAt, boolean checksumValid, List<String> areas,
+                       long providerTime, String station) {
+        this(payload, null, feedTag, receivedAt, checksumValid, areas, providerTime, station);
+    }
+
+    /**
+     * A sentence whose payload is only turned into a string when asked for, see {@link AISSlabQueue}.
+     *
+     * @param payload the armoured payload as ASCII bytes, not copied
+     */
+    AISSentence(byte[] payload, String feedTag, long receivedAt, boolean checksumValid, List<String> areas,
+                long providerTime, String station) {
+        this(null, payload, feedTag, receivedAt, checksumValid, areas, providerTime, station);
+    }
+
+    private AISSentence(String payload, byte[] payloadBytes, String feedTag, long receivedAt, boolean checksumValid,
+                        List<String> areas, long providerTime, String station) {
+        this.payload = payload;
+        this.payloadBytes = payloadBytes;
+        this.feedTag = feedTag;
+        this.receivedAt = receivedAt;
+        this.checksumValid = checksumValid;
+        this.areas = areas != null ? areas : Collections.<String>emptyList();
+        this.providerTime = providerTime;
+        this.station = station;
+    }
+
+    /**
+     * @return a copy of this sentence with the provider time and station of a VSI sentence, keeping those
+     * already known from a tag block
+     */
+    AISSentence withProvider(long vsiTime, String vsiStation) {
+        return new AISSentence(payload, payloadBytes, feedTag, receivedAt, checksumValid, areas,
+                providerTime != 0 ? providerTime : vsiTime, station != null ? station : vsiStation);
+    }
+
+    public String getPayload() {
+        // Racing threads may each create an equal string, which is harmless
+        String current = payload;
+        if (current == null) {
+            current = new String(payloadBytes, StandardCharsets.US_ASCII);
+            payload = current;
+        }
+        return current;
+    }
+
+    /**
+     * @return the payload as ASCII bytes, null unless the sentence was read from direct memory; must not be
+     * modified
+     */
+    byte[] getPayloadBytes() {
+        return payloadBytes;
+    }
+
+    /**
+     * @return the payload as characters without creating a string for a sentence read from direct memory; its
+     * {@code toString()} creates one
+     */
+    public CharSequence getPayloadView() {
+        String current = payload;
+        return current != null ? current : new AsciiView(payloadBytes, 0, payloadBytes.length);
+    }
+
+    /**
+     * @return a read-only buffer of the payload as ASCII bytes, sharing the bytes of a sentence read from direct
+     * memory
+     */
+    public ByteBuffer getPayloadBuffer() {
+        byte[] bytes = payloadBytes != null ? payloadBytes : payload.getBytes(StandardCharsets.US_ASCII);
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    public String getFeedTag() {
+        return feedTag;
+    }
+
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    /**
+     * @return false if the checksum of a sentence of this message was missing or wrong, which is only
+     * queued under {@link AISChecksumPolicy#FLAG}
+     */
+    public boolean isChecksumValid() {
+        return checksumValid;
+    }
+
+    /**
+     * @return identifiers of the configured areas the position of this message lies in; empty when it lies in
+     * none, has no position or no areas are configured, see {@link AISAreaMode}
+     */
+    public List<String> getAreas() {
+        return areas;
+    }
+
+    /**
+     * @return time the provider received this message in milliseconds since the epoch, from the {@code c:}
+     * parameter of an NMEA 4.10 tag block or the time of a VSI sentence; 0 if the provider sent neither
+     */
+    public long getProviderTime() {
+        return providerTime;
+    }
+
+    /**
+     * @return identifier of the base station or satellite that received this message, from the {@code s:}
+     * parameter of a tag block or the source of a VSI sentence; null if the provider sent neither
+     */
+    public String getStation() {
+        return station;
+    }
+
+    /**
+     * @return the provider time if known, otherwise the receive time
+     */
+    long getEventTime() {
+        return providerTime != 0 ? providerTime : receivedAt;
+    }
+
+    @Override
+    public String toString() {
+        return feedTag + ": " + getPayload();
+    }
+
+    /**
+     * Characters of a range of ASCII bytes, which are neither copied nor modified
+     */
+    private static final class AsciiView implements CharSequence {
+        private final byte[] bytes;
+        private final int offset;
+        private final int length;
+
+        AsciiView(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index " + index + " of " + length);
+            }
+            byte b = bytes[offset + index];
+            // As decoded by the US-ASCII charset
+            return b >= 0 ? (char) b : '\uFFFD';
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("Range " + start + "-" + end + " of " + length);
+            }
+            return new AsciiView(bytes, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, offset, length, StandardCharsets.US_ASCII);
+        }
+    }
+}
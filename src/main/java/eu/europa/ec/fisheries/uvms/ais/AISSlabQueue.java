@@ -0,0 +1,577 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded queue of sentences kept as bytes in direct memory, used instead of the {@link AISRingBuffer} when the
+ * queue storage is {@link AISQueueStorage#DIRECT}.
+ * <p>
+ * A record is the receive time, flags, the number of its feed tag and area list, the provider time, the number
+ * of its station and the payload as ASCII bytes, 31 bytes plus the payload. Records are appended to a ring of fixed size slabs allocated up front, addressed by
+ * a byte position that grows forever; a record never straddles two slabs. A second direct buffer maps the
+ * sequence of each queued sentence to the position of its record, so the heap holds neither the payloads nor
+ * one object per sentence, and its size does not depend on the backlog. Feed tags, area lists and stations are
+ * few and kept once on the heap, numbered in the order they were first seen.
+ * <p>
+ * Cursors follow the protocol of the {@link AISRingBuffer}: each holds the sequence of the next sentence it
+ * will read and advances it with a CAS after copying the record, which fails if the producer moved it past a
+ * record being overwritten. The queue is full when the slowest cursor is {@code capacity} sentences behind or
+ * the next record would overwrite the first one it has not read, and {@link #offer} then applies the
+ * configured {@link AISOverflowPolicy}. Sentences become objects only when a cursor polls them, and
+ * {@link Cursor#poll(Record)} copies a payload into a reusable record without creating any. The direct memory
+ * is released when the queue is garbage collected.
+ */
+final class AISSlabQueue implements AISQueue<AISSentence> {
+
+    static final long DEFAULT_MEMORY = 64 * 1024 * 1024;
+    static final long MIN_MEMORY = 64 * 1024;
+    /** The position index takes eight bytes per sentence in a single direct buffer */
+    static final int MAX_CAPACITY = 1 << 28;
+    static final int SLAB_SIZE = 4 * 1024 * 1024;
+    static final int MAX_PAYLOAD = AISFragmentAssembler.MAX_FRAGMENTS * AISFragmentAssembler.MAX_FRAGMENT_PAYLOAD;
+
+    /** Receive time, flags, tag number, area list number, provider time, station number and payload length */
+    private static final int HEADER_SIZE = 8 + 1 + 4 + 4 + 8 + 4 + 2;
+    private static final byte FLAG_CHECKSUM_VALID = 1;
+    private static final int NO_AREAS = -1;
+    private static final int NO_STATION = -1;
+
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final int capacity;
+    private final int mask;
+    private final AISOverflowPolicy policy;
+    private final ByteBuffer[] slabs;
+    private final int slabSize;
+    private final long memory;
+    /** Position of the record of every sequence, at the sequence modulo the capacity */
+    private final LongBuffer index;
+
+    /** Sequence of the next sentence to write */
+    private final AtomicLong tail = new AtomicLong();
+    /** Producer only: position after the last record */
+    private long writePosition;
+
+    /** Appended by the producer only, read by the cursors */
+    private final List<String> tags = new CopyOnWriteArrayList<>();
+    private final List<List<String>> areaLists = new CopyOnWriteArrayList<>();
+    private final Map<String, Integer> tagNumbers = new HashMap<>();
+    private final Map<List<String>, Integer> areaNumbers = new HashMap<>();
+    private final List<String> stations = new CopyOnWriteArrayList<>();
+    private final Map<String, Integer> stationNumbers = new HashMap<>();
+    private String lastTag;
+    private int lastTagNumber;
+    private List<String> lastAreas;
+    private int lastAreaNumber;
+    private String lastStation;
+    private int lastStationNumber;
+
+    /** All cursors the producer has to respect, replaced on change under the queue's lock */
+    private volatile Cursor[] cursors;
+    /** The last cursor closed, kept so the next one opened continues from it; guarded by this */
+    private Cursor parked;
+    /** Producer only: no cursor is behind this sequence */
+    private long minPosition;
+
+    /** Written by the producer only */
+    private volatile long highWaterMark;
+
+    private final AtomicLong droppedOldest = new AtomicLong();
+    private final AtomicLong droppedNewest = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
+
+    /**
+     * @param capacity requested capacity in sentences, rounded up to a power of two
+     * @param memory   bytes of direct memory for the records, rounded up to whole slabs
+     * @param policy   what to do when full
+     */
+    AISSlabQueue(int capacity, long memory, AISOverflowPolicy policy) {
+        validate(capacity, memory);
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.policy = policy;
+        this.slabSize = (int) Math.min(memory, SLAB_SIZE);
+        this.slabs = new ByteBuffer[(int) ((memory + slabSize - 1) / slabSize)];
+        for (int i = 0; i < slabs.length; i++) {
+            slabs[i] = ByteBuffer.allocateDirect(slabSize);
+        }
+        this.memory = (long) slabs.length * slabSize;
+        this.index = ByteBuffer.allocateDirect(this.capacity * 8).asLongBuffer();
+        this.parked = new Cursor(this, 0);
+        this.cursors = new Cursor[]{parked};
+    }
+
+    static void validate(int capacity, long memory) {
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Direct queue capacity out of range: " + capacity);
+        }
+        if (memory < MIN_MEMORY || memory / SLAB_SIZE >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Queue memory out of range: " + memory);
+        }
+    }
+
+    @Override
+    public boolean offer(AISSentence sentence) {
+        String payload = sentence.getPayload();
+        if (payload.length() > MAX_PAYLOAD) {
+            // Longer than any message of nine fragments, so not a valid one; dropped like an overflow
+            droppedNewest.incrementAndGet();
+            return false;
+        }
+        int length = HEADER_SIZE + payload.length();
+        long t = tail.get();
+        long start = align(writePosition, length);
+        long end = start + length;
+        if ((t - minPosition >= capacity || !hasRoom(t, end)) && !makeRoom(t, end)) {
+            return false;
+        }
+        write(start, sentence, payload);
+        index.put((int) t & mask, start);
+        writePosition = end;
+        tail.lazySet(t + 1);
+
+        if (t + 1 - minPosition > highWaterMark) {
+            long size = t + 1 - slowest();
+            if (size > highWaterMark) {
+                highWaterMark = Math.min(size, capacity);
+            }
+        }
+        for (Cursor cursor : cursors) {
+            Thread w = cursor.waiter;
+            if (w != null && t + 1 >= cursor.waitSequence) {
+                LockSupport.unpark(w);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the position where a record of this length starts, the next slab if it does not fit in this one
+     */
+    private long align(long position, int length) {
+        int at = (int) (position % slabSize);
+        return at + length > slabSize ? position - at + slabSize : position;
+    }
+
+    /**
+     * Only called with fewer than {@code capacity} sentences unread, so the index still holds the position of
+     * the oldest one.
+     *
+     * @return true if the bytes up to {@code end} do not overwrite a record the slowest cursor has not read
+     */
+    private boolean hasRoom(long t, long end) {
+        return minPosition >= t || end - index.get((int) minPosition & mask) <= memory;
+    }
+
+    private boolean fits(long t, long end) {
+        return t - minPosition < capacity && hasRoom(t, end);
+    }
+
+    private void write(long position, AISSentence sentence, String payload) {
+        ByteBuffer slab = slab(position);
+        int at = (int) (position % slabSize);
+        slab.putLong(at, sentence.getReceivedAt());
+        slab.put(at + 8, sentence.isChecksumValid() ? FLAG_CHECKSUM_VALID : 0);
+        slab.putInt(at + 9, tagNumber(sentence.getFeedTag()));
+        slab.putInt(at + 13, areaNumber(sentence.getAreas()));
+        slab.putLong(at + 17, sentence.getProviderTime());
+        slab.putInt(at + 25, stationNumber(sentence.getStation()));
+        slab.putChar(at + 29, (char) payload.length());
+        int offset = at + HEADER_SIZE;
+        for (int i = 0; i < payload.length(); i++) {
+            slab.put(offset + i, (byte) payload.charAt(i));
+        }
+    }
+
+    private ByteBuffer slab(long position) {
+        return slabs[(int) (position / slabSize % slabs.length)];
+    }
+
+    private int tagNumber(String tag) {
+        if (lastTag == null || !lastTag.equals(tag)) {
+            Integer number = tagNumbers.get(tag);
+            if (number == null) {
+                number = tags.size();
+                tags.add(tag);
+                tagNumbers.put(tag, number);
+            }
+            lastTag = tag;
+            lastTagNumber = number;
+        }
+        return lastTagNumber;
+    }
+
+    private int stationNumber(String station) {
+        if (station == null) {
+            return NO_STATION;
+        }
+        if (lastStation == null || !lastStation.equals(station)) {
+            Integer number = stationNumbers.get(station);
+            if (number == null) {
+                number = stations.size();
+                stations.add(station);
+                stationNumbers.put(station, number);
+            }
+            lastStation = station;
+            lastStationNumber = number;
+        }
+        return lastStationNumber;
+    }
+
+    /**
+     * Area lists come from the shared entries of an {@link AISAreaIndex}, so the last one is reused while it is
+     * the same list.
+     */
+    private int areaNumber(List<String> areas) {
+        if (areas.isEmpty()) {
+            return NO_AREAS;
+        }
+        if (areas != lastAreas) {
+            Integer number = areaNumbers.get(areas);
+            if (number == null) {
+                number = areaLists.size();
+                areaLists.add(areas);
+                areaNumbers.put(areas, number);
+            }
+            lastAreas = areas;
+            lastAreaNumber = number;
+        }
+        return lastAreaNumber;
+    }
+
+    private boolean makeRoom(long t, long end) {
+        synchronized (this) {
+            minPosition = slowest();
+        }
+        if (fits(t, end)) {
+            return true;
+        }
+        switch (policy) {
+            case DROP_NEWEST:
+                droppedNewest.incrementAndGet();
+                return false;
+            case DROP_OLDEST:
+                synchronized (this) {
+                    long from = slowest();
+                    long to = Math.max(from, t - capacity + 1);
+                    while (to < t && end - index.get((int) to & mask) > memory) {
+                        to++;
+                    }
+                    for (Cursor cursor : cursors) {
+                        cursor.advanceTo(to);
+                    }
+                    minPosition = slowest();
+                    droppedOldest.addAndGet(to - from);
+                }
+                return true;
+            case BLOCK:
+            default:
+                return awaitRoom(t, end);
+        }
+    }
+
+    private boolean awaitRoom(long t, long end) {
+        blocked.incrementAndGet();
+        long start = System.nanoTime();
+        long park = MIN_PARK_NANOS;
+        try {
+            while (true) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, park);
+                park = Math.min(park << 1, MAX_PARK_NANOS);
+                synchronized (this) {
+                    minPosition = slowest();
+                }
+                if (fits(t, end)) {
+                    return true;
+                }
+            }
+        } finally {
+            blockedNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private long slowest() {
+        long min = Long.MAX_VALUE;
+        for (Cursor cursor : cursors) {
+            min = Math.min(min, cursor.position.get());
+        }
+        return min == Long.MAX_VALUE ? tail.get() : min;
+    }
+
+    /**
+     * Copy the record of a sequence. The producer may be overwriting it, so the result is only valid if the
+     * cursor still points at the sequence afterwards.
+     *
+     * @return the sentence, null if the record is not consistent
+     */
+    private AISSentence read(long sequence) {
+        long position = index.get((int) sequence & mask);
+        ByteBuffer slab = slab(position);
+        int at = (int) (position % slabSize);
+        int length = slab.getChar(at + 29);
+        int tag = slab.getInt(at + 9);
+        int areas = slab.getInt(at + 13);
+        int station = slab.getInt(at + 25);
+        if (at + HEADER_SIZE + length > slabSize || tag < 0 || tag >= tags.size()
+                || areas < NO_AREAS || areas >= areaLists.size() || station < NO_STATION || station >= stations.size()) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        for (int i = 0; i < length; i++) {
+            payload[i] = slab.get(at + HEADER_SIZE + i);
+        }
+        return new AISSentence(payload, tags.get(tag), slab.getLong(at),
+                (slab.get(at + 8) & FLAG_CHECKSUM_VALID) != 0, areas == NO_AREAS ? null : areaLists.get(areas),
+                slab.getLong(at + 17), station == NO_STATION ? null : stations.get(station));
+    }
+
+    /**
+     * Like {@link #read(long)}, copying only the payload and times into a reusable record.
+     *
+     * @return false if the record is not consistent
+     */
+    private boolean read(long sequence, Record record) {
+        long position = index.get((int) sequence & mask);
+        ByteBuffer slab = slab(position);
+        int at = (int) (position % slabSize);
+        int length = slab.getChar(at + 29);
+        if (length > MAX_PAYLOAD || at + HEADER_SIZE + length > slabSize) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            record.payload[i] = slab.get(at + HEADER_SIZE + i);
+        }
+        record.length = length;
+        record.receivedAt = slab.getLong(at);
+        record.providerTime = slab.getLong(at + 17);
+        return true;
+    }
+
+    @Override
+    public synchronized AISCursor<AISSentence> newCursor() {
+        if (parked != null) {
+            Cursor cursor = parked;
+            parked = null;
+            return cursor;
+        }
+        Cursor cursor = new Cursor(this, slowest());
+        Cursor[] current = cursors;
+        Cursor[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = cursor;
+        cursors = updated;
+        return cursor;
+    }
+
+    private synchronized void close(Cursor cursor) {
+        if (cursor == parked) {
+            return;
+        }
+        Cursor[] current = cursors;
+        int at = Arrays.asList(current).indexOf(cursor);
+        if (at < 0) {
+            return;
+        }
+        if (current.length == 1) {
+            parked = cursor;
+            return;
+        }
+        Cursor[] updated = new Cursor[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, at);
+        System.arraycopy(current, at + 1, updated, at, updated.length - at);
+        cursors = updated;
+    }
+
+    private boolean awaitSequence(Cursor cursor, long sequence, long timeoutNanos) {
+        if (tail.get() >= sequence) {
+            return true;
+        }
+        cursor.waitSequence = sequence;
+        cursor.waiter = Thread.currentThread();
+        try {
+            if (tail.get() < sequence && timeoutNanos > 0) {
+                LockSupport.parkNanos(cursor, timeoutNanos);
+            }
+            return tail.get() >= sequence;
+        } finally {
+            cursor.waiter = null;
+        }
+    }
+
+    @Override
+    public long size() {
+        return Math.max(0, Math.min(tail.get() - slowest(), capacity));
+    }
+
+    @Override
+    public int getCursorCount() {
+        return cursors.length;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return bytes of direct memory holding the records
+     */
+    long getMemory() {
+        return memory;
+    }
+
+    @Override
+    public long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    @Override
+    public AISOverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    @Override
+    public long getDroppedOldestCount() {
+        return droppedOldest.get();
+    }
+
+    /**
+     * Sentences discarded by {@link AISOverflowPolicy#DROP_NEWEST}, and those with a payload longer than
+     * {@link #MAX_PAYLOAD} whatever the policy
+     */
+    @Override
+    public long getDroppedNewestCount() {
+        return droppedNewest.get();
+    }
+
+    @Override
+    public long getBlockedCount() {
+        return blocked.get();
+    }
+
+    @Override
+    public long getBlockedNanos() {
+        return blockedNanos.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedOldest.get() + droppedNewest.get();
+    }
+
+    /**
+     * Payload, receive time and provider time of one sentence, reused between calls of
+     * {@link Cursor#poll(Record)}. Not thread safe.
+     */
+    static final class Record {
+        final byte[] payload = new byte[MAX_PAYLOAD];
+        int length;
+        long receivedAt;
+        long providerTime;
+    }
+
+    static final class Cursor implements AISCursor<AISSentence> {
+
+        private final AISSlabQueue queue;
+        private final AtomicLong position;
+        /** Thread waiting in {@link #awaitSize} for the producer to reach the sequence */
+        private volatile Thread waiter;
+        private volatile long waitSequence;
+
+        Cursor(AISSlabQueue queue, long position) {
+            this.queue = queue;
+            this.position = new AtomicLong(position);
+        }
+
+        @Override
+        public AISSentence poll() {
+            while (true) {
+                long p = position.get();
+                if (p >= queue.tail.get()) {
+                    return null;
+                }
+                // The record is only overwritten after the producer moved this cursor past it, which fails the CAS
+                AISSentence sentence = queue.read(p);
+                if (position.compareAndSet(p, p + 1)) {
+                    if (sentence == null) {
+                        throw new IllegalStateException("Inconsistent record at sequence " + p);
+                    }
+                    return sentence;
+                }
+            }
+        }
+
+        /**
+         * Take the payload of the next sentence without creating any object.
+         *
+         * @param record receives the payload and receive time
+         * @return false if this cursor has read everything queued
+         */
+        boolean poll(Record record) {
+            while (true) {
+                long p = position.get();
+                if (p >= queue.tail.get()) {
+                    return false;
+                }
+                boolean consistent = queue.read(p, record);
+                if (position.compareAndSet(p, p + 1)) {
+                    if (!consistent) {
+                        throw new IllegalStateException("Inconsistent record at sequence " + p);
+                    }
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Called by the producer under the queue's lock when it needs the record at {@code sequence - 1}.
+         */
+        void advanceTo(long sequence) {
+            long p;
+            while ((p = position.get()) < sequence) {
+                if (position.compareAndSet(p, sequence)) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public long size() {
+            return Math.max(0, Math.min(queue.tail.get() - position.get(), queue.capacity));
+        }
+
+        @Override
+        public boolean awaitSize(int minElements, long timeoutNanos) {
+            return queue.awaitSequence(this, position.get() + minElements, timeoutNanos);
+        }
+
+        @Override
+        public void close() {
+            queue.close(this);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.util.Arrays;
+
+/**
+ * Detects a feed that is still connected but has nearly stopped delivering.
+ * <p>
+ * Sentences are counted per sample period. A baseline rate is learned as an exponentially weighted moving
+ * average of the samples, kept across reconnects, and the counts of the last stall window are kept in a small
+ * ring. When the window holds less than the stall ratio of what the baseline predicts, the feed is considered
+ * stalled and should be reconnected. The watchdog stays quiet until the baseline has been learned over at
+ * least one full window, for feeds slower than {@link #MIN_BASELINE_RATE}, and during the first window of
+ * each connection.
+ * The baseline is not updated while the window is below the threshold, so an outage does not teach it
+ * that silence is normal. A feed still that slow after {@link #MAX_STALL_RECONNECTS} reconnects in a row
+ * has changed rather than stalled: the window rate becomes the baseline and learning resumes from there.
+ * Not thread safe.
+ */
+final class AISStallWatchdog {
+
+    static final long SAMPLE_MILLIS = 1000;
+
+    /** Sentences per second below which a feed is too sparse to judge */
+    static final double MIN_BASELINE_RATE = 0.5;
+
+    /** Time constant of the baseline average */
+    static final long BASELINE_MILLIS = 10 * 60 * 1000;
+
+    /** Stalls reported in a row, each followed by a reconnect, before a low rate is accepted as the baseline */
+    static final int MAX_STALL_RECONNECTS = 3;
+
+    private final double stallRatio;
+    private final int[] window;
+    private final double alpha;
+
+    private int windowIndex;
+    private long windowCount;
+    private int windowSamples;
+    private long baselineSamples;
+    private double baselineRate;
+    /** Stalls reported since the window was last full and not low, kept across reconnects */
+    private int stallReconnects;
+
+    private int count;
+    private long nextSampleAt;
+
+    /**
+     * @param stallWindowMillis how long the rate must stay low before the feed counts as stalled, 0 to disable
+     * @param stallRatio        fraction of the baseline rate below which the rate counts as low
+     */
+    AISStallWatchdog(long stallWindowMillis, double stallRatio) {
+        if (stallWindowMillis < 0) {
+            throw new IllegalArgumentException("Stall window must not be negative: " + stallWindowMillis);
+        }
+        if (stallRatio < 0 || stallRatio >= 1) {
+            throw new IllegalArgumentException("Stall ratio must be at least 0 and below 1: " + stallRatio);
+        }
+        this.stallRatio = stallRatio;
+        this.window = new int[(int) Math.max(0, (stallWindowMillis + SAMPLE_MILLIS - 1) / SAMPLE_MILLIS)];
+        this.alpha = (double) SAMPLE_MILLIS / BASELINE_MILLIS;
+    }
+
+    boolean isEnabled() {
+        return window.length > 0;
+    }
+
+    /**
+     * Start watching a new connection. The learned baseline is kept.
+     *
+     * @param now current time in milliseconds
+     */
+    void connected(long now) {
+        Arrays.fill(window, 0);
+        windowIndex = 0;
+        windowCount = 0;
+        windowSamples = 0;
+        count = 0;
+        nextSampleAt = now + SAMPLE_MILLIS;
+    }
+
+    /**
+     * Count one received sentence.
+     */
+    void count() {
+        count++;
+    }
+
+    /**
+     * @return time in milliseconds at which {@link #check} has the next sample to take
+     */
+    long getNextCheck() {
+        return nextSampleAt;
+    }
+
+    /**
+     * Take the samples that are due.
+     *
+     * @param now current time in milliseconds
+     * @return true if the feed is stalled
+     */
+    boolean check(long now) {
+        if (!isEnabled() || now < nextSampleAt) {
+            return false;
+        }
+        if (now - nextSampleAt > window.length * SAMPLE_MILLIS) {
+            // Nothing was sampled for a whole window, e.g. the thread was not scheduled; only zeros can follow
+            nextSampleAt = now - window.length * SAMPLE_MILLIS;
+        }
+        boolean stalled = false;
+        while (now >= nextSampleAt) {
+            stalled = sample(count);
+            count = 0;
+            nextSampleAt += SAMPLE_MILLIS;
+        }
+        return stalled;
+    }
+
+    private boolean sample(int sampleCount) {
+        windowCount += sampleCount - window[windowIndex];
+        window[windowIndex] = sampleCount;
+        windowIndex = (windowIndex + 1) % window.length;
+        if (windowSamples < window.length) {
+            windowSamples++;
+        }
+
+        double expected = baselineRate * window.length * SAMPLE_MILLIS / 1000;
+        boolean low = windowCount < stallRatio * expected;
+        if (!low || baselineSamples < window.length) {
+            double rate = sampleCount * 1000.0 / SAMPLE_MILLIS;
+            // Plain average while warming up, then exponentially weighted
+            baselineRate += Math.max(alpha, 1.0 / (baselineSamples + 1)) * (rate - baselineRate);
+            baselineSamples++;
+        }
+        if (!low || windowSamples < window.length || baselineSamples < window.length
+                || baselineRate < MIN_BASELINE_RATE) {
+            if (!low && windowSamples == window.length) {
+                stallReconnects = 0;
+            }
+            return false;
+        }
+        if (stallReconnects == MAX_STALL_RECONNECTS) {
+            // Reconnecting did not bring the rate back, so it is the rate of the feed now
+            baselineRate = getWindowRate();
+            stallReconnects = 0;
+            return false;
+        }
+        stallReconnects++;
+        return true;
+    }
+
+    /**
+     * @return learned sentences per second
+     */
+    double getBaselineRate() {
+        return baselineRate;
+    }
+
+    /**
+     * @return sentences per second over the last window
+     */
+    double getWindowRate() {
+        return windowSamples == 0 ? 0 : windowCount * 1000.0 / (windowSamples * SAMPLE_MILLIS);
+    }
+}
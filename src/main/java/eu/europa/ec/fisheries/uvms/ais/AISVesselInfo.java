@@ -0,0 +1,220 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+/**
+ * Static and voyage data of a vessel as kept by the connection, merged from the type 5, 19 and 24 messages
+ * heard from it, see {@link AISConnection#getVesselInfo(int)}. Type 24 part A carries the name and part B the
+ * call sign, ship type and dimensions, so a vessel sending both is complete once both parts arrived. Fields no
+ * message provided yet are null or 0, the hour and minute of the ETA 24 and 60, as in {@link AISMessage}.
+ * Instances are immutable.
+ */
+public final class AISVesselInfo {
+
+    /** Time after which an unchanged instance is replaced anyway, to move its update time on */
+    private static final long UPDATE_MILLIS = 60 * 1000;
+
+    private final int mmsi;
+    private final int imoNumber;
+    private final String callSign;
+    private final String shipName;
+    private final int shipType;
+    private final int dimensionToBow;
+    private final int dimensionToStern;
+    private final int dimensionToPort;
+    private final int dimensionToStarboard;
+    private final int draught;
+    private final String destination;
+    private final int etaMonth;
+    private final int etaDay;
+    private final int etaHour;
+    private final int etaMinute;
+    private final long updatedAt;
+
+    private AISVesselInfo(int mmsi, int imoNumber, String callSign, String shipName, int shipType, int dimensionToBow,
+                          int dimensionToStern, int dimensionToPort, int dimensionToStarboard, int draught,
+                          String destination, int etaMonth, int etaDay, int etaHour, int etaMinute, long updatedAt) {
+        this.mmsi = mmsi;
+        this.imoNumber = imoNumber;
+        this.callSign = callSign;
+        this.shipName = shipName;
+        this.shipType = shipType;
+        this.dimensionToBow = dimensionToBow;
+        this.dimensionToStern = dimensionToStern;
+        this.dimensionToPort = dimensionToPort;
+        this.dimensionToStarboard = dimensionToStarboard;
+        this.draught = draught;
+        this.destination = destination;
+        this.etaMonth = etaMonth;
+        this.etaDay = etaDay;
+        this.etaHour = etaHour;
+        this.etaMinute = etaMinute;
+        this.updatedAt = updatedAt;
+    }
+
+    /**
+     * Merge a static data message into what is known of its vessel. A type 5 message replaces the voyage
+     * data as sent; other types only fill in the fields they carry.
+     *
+     * @param previous what is known, null if nothing
+     * @param message  a type 5, 19 or 24 message
+     * @param now      receive time in milliseconds
+     * @return the merged data, {@code previous} itself if the message changed nothing
+     */
+    static AISVesselInfo merge(AISVesselInfo previous, AISMessage message, long now) {
+        AISVesselInfo base = previous != null ? previous
+                : new AISVesselInfo(message.getMmsi(), 0, null, null, 0, 0, 0, 0, 0, 0, null, 0, 0, 24, 60, now);
+        int type = message.getMessageType();
+        boolean voyage = type == 5;
+        boolean dimensions = type == 5 || type == 19 || message.getPartNumber() == 1;
+        AISVesselInfo merged = new AISVesselInfo(base.mmsi,
+                voyage ? message.getImoNumber() : base.imoNumber,
+                pick(message.getCallSign(), base.callSign),
+                pick(message.getShipName(), base.shipName),
+                dimensions ? message.getShipType() : base.shipType,
+                dimensions ? message.getDimensionToBow() : base.dimensionToBow,
+                dimensions ? message.getDimensionToStern() : base.dimensionToStern,
+                dimensions ? message.getDimensionToPort() : base.dimensionToPort,
+                dimensions ? message.getDimensionToStarboard() : base.dimensionToStarboard,
+                voyage ? message.getDraught() : base.draught,
+                voyage ? message.getDestination() : base.destination,
+                voyage ? message.getEtaMonth() : base.etaMonth,
+                voyage ? message.getEtaDay() : base.etaDay,
+                voyage ? message.getEtaHour() : base.etaHour,
+                voyage ? message.getEtaMinute() : base.etaMinute,
+                now);
+        // Static data repeats every few minutes, keep the instance while nothing changes
+        return previous != null && merged.sameAs(previous) && now - previous.updatedAt < UPDATE_MILLIS ? previous : merged;
+    }
+
+    private static String pick(String value, String previous) {
+        if (value == null) {
+            return previous;
+        }
+        // Names and call signs are repeated, share the previous string when equal
+        return value.equals(previous) ? previous : value;
+    }
+
+    private boolean sameAs(AISVesselInfo other) {
+        return imoNumber == other.imoNumber && equal(callSign, other.callSign) && equal(shipName, other.shipName)
+                && shipType == other.shipType && dimensionToBow == other.dimensionToBow
+                && dimensionToStern == other.dimensionToStern && dimensionToPort == other.dimensionToPort
+                && dimensionToStarboard == other.dimensionToStarboard && draught == other.draught
+                && equal(destination, other.destination) && etaMonth == other.etaMonth && etaDay == other.etaDay
+                && etaHour == other.etaHour && etaMinute == other.etaMinute;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    public int getMmsi() {
+        return mmsi;
+    }
+
+    /**
+     * @return IMO number, 0 when not known
+     */
+    public int getImoNumber() {
+        return imoNumber;
+    }
+
+    public String getCallSign() {
+        return callSign;
+    }
+
+    public String getShipName() {
+        return shipName;
+    }
+
+    /**
+     * @return ship and cargo type, 0 when not known
+     */
+    public int getShipType() {
+        return shipType;
+    }
+
+    /**
+     * @return distance in metres from the position reference to the bow, 0 when not known
+     */
+    public int getDimensionToBow() {
+        return dimensionToBow;
+    }
+
+    public int getDimensionToStern() {
+        return dimensionToStern;
+    }
+
+    public int getDimensionToPort() {
+        return dimensionToPort;
+    }
+
+    public int getDimensionToStarboard() {
+        return dimensionToStarboard;
+    }
+
+    /**
+     * @return length overall in metres, 0 when not known
+     */
+    public int getLength() {
+        return dimensionToBow + dimensionToStern;
+    }
+
+    /**
+     * @return beam in metres, 0 when not known
+     */
+    public int getBeam() {
+        return dimensionToPort + dimensionToStarboard;
+    }
+
+    /**
+     * @return maximum present static draught in 1/10 metre, 0 when not known
+     */
+    public int getDraught() {
+        return draught;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public int getEtaMonth() {
+        return etaMonth;
+    }
+
+    public int getEtaDay() {
+        return etaDay;
+    }
+
+    public int getEtaHour() {
+        return etaHour;
+    }
+
+    public int getEtaMinute() {
+        return etaMinute;
+    }
+
+    /**
+     * @return time the last static data message of the vessel was received, in milliseconds since the epoch, the
+     * provider time if the feed sent one
+     */
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "AISVesselInfo{mmsi=" + mmsi + ", imo=" + imoNumber + ", callSign=" + callSign + ", name=" + shipName
+                + ", type=" + shipType + ", length=" + getLength() + ", beam=" + getBeam() + ", draught=" + draught
+                + ", destination=" + destination + "}";
+    }
+}
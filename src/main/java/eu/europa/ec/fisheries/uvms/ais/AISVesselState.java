@@ -0,0 +1,134 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+/**
+ * The latest position of a vessel as kept by the connection, with its static data if heard, see
+ * {@link AISConnection#getVessel(int)}. Units
+ * follow {@link AISMessage}: positions in 1/10000 minute, speed and course in tenths, heading in degrees, and
+ * "not available" values are passed through unchanged.
+ */
+public final class AISVesselState {
+
+    private final int mmsi;
+    private final int latitude;
+    private final int longitude;
+    private final short speedOverGround;
+    private final short courseOverGround;
+    private final short heading;
+    private final int navigationalStatus;
+    private final int messageType;
+    private final long timestamp;
+    private final long receivedAt;
+    private final AISVesselInfo info;
+
+    AISVesselState(int mmsi, int latitude, int longitude, short speedOverGround, short courseOverGround,
+                   short heading, int navigationalStatus, int messageType, long timestamp, long receivedAt,
+                   AISVesselInfo info) {
+        this.mmsi = mmsi;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.speedOverGround = speedOverGround;
+        this.courseOverGround = courseOverGround;
+        this.heading = heading;
+        this.navigationalStatus = navigationalStatus;
+        this.messageType = messageType;
+        this.timestamp = timestamp;
+        this.receivedAt = receivedAt;
+        this.info = info;
+    }
+
+    public int getMmsi() {
+        return mmsi;
+    }
+
+    /**
+     * @return latitude in 1/10000 minute
+     */
+    public int getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * @return longitude in 1/10000 minute
+     */
+    public int getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * @return speed over ground in 1/10 knot
+     */
+    public short getSpeedOverGround() {
+        return speedOverGround;
+    }
+
+    /**
+     * @return course over ground in 1/10 degree
+     */
+    public short getCourseOverGround() {
+        return courseOverGround;
+    }
+
+    /**
+     * @return true heading in degrees
+     */
+    public short getHeading() {
+        return heading;
+    }
+
+    /**
+     * @return navigational status of a class A report, {@link AISMessage#NAVIGATIONAL_STATUS_NOT_DEFINED}
+     * for other types
+     */
+    public int getNavigationalStatus() {
+        return navigationalStatus;
+    }
+
+    /**
+     * @return type of the report the position came from, 0 while only static data of the vessel was heard, in
+     * which case the position and motion fields are "not available"
+     */
+    public int getMessageType() {
+        return messageType;
+    }
+
+    /**
+     * @return time of the report in milliseconds since the epoch, rebuilt from the UTC second it carries
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return time the report was received in milliseconds since the epoch, the provider time if the feed sent
+     * one; 0 while no position was heard
+     */
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    /**
+     * @return static and voyage data of the vessel as of the lookup, null if none was heard
+     */
+    public AISVesselInfo getInfo() {
+        return info;
+    }
+
+    @Override
+    public String toString() {
+        return "AISVesselState{mmsi=" + mmsi + ", latitude=" + latitude / (double) AISMessage.UNITS_PER_DEGREE
+                + ", longitude=" + longitude / (double) AISMessage.UNITS_PER_DEGREE + ", speed=" + speedOverGround
+                + ", course=" + courseOverGround + ", heading=" + heading + ", status=" + navigationalStatus
+                + ", type=" + messageType + ", timestamp=" + timestamp + ", info=" + info + "}";
+    }
+}
@@ -0,0 +1,394 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The latest position and the static and voyage data of every vessel heard, kept in a fixed table for lookups
+ * by MMSI.
+ * <p>
+ * Positions are kept in one {@link AtomicLongArray} of slots, addressed by open addressing with linear probing
+ * on the MMSI, so they allocate nothing after construction and their size depends only on the configured
+ * capacity. A slot is six longs: a version, the MMSI and the state packed into four. Static data, which changes
+ * rarely, is an immutable {@link AISVesselInfo} per slot in a parallel array, replaced as a whole when a type 5,
+ * 19 or 24 message changes it. The reader thread updates slots under the table's lock, making the version odd
+ * while it writes; {@link #find(int)} takes no lock, reading a slot until it sees the same even version before
+ * and after. It spins while the writer is in the middle of updating that slot, a few stores, but never blocks
+ * on the lock. {@link #snapshot} takes the lock, so it copies the table as of one instant.
+ * <p>
+ * Vessels not heard within the timeout, neither position nor static data, are removed by a sweep that advances
+ * a few slots with every update, and leave a tombstone so probes pass over them. Once vessels and tombstones
+ * fill three quarters of the slots, the live vessels are copied into a fresh array, which lookups pick up with
+ * their next probe. New vessels are counted and ignored while the table holds its capacity.
+ * <p>
+ * Every update carries the event time of its message, the provider time if the feed sent one. Readers of several
+ * feeds hear the same vessel with different delays, so a message older than the state it would replace is
+ * ignored.
+ */
+final class AISVesselTable {
+
+    private static final int STRIDE = 6;
+    private static final int VERSION = 0;
+    private static final int KEY = 1;
+    private static final int POSITION = 2;
+    private static final int MOTION = 3;
+    private static final int TIMESTAMP = 4;
+    private static final int HEARD_AT = 5;
+
+    private static final long EMPTY = 0;
+    private static final long TOMBSTONE = -1;
+    private static final int GOLDEN_RATIO = 0x9E3779B9;
+    private static final int SWEEP_SLOTS = 2;
+
+    private final int capacity;
+    private final long timeoutMillis;
+    private final int slotCount;
+    private final int shift;
+    private volatile Table table;
+
+    // Guarded by this
+    private volatile int size;
+    private int tombstones;
+    private int sweepAt;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    /**
+     * @param capacity      maximum number of vessels
+     * @param timeoutMillis time after which a vessel not heard is removed, 0 to keep vessels until the table
+     *                      is rebuilt
+     */
+    AISVesselTable(int capacity, long timeoutMillis) {
+        if (capacity < 1 || capacity > 1 << 26) {
+            throw new IllegalArgumentException("Vessel capacity out of range: " + capacity);
+        }
+        this.capacity = capacity;
+        this.timeoutMillis = timeoutMillis;
+        // At most half the slots hold vessels, so probes stay short
+        this.slotCount = Math.max(16, Integer.highestOneBit(capacity * 2 - 1) << 1);
+        this.shift = 32 - Integer.numberOfTrailingZeros(slotCount);
+        this.table = new Table(slotCount);
+    }
+
+    /**
+     * Both arrays of the slots, replaced together when the table is rebuilt.
+     */
+    private static final class Table {
+        final AtomicLongArray words;
+        final AtomicReferenceArray<AISVesselInfo> infos;
+
+        Table(int slotCount) {
+            words = new AtomicLongArray(slotCount * STRIDE);
+            infos = new AtomicReferenceArray<>(slotCount);
+        }
+    }
+
+    private int home(int mmsi) {
+        return (mmsi * GOLDEN_RATIO) >>> shift;
+    }
+
+    /**
+     * Record a position report or static data message. Called by the reader threads.
+     *
+     * @param message   a position report, or a type 5, 19 or 24 message
+     * @param eventTime provider time of the message if known, otherwise its receive time, in milliseconds
+     */
+    synchronized void update(AISMessage message, long eventTime) {
+        int mmsi = message.getMmsi();
+        if (mmsi <= 0) {
+            return;
+        }
+        sweep(eventTime);
+        Table current = table;
+        AtomicLongArray words = current.words;
+        int mask = slotCount - 1;
+        int free = -1;
+        int slot = home(mmsi);
+        long key;
+        while ((key = words.get(slot * STRIDE + KEY)) != EMPTY) {
+            if (key == mmsi) {
+                write(current, slot, message, eventTime);
+                return;
+            }
+            if (key == TOMBSTONE && free < 0) {
+                free = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size == capacity) {
+            rejected.incrementAndGet();
+            return;
+        }
+        if (free >= 0) {
+            slot = free;
+            tombstones--;
+        }
+        clear(words, slot, mmsi);
+        write(current, slot, message, eventTime);
+        size++;
+        if ((size + tombstones) * 4 > slotCount * 3) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Start a slot with no position, as for a vessel only heard through its static data so far.
+     */
+    private static void clear(AtomicLongArray words, int slot, int mmsi) {
+        int base = slot * STRIDE;
+        long version = words.get(base + VERSION);
+        words.lazySet(base + VERSION, version + 1);
+        words.lazySet(base + KEY, mmsi);
+        words.lazySet(base + POSITION, (long) AISMessage.LATITUDE_NOT_AVAILABLE << 32 | AISMessage.LONGITUDE_NOT_AVAILABLE);
+        words.lazySet(base + MOTION, AISMessage.SPEED_NOT_AVAILABLE
+                | (long) AISMessage.COURSE_NOT_AVAILABLE << 16
+                | (long) AISMessage.HEADING_NOT_AVAILABLE << 32
+                | (long) AISMessage.NAVIGATIONAL_STATUS_NOT_DEFINED << 56);
+        words.lazySet(base + TIMESTAMP, 0);
+        words.lazySet(base + HEARD_AT, 0);
+        words.lazySet(base + VERSION, version + 2);
+    }
+
+    private static void write(Table table, int slot, AISMessage message, long eventTime) {
+        if (message.isStaticData()) {
+            AISVesselInfo previous = table.infos.get(slot);
+            if (previous == null || eventTime >= previous.getUpdatedAt()) {
+                AISVesselInfo merged = AISVesselInfo.merge(previous, message, eventTime);
+                if (merged != previous) {
+                    table.infos.lazySet(slot, merged);
+                }
+            }
+        }
+        if (!message.isPositionReport()) {
+            return;
+        }
+        AtomicLongArray words = table.words;
+        int base = slot * STRIDE;
+        if (eventTime < words.get(base + HEARD_AT)) {
+            return;
+        }
+        long version = words.get(base + VERSION);
+        // Ordered stores: readers that see the even version again saw none of the fields in between change
+        words.lazySet(base + VERSION, version + 1);
+        words.lazySet(base + POSITION, (long) message.getLatitude() << 32 | message.getLongitude() & 0xFFFFFFFFL);
+        words.lazySet(base + MOTION, message.getSpeedOverGround() & 0xFFFFL
+                | (message.getCourseOverGround() & 0xFFFFL) << 16
+                | (message.getTrueHeading() & 0xFFFFL) << 32
+                | (message.getMessageType() & 0xFFL) << 48
+                | (message.getNavigationalStatus() & 0xFFL) << 56);
+        words.lazySet(base + TIMESTAMP, AISPositionBatch.timestamp(message.getTimeStamp(), eventTime));
+        words.lazySet(base + HEARD_AT, eventTime);
+        words.lazySet(base + VERSION, version + 2);
+    }
+
+    private void sweep(long now) {
+        if (timeoutMillis <= 0) {
+            return;
+        }
+        Table current = table;
+        AtomicLongArray words = current.words;
+        for (int i = 0; i < SWEEP_SLOTS; i++) {
+            int base = sweepAt * STRIDE;
+            AISVesselInfo info = current.infos.get(sweepAt);
+            long heardAt = Math.max(words.get(base + HEARD_AT), info != null ? info.getUpdatedAt() : 0);
+            if (words.get(base + KEY) > 0 && now - heardAt > timeoutMillis) {
+                long version = words.get(base + VERSION);
+                words.lazySet(base + VERSION, version + 1);
+                words.lazySet(base + KEY, TOMBSTONE);
+                words.lazySet(base + VERSION, version + 2);
+                current.infos.lazySet(sweepAt, null);
+                size--;
+                tombstones++;
+                expired.incrementAndGet();
+            }
+            sweepAt = (sweepAt + 1) & (slotCount - 1);
+        }
+    }
+
+    /**
+     * Copy the live vessels into a fresh array without tombstones. Lookups still probing the old array read
+     * it as it was, it is not written any more.
+     */
+    private void rebuild() {
+        Table old = table;
+        Table fresh = new Table(slotCount);
+        int mask = slotCount - 1;
+        for (int from = 0; from < slotCount; from++) {
+            long key = old.words.get(from * STRIDE + KEY);
+            if (key > 0) {
+                int slot = home((int) key);
+                while (fresh.words.get(slot * STRIDE + KEY) != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                for (int field = KEY; field < STRIDE; field++) {
+                    fresh.words.lazySet(slot * STRIDE + field, old.words.get(from * STRIDE + field));
+                }
+                fresh.infos.lazySet(slot, old.infos.get(from));
+            }
+        }
+        tombstones = 0;
+        table = fresh;
+    }
+
+    /**
+     * @return slot of the vessel in the table, -1 if it is not held
+     */
+    private int slot(AtomicLongArray words, int mmsi) {
+        if (mmsi <= 0) {
+            return -1;
+        }
+        int mask = slotCount - 1;
+        int slot = home(mmsi);
+        long key;
+        while ((key = words.get(slot * STRIDE + KEY)) != EMPTY) {
+            if (key == mmsi) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Look up a vessel without locking.
+     *
+     * @param mmsi the vessel
+     * @return its latest state, null if it was not heard, has timed out or the table was full
+     */
+    AISVesselState find(int mmsi) {
+        Table current = table;
+        int slot = slot(current.words, mmsi);
+        return slot < 0 ? null : read(current, slot, mmsi);
+    }
+
+    /**
+     * Look up the static data of a vessel without locking.
+     *
+     * @param mmsi the vessel
+     * @return its static data, null if none was heard
+     */
+    AISVesselInfo findInfo(int mmsi) {
+        Table current = table;
+        int slot = slot(current.words, mmsi);
+        return slot < 0 ? null : info(current, slot, mmsi);
+    }
+
+    private static AISVesselInfo info(Table table, int slot, int mmsi) {
+        AISVesselInfo info = table.infos.get(slot);
+        // The slot may have been given to another vessel since it was found
+        return info != null && info.getMmsi() == mmsi ? info : null;
+    }
+
+    private static AISVesselState read(Table table, int slot, int mmsi) {
+        AtomicLongArray words = table.words;
+        int base = slot * STRIDE;
+        while (true) {
+            long version = words.get(base + VERSION);
+            if ((version & 1) != 0) {
+                continue;
+            }
+            long key = words.get(base + KEY);
+            long position = words.get(base + POSITION);
+            long motion = words.get(base + MOTION);
+            long timestamp = words.get(base + TIMESTAMP);
+            long receivedAt = words.get(base + HEARD_AT);
+            if (words.get(base + VERSION) == version) {
+                return key != mmsi ? null
+                        : state(mmsi, position, motion, timestamp, receivedAt, info(table, slot, mmsi));
+            }
+        }
+    }
+
+    private static AISVesselState state(int mmsi, long position, long motion, long timestamp, long receivedAt,
+                                        AISVesselInfo info) {
+        return new AISVesselState(mmsi, (int) (position >> 32), (int) position, (short) motion,
+                (short) (motion >>> 16), (short) (motion >>> 32), (int) (motion >>> 56), (int) (motion >>> 48 & 0xFF),
+                timestamp, receivedAt, info);
+    }
+
+    /**
+     * Look up the static data of every vessel of a batch without locking.
+     *
+     * @param batch position reports, e.g. from {@link AISConnection#drainPositions}
+     * @param infos receives the static data of row {@code i} at index {@code i}, null where none was heard
+     * @return number of rows with static data
+     */
+    int enrich(AISPositionBatch batch, AISVesselInfo[] infos) {
+        if (infos.length < batch.size()) {
+            throw new IllegalArgumentException("Array of " + infos.length + " for " + batch.size() + " rows");
+        }
+        Table current = table;
+        int[] mmsis = batch.getMmsi();
+        int count = 0;
+        for (int row = 0; row < batch.size(); row++) {
+            int slot = slot(current.words, mmsis[row]);
+            infos[row] = slot < 0 ? null : info(current, slot, mmsis[row]);
+            if (infos[row] != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Copy the positions into a batch, all as of the same instant. Vessels only heard through their static data
+     * are left out. The batch receives at most its capacity, in no particular order.
+     *
+     * @param batch the batch to clear and refill
+     * @return number of vessels in the batch
+     */
+    synchronized int snapshot(AISPositionBatch batch) {
+        batch.clear();
+        AtomicLongArray words = table.words;
+        for (int slot = 0; slot < slotCount && !batch.isFull(); slot++) {
+            int base = slot * STRIDE;
+            long key = words.get(base + KEY);
+            long motion = words.get(base + MOTION);
+            int type = (int) (motion >>> 48 & 0xFF);
+            if (key > 0 && type != 0) {
+                long position = words.get(base + POSITION);
+                batch.add((int) key, (int) (position >> 32), (int) position, (short) motion, (short) (motion >>> 16),
+                        (short) (motion >>> 32), words.get(base + TIMESTAMP), type);
+            }
+        }
+        return batch.size();
+    }
+
+    /**
+     * @return number of vessels held
+     */
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return vessels ignored because the table held its capacity
+     */
+    long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return vessels removed after not being heard within the timeout
+     */
+    long getExpiredCount() {
+        return expired.get();
+    }
+}
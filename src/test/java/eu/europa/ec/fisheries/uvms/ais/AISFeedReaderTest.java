@@ -0,0 +1,218 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AISFeedReaderTest {
+
+    private static final byte[] LINE = "!AIVDM,1,1,,B,15M67FC000G?ufbE`FepT@3n00Sa,0*5C".getBytes(StandardCharsets.US_ASCII);
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AISManagedConnectionFactory config;
+    private AISFeed feed;
+    private AISFeedReader reader;
+
+    @Before
+    public void setUp() throws Exception {
+        config = new AISManagedConnectionFactory();
+        config.setReaderExecution("THREAD");
+        config.setReconnectInitialDelay(60000L);
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        feed = new AISFeed("localhost", closedPort, null, null, "test");
+    }
+
+    @After
+    public void tearDown() {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void closeSlowConsumerWhileProducerBlocked() throws Exception {
+        config.setReaderMode("STREAM");
+        config.setQueueCapacity(4);
+        config.setOverflowPolicy("BLOCK");
+        reader = new AISFeedReader("test", config, null);
+        AISFeedReader.Consumer fast = reader.newConsumer();
+        final AISFeedReader.Consumer slow = reader.newConsumer();
+        reader.open(Collections.singletonList(feed));
+        final AISFeedReader.SentenceHandler handler = reader.newSentenceHandler(feed);
+        final int count = 20;
+        Thread producer = new Thread("producer") {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    handler.onLine(LINE, LINE.length);
+                }
+            }
+        };
+        producer.start();
+
+        List<String> drained = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (slow.getQueueSize() < 4 || producer.getState() != Thread.State.TIMED_WAITING) {
+            fast.drainTo(drained, Integer.MAX_VALUE);
+            assertFalse("producer never blocked", System.currentTimeMillis() > deadline);
+            Thread.sleep(10);
+        }
+
+        Thread closer = new Thread("closer") {
+            @Override
+            public void run() {
+                slow.close();
+            }
+        };
+        closer.start();
+        closer.join(TIMEOUT_MILLIS);
+        assertFalse("closing the slow consumer blocked behind the producer", closer.isAlive());
+
+        while (drained.size() < count && System.currentTimeMillis() < deadline) {
+            fast.drainTo(drained, Integer.MAX_VALUE);
+            Thread.sleep(10);
+        }
+        producer.join(TIMEOUT_MILLIS);
+        assertFalse(producer.isAlive());
+        assertEquals(count, drained.size());
+    }
+
+    @Test
+    public void handlerOfUnopenedReaderFeedsDefaultConsumer() {
+        reader = new AISFeedReader("test", config, null);
+        AISFeedReader.SentenceHandler handler = reader.newSentenceHandler(feed);
+        for (int i = 0; i < 3; i++) {
+            handler.onLine(LINE, LINE.length);
+        }
+        List<String> drained = new ArrayList<>();
+        assertEquals(3, reader.drainTo(drained, Integer.MAX_VALUE));
+        assertEquals(0, reader.getQueue().getDroppedCount());
+    }
+
+    @Test
+    public void reassembleInterleavedStationsApart() {
+        reader = new AISFeedReader("test", config, null);
+        AISFeedReader.SentenceHandler handler = reader.newSentenceHandler(feed);
+        handler.onLine(line("s:north", "!AIVDM,2,1,3,A,55NBjP01mtGIL@CW;SM<D60P5Ld000000000000P0`<3557l0<50,0"));
+        handler.onLine(line("s:south", "!AIVDM,2,1,3,A,53aGwp02>rH1I`H00<0MD5<4p@Pm000000000017>0<<56Pbf0,0"));
+        handler.onLine(line("s:north", "!AIVDM,2,2,3,A,0000000000,2"));
+        handler.onLine(line("s:south", "!AIVDM,2,2,3,A,1111111111,2"));
+        List<AISSentence> sentences = new ArrayList<>();
+        assertEquals(2, reader.drainSentencesTo(sentences, Integer.MAX_VALUE));
+        assertEquals("55NBjP01mtGIL@CW;SM<D60P5Ld000000000000P0`<3557l0<500000000000",
+                sentences.get(0).getPayload());
+        assertEquals("north", sentences.get(0).getStation());
+        assertEquals("53aGwp02>rH1I`H00<0MD5<4p@Pm000000000017>0<<56Pbf01111111111",
+                sentences.get(1).getPayload());
+        assertEquals("south", sentences.get(1).getStation());
+    }
+
+    @Test
+    public void vesselKeepsNewestEventTime() {
+        config.setVesselCapacity(16);
+        reader = new AISFeedReader("test", config, null);
+        AISFeedReader.SentenceHandler handler = reader.newSentenceHandler(feed);
+        String sentence = new String(LINE, StandardCharsets.US_ASCII).substring(0, LINE.length - 3);
+        handler.onLine(line("c:1700000600", sentence));
+        handler.onLine(line("c:1700000000", sentence));
+        AISVesselState vessel = reader.getVessel(new AISMessage(sentence.split(",")[5]).getMmsi());
+        assertEquals(1700000600000L, vessel.getReceivedAt());
+    }
+
+    @Test
+    public void wakeEveryWaitingConsumerOfTheHeapQueue() throws Exception {
+        wakeEveryWaitingConsumer();
+    }
+
+    @Test
+    public void wakeEveryWaitingConsumerOfTheJournal() throws Exception {
+        config.setJournalDirectory(folder.getRoot().getPath());
+        wakeEveryWaitingConsumer();
+    }
+
+    private void wakeEveryWaitingConsumer() throws Exception {
+        reader = new AISFeedReader("test", config, null);
+        List<AISFeedReader.Consumer> consumers = Arrays.asList(reader.newConsumer(), reader.newConsumer());
+        reader.open(Collections.singletonList(feed));
+        final AtomicInteger woken = new AtomicInteger();
+        List<Thread> waiters = new ArrayList<>();
+        for (final AISFeedReader.Consumer consumer : consumers) {
+            Thread waiter = new Thread("waiter") {
+                @Override
+                public void run() {
+                    // Returns early when unparked spuriously, so wait in a loop like the activations do
+                    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+                    while (System.currentTimeMillis() < deadline) {
+                        if (consumer.awaitSentences(1, TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                            woken.incrementAndGet();
+                            return;
+                        }
+                    }
+                }
+            };
+            waiter.start();
+            waiters.add(waiter);
+        }
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        for (Thread waiter : waiters) {
+            while (waiter.getState() != Thread.State.TIMED_WAITING) {
+                assertFalse("consumer never waited", System.currentTimeMillis() > deadline);
+                Thread.sleep(10);
+            }
+        }
+
+        reader.newSentenceHandler(feed).onLine(LINE, LINE.length);
+        for (Thread waiter : waiters) {
+            waiter.join(TIMEOUT_MILLIS / 5);
+            assertFalse("a consumer slept through the sentence", waiter.isAlive());
+        }
+        assertEquals(2, woken.get());
+    }
+
+    /**
+     * @return the sentence behind a tag block of these parameters, both with their checksums appended
+     */
+    private static String line(String tags, String sentence) {
+        return "\\" + tags + "*" + checksum(tags) + "\\" + sentence + "*" + checksum(sentence.substring(1));
+    }
+
+    private static String checksum(String text) {
+        int xor = 0;
+        for (int i = 0; i < text.length(); i++) {
+            xor ^= text.charAt(i);
+        }
+        return String.format("%02X", xor);
+    }
+}
@@ -0,0 +1,497 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Stand-in for an AIS provider: accepts the {@code \u0001user\u0000password\u0000} login the reader
+ * sends and replays recorded NMEA lines to every client that logs in.
+ * <p>
+ * Lines carrying an NMEA 4.10 tag block with a receiver timestamp ({@code \c:1478131200*hh\!AIVDM...},
+ * seconds or milliseconds) are replayed at their recorded pace, other lines at {@link #setRate(double)}
+ * lines per second; {@link #setSpeed(double)} scales both, 0 sending as fast as the socket takes them.
+ * Faults can be injected to exercise the reader: stalls, truncated lines, multi-fragment messages interleaved
+ * with the message after them and abrupt disconnects.
+ * <p>
+ * Run from the test jar, e.g.
+ * {@code java -cp ais-ra-tests.jar eu.europa.ec.fisheries.uvms.ais.AISFeedSimulator capture.nmea --speed 10},
+ * or embedded in a soak test.
+ */
+public class AISFeedSimulator implements Closeable {
+
+    private static Logger log = Logger.getLogger(AISFeedSimulator.class.getName());
+
+    private static final int LOGIN_TIMEOUT_MILLIS = 10 * 1000;
+
+    private final List<String> lines;
+    private int port;
+    private String userName;
+    private String password;
+    private double speed = 1;
+    private double rate = 1000;
+    private boolean loop = true;
+    private long stallEvery;
+    private long stallMillis;
+    private double truncateProbability;
+    private double interleaveProbability;
+    private long disconnectEvery;
+
+    private volatile boolean running;
+    private ServerSocket server;
+    private final List<Socket> clients = new CopyOnWriteArrayList<>();
+    private final AtomicLong connectionCount = new AtomicLong();
+    private final AtomicLong linesSent = new AtomicLong();
+
+    /**
+     * @param lines the NMEA lines to replay, without terminators
+     */
+    public AISFeedSimulator(List<String> lines) {
+        if (lines.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to replay");
+        }
+        this.lines = new ArrayList<>(lines);
+    }
+
+    /**
+     * @param file recorded feed, one line per sentence; empty lines are skipped
+     */
+    public static AISFeedSimulator fromFile(String file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.US_ASCII)) {
+            if (!line.trim().isEmpty()) {
+                lines.add(line.trim());
+            }
+        }
+        return new AISFeedSimulator(lines);
+    }
+
+    /**
+     * @param port port to listen on, 0 for any free port (see {@link #getPort()})
+     */
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Require this login; by default any login is accepted.
+     *
+     * @param password required password, null to accept any password of the user
+     */
+    public void setLogin(String userName, String password) {
+        this.userName = userName;
+        this.password = password;
+    }
+
+    /**
+     * @param speed replay speed relative to the recording, 0 for maximum rate
+     */
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    /**
+     * @param rate lines per second at speed 1 for lines without timestamp
+     */
+    public void setRate(double rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * @param loop true to start over at the end of the lines, false to close the connection
+     */
+    public void setLoop(boolean loop) {
+        this.loop = loop;
+    }
+
+    /**
+     * Stop sending for {@code millis} after every {@code every} lines of a connection, 0 to disable.
+     */
+    public void setStall(long every, long millis) {
+        this.stallEvery = every;
+        this.stallMillis = millis;
+    }
+
+    /**
+     * @param probability share of lines cut at a random position
+     */
+    public void setTruncateProbability(double probability) {
+        this.truncateProbability = probability;
+    }
+
+    /**
+     * @param probability share of multi-fragment messages sent fragment by fragment alternating with the message
+     * after them, A1 B1 A2 B2, as a provider merging several receivers does
+     */
+    public void setInterleaveProbability(double probability) {
+        this.interleaveProbability = probability;
+    }
+
+    /**
+     * Reset every connection after {@code every} lines, 0 to disable.
+     */
+    public void setDisconnectEvery(long every) {
+        this.disconnectEvery = every;
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) {
+            throw new IllegalStateException("Already started");
+        }
+        server = new ServerSocket(port);
+        running = true;
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "AIS simulator " + server.getLocalPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("AIS simulator listening on port " + server.getLocalPort() + " with " + lines.size() + " lines");
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public long getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public long getLinesSent() {
+        return linesSent.get();
+    }
+
+    /**
+     * Stop listening and drop all connections.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        running = false;
+        if (server != null) {
+            server.close();
+        }
+        for (Socket client : clients) {
+            client.close();
+        }
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                final Socket client = server.accept();
+                clients.add(client);
+                connectionCount.incrementAndGet();
+                Thread session = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(client);
+                    }
+                }, "AIS simulator client " + client.getRemoteSocketAddress());
+                session.setDaemon(true);
+                session.start();
+            } catch (IOException e) {
+                if (running) {
+                    log.warning("Accept failed: " + e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        long sent = 0;
+        try {
+            if (!login(client)) {
+                return;
+            }
+            log.info("Replaying to " + client.getRemoteSocketAddress());
+            sent = replay(client);
+        } catch (SocketException e) {
+            log.info("Client " + client.getRemoteSocketAddress() + " gone: " + e.getMessage());
+        } catch (IOException e) {
+            log.warning("Replay to " + client.getRemoteSocketAddress() + " failed: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            clients.remove(client);
+            try {
+                client.close();
+            } catch (IOException e) {
+                log.fine("Close failed: " + e);
+            }
+            log.info("Closed " + client.getRemoteSocketAddress() + " after " + sent + " lines");
+        }
+    }
+
+    private boolean login(Socket client) throws IOException {
+        client.setSoTimeout(LOGIN_TIMEOUT_MILLIS);
+        InputStream in = client.getInputStream();
+        if (in.read() != 1) {
+            log.warning("Login from " + client.getRemoteSocketAddress() + " does not start with \\u0001");
+            return false;
+        }
+        String user = readField(in);
+        String pass = readField(in);
+        if (userName != null && (!userName.equals(user) || password != null && !password.equals(pass))) {
+            log.warning("Login from " + client.getRemoteSocketAddress() + " rejected for user " + user);
+            return false;
+        }
+        client.setSoTimeout(0);
+        return true;
+    }
+
+    private static String readField(InputStream in) throws IOException {
+        StringBuilder field = new StringBuilder();
+        int b;
+        while ((b = in.read()) > 0) {
+            field.append((char) b);
+        }
+        if (b < 0) {
+            throw new IOException("Login incomplete");
+        }
+        return field.toString();
+    }
+
+    private long replay(Socket client) throws IOException, InterruptedException {
+        OutputStream out = new BufferedOutputStream(client.getOutputStream(), 8192);
+        Random random = new Random();
+        long startNanos = System.nanoTime();
+        double virtualMillis = 0;
+        long previousTimestamp = -1;
+        List<String> group = new ArrayList<>();
+        long sent = 0;
+        long nextStall = stallEvery;
+        do {
+            int i = 0;
+            while (i < lines.size() && running) {
+                i = nextGroup(i, random, group);
+                for (String line : group) {
+                    long timestamp = timestamp(line);
+                    if (timestamp >= 0 && previousTimestamp >= 0 && timestamp >= previousTimestamp) {
+                        virtualMillis += timestamp - previousTimestamp;
+                    } else {
+                        virtualMillis += 1000 / rate;
+                    }
+                    previousTimestamp = timestamp;
+                    if (speed > 0) {
+                        long waitMillis = (long) (virtualMillis / speed)
+                                - (System.nanoTime() - startNanos) / 1000000;
+                        if (waitMillis > 0) {
+                            out.flush();
+                            Thread.sleep(waitMillis);
+                        }
+                    }
+
+                    if (truncateProbability > 0 && line.length() > 1 && random.nextDouble() < truncateProbability) {
+                        line = line.substring(0, 1 + random.nextInt(line.length() - 1));
+                    }
+                    send(out, line);
+                    sent++;
+
+                    if (stallEvery > 0 && sent >= nextStall) {
+                        nextStall += stallEvery;
+                        out.flush();
+                        log.info("Stalling " + client.getRemoteSocketAddress() + " for " + stallMillis + " ms");
+                        Thread.sleep(stallMillis);
+                    }
+                }
+                // Only between groups, so the reset never cuts an interleaved pair of messages short
+                if (disconnectEvery > 0 && sent >= disconnectEvery) {
+                    out.flush();
+                    log.info("Resetting " + client.getRemoteSocketAddress());
+                    client.setSoLinger(true, 0);
+                    return sent;
+                }
+            }
+        } while (loop && running);
+        out.flush();
+        return sent;
+    }
+
+    /**
+     * Collect the lines to send next: the message starting at line {@code i}, or with the interleave fault the
+     * fragments of a multi-fragment message alternating with those of the message after it. A message without
+     * a message after it is sent as it is.
+     *
+     * @return index of the line after the group
+     */
+    private int nextGroup(int i, Random random, List<String> group) {
+        group.clear();
+        int end = messageEnd(i);
+        if (end - i < 2 || end == lines.size() || random.nextDouble() >= interleaveProbability) {
+            group.addAll(lines.subList(i, end));
+            return end;
+        }
+        int next = messageEnd(end);
+        for (int a = i, b = end; a < end || b < next; a++, b++) {
+            if (a < end) {
+                group.add(lines.get(a));
+            }
+            if (b < next) {
+                group.add(lines.get(b));
+            }
+        }
+        return next;
+    }
+
+    /**
+     * @return index of the line after the message starting at line {@code i}, counting the fragments that follow
+     * a first fragment
+     */
+    private int messageEnd(int i) {
+        String first = lines.get(i);
+        int count = fragmentCount(first);
+        if (count < 2 || fragmentNumber(first) != 1) {
+            return i + 1;
+        }
+        int end = i + 1;
+        while (end < lines.size() && end - i < count && fragmentCount(lines.get(end)) == count
+                && fragmentNumber(lines.get(end)) == end - i + 1) {
+            end++;
+        }
+        return end;
+    }
+
+    private void send(OutputStream out, String line) throws IOException {
+        out.write(line.getBytes(StandardCharsets.US_ASCII));
+        out.write('\r');
+        out.write('\n');
+        linesSent.incrementAndGet();
+    }
+
+    /**
+     * @return the {@code c:} receiver timestamp of the tag block in milliseconds, or -1
+     */
+    static long timestamp(String line) {
+        if (!line.startsWith("\\")) {
+            return -1;
+        }
+        int end = line.indexOf('\\', 1);
+        int c = line.indexOf("c:", 1);
+        if (end < 0 || c < 0 || c > end) {
+            return -1;
+        }
+        long value = 0;
+        int i = c + 2;
+        for (; i < end && Character.isDigit(line.charAt(i)); i++) {
+            value = value * 10 + line.charAt(i) - '0';
+        }
+        if (i == c + 2) {
+            return -1;
+        }
+        // Seconds until the year 5138, milliseconds after
+        return value < 100000000000L ? value * 1000 : value;
+    }
+
+    /**
+     * @return the fragment count of a VDM/VDO sentence, 0 for other lines
+     */
+    static int fragmentCount(String line) {
+        return digit(line, 7);
+    }
+
+    /**
+     * @return the fragment number of a VDM/VDO sentence, 0 for other lines
+     */
+    static int fragmentNumber(String line) {
+        return digit(line, 9);
+    }
+
+    /**
+     * @return the single digit field at {@code offset} from the {@code !} of a VDM/VDO sentence, 0 if there is
+     * none
+     */
+    private static int digit(String line, int offset) {
+        int start = line.indexOf('!');
+        if (start < 0 || line.length() < start + offset + 2 || !line.startsWith("VD", start + 3)
+                || line.charAt(start + 6) != ',' || line.charAt(start + offset + 1) != ',') {
+            return 0;
+        }
+        char digit = line.charAt(start + offset);
+        return digit >= '1' && digit <= '9' ? digit - '0' : 0;
+    }
+
+    /**
+     * {@code AISFeedSimulator <file> [--port 4001] [--login user password] [--speed 1|<factor>|max] [--rate 1000]
+     * [--once] [--stall <every lines> <millis>] [--truncate <probability>] [--interleave <probability>]
+     * [--disconnect <every lines>]}
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: AISFeedSimulator <file> [--port 4001] [--login user password]"
+                    + " [--speed 1|<factor>|max] [--rate 1000] [--once] [--stall <every lines> <millis>]"
+                    + " [--truncate <probability>] [--interleave <probability>] [--disconnect <every lines>]");
+            System.exit(2);
+        }
+        AISFeedSimulator simulator = fromFile(args[0]);
+        simulator.setPort(4001);
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    simulator.setPort(Integer.parseInt(args[++i]));
+                    break;
+                case "--login":
+                    simulator.setLogin(args[++i], args[++i]);
+                    break;
+                case "--speed":
+                    String speed = args[++i];
+                    simulator.setSpeed("max".equalsIgnoreCase(speed) ? 0 : Double.parseDouble(speed));
+                    break;
+                case "--rate":
+                    simulator.setRate(Double.parseDouble(args[++i]));
+                    break;
+                case "--once":
+                    simulator.setLoop(false);
+                    break;
+                case "--stall":
+                    simulator.setStall(Long.parseLong(args[++i]), Long.parseLong(args[++i]));
+                    break;
+                case "--truncate":
+                    simulator.setTruncateProbability(Double.parseDouble(args[++i]));
+                    break;
+                case "--interleave":
+                    simulator.setInterleaveProbability(Double.parseDouble(args[++i]));
+                    break;
+                case "--disconnect":
+                    simulator.setDisconnectEvery(Long.parseLong(args[++i]));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        simulator.start();
+        long reported = 0;
+        while (true) {
+            Thread.sleep(10 * 1000);
+            long sent = simulator.getLinesSent();
+            log.info(simulator.getConnectionCount() + " connections, " + (sent - reported) / 10 + " lines/s");
+            reported = sent;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.europa.ec.fisheries.uvms.ais;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class AISFeedSimulatorTest {
+
+    private static final String SINGLE = "!AIVDM,1,1,,B,15M67FC000G?ufbE`FepT@3n00Sa,0*5C";
+    private static final String A1 = "!AIVDM,2,1,1,A,55NBjP01mtGIL@CW;SM<D60P5Ld000000000000P0`<3557l0<50,0*67";
+    private static final String A2 = "!AIVDM,2,2,1,A,0000000000,2*15";
+    private static final String B1 = "!AIVDM,2,1,2,A,53aGwp02>rH1I`H00<0MD5<4p@Pm000000000017>0<<56Pbf0,0*3C";
+    private static final String B2 = "!AIVDM,2,2,2,A,1111111111,2*16";
+    private static final long TIMEOUT_MILLIS = 20000;
+
+    private AISFeedSimulator simulator;
+    private AISFeedReader reader;
+
+    @After
+    public void tearDown() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+        if (simulator != null) {
+            simulator.close();
+        }
+    }
+
+    @Test
+    public void interleaveFragmentsOfConsecutiveMessages() throws Exception {
+        start(Arrays.asList(A1, A2, B1, B2, SINGLE), 1);
+        assertEquals(Arrays.asList(A1, B1, A2, B2, SINGLE), receive("user", "secret", 5));
+    }
+
+    @Test
+    public void sendLastMessageUninterleaved() throws Exception {
+        start(Arrays.asList(SINGLE, A1, A2), 1);
+        assertEquals(Arrays.asList(SINGLE, A1, A2), receive("user", "secret", 3));
+    }
+
+    @Test
+    public void acceptAnyPasswordWithoutOne() throws Exception {
+        simulator = new AISFeedSimulator(Collections.singletonList(SINGLE));
+        simulator.setLogin("user", null);
+        simulator.setLoop(false);
+        simulator.start();
+        assertEquals(Collections.singletonList(SINGLE), receive("user", "anything", 1));
+    }
+
+    @Test
+    public void reconnectAfterDisconnect() throws Exception {
+        simulator = new AISFeedSimulator(Arrays.asList(SINGLE, A1, A2));
+        simulator.setSpeed(0);
+        simulator.setDisconnectEvery(50);
+        simulator.start();
+        AISManagedConnectionFactory config = new AISManagedConnectionFactory();
+        config.setReaderExecution("THREAD");
+        config.setReconnectInitialDelay(10L);
+        config.setReconnectMaxDelay(100L);
+        open(config);
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (simulator.getConnectionCount() < 3) {
+            assertFalse("reader did not reconnect", System.currentTimeMillis() > deadline);
+            Thread.sleep(10);
+        }
+        assertTrue(reader.getFeedStatistics().get(0).getConnectCount() >= 2);
+        assertTrue(reader.drainTo(new ArrayList<String>(), Integer.MAX_VALUE) > 0);
+    }
+
+    @Test
+    public void reconnectStalledFeed() throws Exception {
+        simulator = new AISFeedSimulator(Collections.singletonList(SINGLE));
+        simulator.setRate(250);
+        simulator.setStall(1000, 60000);
+        simulator.start();
+        AISManagedConnectionFactory config = new AISManagedConnectionFactory();
+        config.setReaderExecution("THREAD");
+        config.setReconnectInitialDelay(10L);
+        config.setReadTimeout(60000L);
+        config.setStallWindow(2000L);
+        config.setStallRatio(0.1);
+        open(config);
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (simulator.getConnectionCount() < 2) {
+            assertFalse("watchdog did not reconnect the stalled feed", System.currentTimeMillis() > deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private void start(List<String> lines, double interleaveProbability) throws IOException {
+        simulator = new AISFeedSimulator(lines);
+        simulator.setLogin("user", "secret");
+        simulator.setSpeed(0);
+        simulator.setLoop(false);
+        simulator.setInterleaveProbability(interleaveProbability);
+        simulator.start();
+    }
+
+    private void open(AISManagedConnectionFactory config) {
+        AISFeed feed = new AISFeed("localhost", simulator.getPort(), "user", "secret", "simulator");
+        reader = new AISFeedReader("simulator", config, null);
+        reader.open(Collections.singletonList(feed));
+    }
+
+    /**
+     * Log in like the reader and read the lines the simulator replays.
+     */
+    private List<String> receive(String user, String password, int count) throws IOException {
+        try (Socket socket = new Socket("localhost", simulator.getPort())) {
+            socket.setSoTimeout((int) TIMEOUT_MILLIS);
+            OutputStream out = socket.getOutputStream();
+            out.write(('\u0001' + user + '\u0000' + password + '\u0000').getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.US_ASCII));
+            List<String> received = new ArrayList<>();
+            String line;
+            while (received.size() < count && (line = in.readLine()) != null) {
+                received.add(line);
+            }
+            return received;
+        }
+    }
+}